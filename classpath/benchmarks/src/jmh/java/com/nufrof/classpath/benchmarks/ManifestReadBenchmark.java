@@ -0,0 +1,85 @@
+package com.nufrof.classpath.benchmarks;
+
+import com.nufrof.classpath.MappedManifestReader;
+import com.nufrof.classpath.ZipFileManifestReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * Reads the Class-Path out of one jar with {@link ZipFileManifestReader} and {@link MappedManifestReader}.
+ * The jar is filled with 16 KB entries up to the requested size, so larger jars also have larger
+ * central directories.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ManifestReadBenchmark {
+    private static final int ENTRY_SIZE = 16 * 1024;
+
+    @Param({"10240", "1048576", "20971520", "209715200"})
+    public long jarSize;
+
+    private File jar;
+
+    private final ZipFileManifestReader zipFileManifestReader = new ZipFileManifestReader();
+
+    private final MappedManifestReader mappedManifestReader = new MappedManifestReader();
+
+    @Setup(Level.Trial)
+    public void createJar() throws IOException {
+        jar = File.createTempFile("manifest-read-", ".jar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "lib/a.jar lib/b.jar lib/c.jar");
+        Random random = new Random(jarSize);
+        byte[] entry = new byte[(int) Math.min(ENTRY_SIZE, jarSize / 4)];
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+            for (int i = 0; jar.length() + entry.length < jarSize; i++) {
+                random.nextBytes(entry);
+                out.putNextEntry(new ZipEntry("com/example/filler/Entry" + i + ".class"));
+                out.write(entry);
+                out.closeEntry();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJar() {
+        jar.delete();
+    }
+
+    @Benchmark
+    public List<String> zipFile() throws IOException {
+        return zipFileManifestReader.readClassPath(jar);
+    }
+
+    @Benchmark
+    public List<String> mapped() throws IOException {
+        return mappedManifestReader.readClassPath(jar);
+    }
+}
@@ -0,0 +1,77 @@
+package com.nufrof.classpath.benchmarks;
+
+import com.nufrof.classpath.ClasspathGraph;
+import com.nufrof.classpath.ClasspathGraphWriter;
+import com.nufrof.classpath.ClasspathResolver;
+import com.nufrof.classpath.DotWriter;
+import com.nufrof.classpath.JsonWriter;
+import com.nufrof.classpath.TreeWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes one resolved estate in each output format to a writer that discards its input, so only
+ * the walk and the formatting are measured.  The writer is buffered the way GetCp buffers stdout.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class OutputBenchmark {
+    @Param({"1000", "10000"})
+    public int jarCount;
+
+    @Param({"tree", "json", "dot"})
+    public String format;
+
+    private ClasspathGraph graph;
+
+    private ClasspathGraphWriter graphWriter;
+
+    @Setup(Level.Trial)
+    public void resolveEstate() throws Exception {
+        Path directory = Files.createTempDirectory("output-");
+        try {
+            graph = new ClasspathResolver()
+                    .resolve(new EstateGenerator().setJarCount(jarCount).generate(directory).toString());
+        } finally {
+            EstateGenerator.delete(directory);
+        }
+        switch (format) {
+            case "tree":
+                graphWriter = new TreeWriter();
+                break;
+            case "json":
+                graphWriter = new JsonWriter();
+                break;
+            default:
+                graphWriter = new DotWriter();
+        }
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        Writer out = new BufferedWriter(Writer.nullWriter(), 1 << 16);
+        graphWriter.write(graph, out);
+        out.flush();
+    }
+}
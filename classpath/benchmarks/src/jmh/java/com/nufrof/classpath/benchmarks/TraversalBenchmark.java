@@ -0,0 +1,90 @@
+package com.nufrof.classpath.benchmarks;
+
+import com.nufrof.classpath.ClasspathGraph;
+import com.nufrof.classpath.ClasspathResolver;
+import com.nufrof.classpath.JarInspector;
+import com.nufrof.classpath.ManifestCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves a generated estate end to end, serially and in parallel, reading every manifest or
+ * answering from a manifest cache warmed by one earlier resolve.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TraversalBenchmark {
+    @Param({"1000", "10000"})
+    public int jarCount;
+
+    @Param({"4"})
+    public int fanOut;
+
+    @Param({"6"})
+    public int depth;
+
+    @Param({"0.05"})
+    public double cycleRatio;
+
+    @Param({"0.02"})
+    public double missingRatio;
+
+    @Param({"1", "8"})
+    public int parallelism;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private Path directory;
+
+    private String root;
+
+    private ManifestCache manifestCache;
+
+    @Setup(Level.Trial)
+    public void generateEstate() throws Exception {
+        directory = Files.createTempDirectory("traversal-");
+        root = new EstateGenerator()
+                .setJarCount(jarCount)
+                .setFanOut(fanOut)
+                .setDepth(depth)
+                .setCycleRatio(cycleRatio)
+                .setMissingRatio(missingRatio)
+                .generate(directory.resolve("estate"))
+                .toString();
+        if (cached) {
+            manifestCache = ManifestCache.load(directory.resolve("manifest-cache.bin"));
+            resolve();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteEstate() throws Exception {
+        EstateGenerator.delete(directory);
+    }
+
+    @Benchmark
+    public ClasspathGraph resolve() throws Exception {
+        JarInspector jarInspector = manifestCache == null ? new JarInspector() : new JarInspector(manifestCache);
+        return new ClasspathResolver(jarInspector).setParallelism(parallelism).resolve(root);
+    }
+}
@@ -0,0 +1,183 @@
+package com.nufrof.classpath.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes a synthetic jar estate for GetCp to resolve.  Jars are spread evenly over depth levels, one
+ * directory per level, and every jar above the last level names fanOut jars in its Class-Path.  Most
+ * entries point one level down; cycleRatio of them point back to a jar at the same or an earlier
+ * level, and missingRatio of them name a jar that does not exist.  Each jar is padded with
+ * incompressible class entries to about jarSize bytes.  The same settings and seed always give the
+ * same estate.
+ * <p>
+ * Resolve the directory {@link #generate(Path)} returns, which is the first level.
+ */
+public class EstateGenerator {
+    private static final int ENTRY_SIZE = 4096;
+
+    private int jarCount = 1000;
+    private int fanOut = 4;
+    private int depth = 5;
+    private double cycleRatio = 0.05;
+    private double missingRatio = 0.02;
+    private long jarSize = 4096;
+    private long seed = 42;
+
+    public static void main(String[] args) throws IOException {
+        EstateGenerator generator = new EstateGenerator();
+        Path directory = Paths.get("build/estate");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--jars":
+                    generator.setJarCount(Integer.parseInt(args[++i]));
+                    break;
+                case "--fan-out":
+                    generator.setFanOut(Integer.parseInt(args[++i]));
+                    break;
+                case "--depth":
+                    generator.setDepth(Integer.parseInt(args[++i]));
+                    break;
+                case "--cycles":
+                    generator.setCycleRatio(Double.parseDouble(args[++i]));
+                    break;
+                case "--missing":
+                    generator.setMissingRatio(Double.parseDouble(args[++i]));
+                    break;
+                case "--jar-size":
+                    generator.setJarSize(Long.parseLong(args[++i]));
+                    break;
+                case "--seed":
+                    generator.setSeed(Long.parseLong(args[++i]));
+                    break;
+                default:
+                    directory = Paths.get(args[i]);
+            }
+        }
+        System.out.println("Resolve " + generator.generate(directory).toAbsolutePath());
+    }
+
+    public EstateGenerator setJarCount(int jarCount) {
+        this.jarCount = jarCount;
+        return this;
+    }
+
+    public EstateGenerator setFanOut(int fanOut) {
+        this.fanOut = fanOut;
+        return this;
+    }
+
+    public EstateGenerator setDepth(int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    public EstateGenerator setCycleRatio(double cycleRatio) {
+        this.cycleRatio = cycleRatio;
+        return this;
+    }
+
+    public EstateGenerator setMissingRatio(double missingRatio) {
+        this.missingRatio = missingRatio;
+        return this;
+    }
+
+    public EstateGenerator setJarSize(long jarSize) {
+        this.jarSize = jarSize;
+        return this;
+    }
+
+    public EstateGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public Path generate(Path directory) throws IOException {
+        if (jarCount < 1 || depth < 1 || fanOut < 0) {
+            throw new IllegalArgumentException("Need at least one jar and one level, and a fan-out of zero or more.");
+        }
+        Random random = new Random(seed);
+        int levels = Math.min(depth, jarCount);
+        int perLevel = (jarCount + levels - 1) / levels;
+        for (int level = 0; level < levels; level++) {
+            Files.createDirectories(levelDirectory(directory, level));
+        }
+        byte[] filler = new byte[ENTRY_SIZE];
+        for (int jar = 0; jar < jarCount; jar++) {
+            int level = jar / perLevel;
+            StringBuilder classPath = new StringBuilder();
+            if (level + 1 < levels) {
+                for (int i = 0; i < fanOut; i++) {
+                    double roll = random.nextDouble();
+                    if (classPath.length() > 0) {
+                        classPath.append(' ');
+                    }
+                    if (roll < missingRatio) {
+                        classPath.append(reference(level + 1, "missing-" + jar + "-" + i));
+                    } else {
+                        int target = roll < missingRatio + cycleRatio
+                                ? random.nextInt(Math.min((level + 1) * perLevel, jarCount))
+                                : Math.min((level + 1) * perLevel + random.nextInt(perLevel), jarCount - 1);
+                        classPath.append(reference(target / perLevel, jarName(target)));
+                    }
+                }
+            }
+            writeJar(levelDirectory(directory, level).resolve(jarName(jar) + ".jar").toFile(), jar, classPath.toString(), random, filler);
+        }
+        return levelDirectory(directory, 0);
+    }
+
+    /**
+     * Deletes a generated estate, or any other directory tree.
+     */
+    public static void delete(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static Path levelDirectory(Path directory, int level) {
+        return directory.resolve("level-" + level);
+    }
+
+    private static String jarName(int jar) {
+        return "jar-" + jar;
+    }
+
+    private static String reference(int level, String jarName) {
+        return "../level-" + level + "/" + jarName + ".jar";
+    }
+
+    private void writeJar(File file, int jar, String classPath, Random random, byte[] filler) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (!classPath.isEmpty()) {
+            manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+        }
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file), manifest)) {
+            int entrySize = (int) Math.max(1, Math.min(ENTRY_SIZE, jarSize / 4));
+            for (int i = 0; file.length() + entrySize < jarSize; i++) {
+                random.nextBytes(filler);
+                out.putNextEntry(new ZipEntry("com/example/generated/jar" + jar + "/Class" + i + ".class"));
+                out.write(filler, 0, entrySize);
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.nufrof.classpath;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A zip archive's central directory read in place from a buffer holding the whole archive.  Nothing is
+ * copied until an entry is asked for, and then only that entry is inflated.  Archives with bytes in front
+ * of the first entry (launch scripts, self-extractors) are handled the way {@link java.util.zip.ZipFile}
+ * handles them.  Anything this class does not understand is reported as a {@link ZipException} so the
+ * caller can fall back to {@link java.util.zip.ZipFile}.
+ */
+final class CentralDirectory {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private final ByteBuffer archive;
+    private final int start;
+    private final int end;
+    private final long base;
+
+    CentralDirectory(ByteBuffer archive) throws ZipException {
+        this.archive = archive.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int endRecord = findEndRecord();
+        long size = Integer.toUnsignedLong(this.archive.getInt(endRecord + 12));
+        long offset = Integer.toUnsignedLong(this.archive.getInt(endRecord + 16));
+        int directoryPosition = endRecord;
+        if (size == 0xFFFFFFFFL || offset == 0xFFFFFFFFL) {
+            directoryPosition = findZip64EndRecord(endRecord);
+            size = this.archive.getLong(directoryPosition + 40);
+            offset = this.archive.getLong(directoryPosition + 48);
+        }
+        long directoryStart = directoryPosition - size;
+        if (directoryStart < 0 || directoryStart < offset) {
+            throw new ZipException("Central directory is out of bounds.");
+        }
+        this.start = (int) directoryStart;
+        this.end = directoryPosition;
+        this.base = directoryStart - offset;
+    }
+
+    /**
+     * Returns the position of the named entry's central directory header, or -1 if there is none.
+     */
+    int find(String name) throws ZipException {
+        byte[] wanted = name.getBytes(StandardCharsets.UTF_8);
+        for (int header = first(); header != -1; header = next(header)) {
+            if (nameLength(header) == wanted.length && nameEquals(header, wanted)) {
+                return header;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position of the first central directory header, or -1 for an empty archive.
+     */
+    int first() {
+        return start < end ? start : -1;
+    }
+
+    /**
+     * Returns the position of the header after this one, or -1 after the last.
+     */
+    int next(int header) throws ZipException {
+        if (archive.getInt(header) != CENTRAL_HEADER_SIGNATURE) {
+            throw new ZipException("Bad central directory header at " + header + ".");
+        }
+        int next = header + CENTRAL_HEADER_SIZE + nameLength(header) + unsignedShort(header + 30) + unsignedShort(header + 32);
+        if (next > end) {
+            throw new ZipException("Central directory header at " + header + " runs past the directory.");
+        }
+        return next < end ? next : -1;
+    }
+
+    String name(int header) {
+        byte[] bytes = new byte[nameLength(header)];
+        ByteBuffer nameBuffer = archive.duplicate();
+        nameBuffer.position(header + CENTRAL_HEADER_SIZE);
+        nameBuffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the size of the central directory and the end records after it, which is all of the
+     * archive a lookup by name has to look at.
+     */
+    int tailSize() {
+        return archive.limit() - start;
+    }
+
+    int nameLength(int header) {
+        return unsignedShort(header + 28);
+    }
+
+    /**
+     * Copies the entry's raw (UTF-8) name into dst at offset.
+     */
+    void copyName(int header, byte[] dst, int offset) {
+        ByteBuffer nameBuffer = archive.duplicate();
+        nameBuffer.position(header + CENTRAL_HEADER_SIZE);
+        nameBuffer.get(dst, offset, nameLength(header));
+    }
+
+    boolean isStored(int header) {
+        return unsignedShort(header + 10) == STORED;
+    }
+
+    long compressedSize(int header) {
+        return Integer.toUnsignedLong(archive.getInt(header + 20));
+    }
+
+    long uncompressedSize(int header) {
+        return Integer.toUnsignedLong(archive.getInt(header + 24));
+    }
+
+    /**
+     * Returns a view of the entry's bytes as they sit in the archive, still compressed if they were
+     * deflated.
+     */
+    ByteBuffer rawData(int header) throws ZipException {
+        long compressedSize = compressedSize(header);
+        long localHeader = Integer.toUnsignedLong(archive.getInt(header + 42));
+        if (compressedSize == 0xFFFFFFFFL || localHeader == 0xFFFFFFFFL || uncompressedSize(header) == 0xFFFFFFFFL) {
+            throw new ZipException("Zip64 entries are not supported.");
+        }
+        long position = base + localHeader;
+        if (position < 0 || position + LOCAL_HEADER_SIZE > archive.limit() || archive.getInt((int) position) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Bad local header for " + name(header) + ".");
+        }
+        long data = position + LOCAL_HEADER_SIZE + unsignedShort((int) position + 26) + unsignedShort((int) position + 28);
+        if (data + compressedSize > archive.limit()) {
+            throw new ZipException("Entry " + name(header) + " runs past the end of the archive.");
+        }
+        ByteBuffer raw = archive.duplicate();
+        raw.position((int) data);
+        raw.limit((int) (data + compressedSize));
+        return raw.slice();
+    }
+
+    /**
+     * Returns the entry's uncompressed bytes.
+     */
+    byte[] read(int header) throws ZipException {
+        ByteBuffer raw = rawData(header);
+        long size = uncompressedSize(header);
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new ZipException("Entry " + name(header) + " is too large to read into memory.");
+        }
+        byte[] bytes = new byte[(int) size];
+        int method = unsignedShort(header + 10);
+        if (method == STORED) {
+            raw.get(bytes);
+            return bytes;
+        }
+        if (method != DEFLATED) {
+            throw new ZipException("Unsupported compression method " + method + " for " + name(header) + ".");
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(raw);
+            int read = 0;
+            while (read < bytes.length) {
+                int inflated = inflater.inflate(bytes, read, bytes.length - read);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("Entry " + name(header) + " is truncated.");
+                }
+                read += inflated;
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            ZipException zipException = new ZipException("Entry " + name(header) + " is corrupt.");
+            zipException.initCause(e);
+            throw zipException;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private int findEndRecord() throws ZipException {
+        int last = archive.limit() - END_SIZE;
+        int first = Math.max(0, last - MAX_COMMENT_SIZE);
+        for (int position = last; position >= first; position--) {
+            if (archive.getInt(position) == END_SIGNATURE && position + END_SIZE + unsignedShort(position + 20) == archive.limit()) {
+                return position;
+            }
+        }
+        throw new ZipException("End of central directory record not found.");
+    }
+
+    private int findZip64EndRecord(int endRecord) throws ZipException {
+        int locator = endRecord - ZIP64_LOCATOR_SIZE;
+        if (locator < 0 || archive.getInt(locator) != ZIP64_LOCATOR_SIGNATURE) {
+            throw new ZipException("Zip64 end of central directory locator not found.");
+        }
+        // The locator's offset ignores any prefix, so fall back to the record sitting right before it.
+        long recorded = archive.getLong(locator + 8);
+        if (recorded >= 0 && recorded < locator && archive.getInt((int) recorded) == ZIP64_END_SIGNATURE) {
+            return (int) recorded;
+        }
+        int adjacent = locator - ZIP64_END_SIZE;
+        if (adjacent >= 0 && archive.getInt(adjacent) == ZIP64_END_SIGNATURE) {
+            return adjacent;
+        }
+        throw new ZipException("Zip64 end of central directory record not found.");
+    }
+
+    private boolean nameEquals(int header, byte[] wanted) {
+        int name = header + CENTRAL_HEADER_SIZE;
+        for (int i = 0; i < wanted.length; i++) {
+            if (archive.get(name + i) != wanted[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int unsignedShort(int position) {
+        return Short.toUnsignedInt(archive.getShort(position));
+    }
+}
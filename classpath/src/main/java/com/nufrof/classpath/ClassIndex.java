@@ -0,0 +1,368 @@
+package com.nufrof.classpath;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * The classes each jar provides, as ids into one {@link StringTable} of class names shared by every
+ * jar.  A jar is scanned only if it is not in the index or its size or last-modified time changed;
+ * otherwise its ids come straight from the index.  The index can be saved to and loaded from a file
+ * so unchanged jars are not rescanned on the next run either.
+ * <p>
+ * Class names are kept as entry names without ".class" ("com/example/Foo").  Classes under
+ * META-INF/versions/N/ count as the unversioned class, and module-info is ignored.  {@link #classesOf}
+ * may be called from many threads; scanning happens outside the lock and only interning inside it.
+ * A nested jar ({@link NestedJars}) is stamped with the jar on disk that holds it.
+ */
+public class ClassIndex {
+    private static final Logger LOGGER = Logger.getLogger(ClassIndex.class.getName());
+
+    private static final int MAGIC = 0x47435049;
+
+    private static final int VERSION = 1;
+
+    private static final int[] NO_CLASSES = new int[0];
+
+    private final Path file;
+
+    private final StringTable classNames = new StringTable();
+
+    private final StringTable packageNames = new StringTable();
+
+    private int[] packageOf = new int[1024];
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private boolean dirty;
+
+    private ClassIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * An index that lives only as long as this run.
+     */
+    public static ClassIndex inMemory() {
+        return new ClassIndex(null);
+    }
+
+    /**
+     * Loads the index from file.  A missing, unreadable or older-format file gives an empty index.
+     */
+    public static ClassIndex load(Path file) {
+        ClassIndex index = new ClassIndex(file);
+        if (!Files.exists(file)) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.info("Ignoring class index " + file + " because it was written by a different version.");
+                return index;
+            }
+            int nameCount = in.readInt();
+            byte[] name = new byte[256];
+            for (int i = 0; i < nameCount; i++) {
+                int length = in.readUnsignedShort();
+                if (length > name.length) {
+                    name = new byte[length];
+                }
+                in.readFully(name, 0, length);
+                index.internClass(name, 0, length);
+            }
+            int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                int[] classes = new int[in.readInt()];
+                for (int j = 0; j < classes.length; j++) {
+                    classes[j] = in.readInt();
+                }
+                index.entries.put(path, new Entry(new FileStamp(size, lastModified), classes));
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Ignoring unreadable class index " + file + ".", e);
+            return new ClassIndex(file);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the ids of the classes in the jar, sorted and without repeats.
+     */
+    public int[] classesOf(File jarFile) throws IOException {
+        String path = jarFile.getAbsolutePath();
+        boolean nested = NestedJars.isNested(path) && !jarFile.exists();
+        FileStamp stamp = FileStamp.of(nested ? NestedJars.outerFile(path) : jarFile);
+        synchronized (this) {
+            Entry entry = entries.get(path);
+            if (entry != null && entry.stamp.matches(stamp)) {
+                entry.seen = true;
+                return entry.classes;
+            }
+        }
+        ClassNames scanned = nested ? scanNested(jarFile) : scan(jarFile);
+        synchronized (this) {
+            int[] classes = scanned.count == 0 ? NO_CLASSES : new int[scanned.count];
+            int start = 0;
+            for (int i = 0; i < scanned.count; i++) {
+                classes[i] = internClass(scanned.bytes, start, scanned.ends[i] - start);
+                start = scanned.ends[i];
+            }
+            Arrays.sort(classes);
+            classes = distinct(classes);
+            Entry entry = new Entry(stamp, classes);
+            entry.seen = true;
+            entries.put(path, entry);
+            dirty = true;
+            return classes;
+        }
+    }
+
+    public synchronized String className(int id) {
+        return classNames.get(id).replace('/', '.');
+    }
+
+    public synchronized int classCount() {
+        return classNames.size();
+    }
+
+    public synchronized int packageOf(int classId) {
+        return packageOf[classId];
+    }
+
+    public synchronized String packageName(int packageId) {
+        return packageNames.get(packageId).replace('/', '.');
+    }
+
+    public synchronized int packageCount() {
+        return packageNames.size();
+    }
+
+    /**
+     * Writes the index back if anything changed.  Jars not looked at this run that no longer exist are
+     * dropped, and only class names some remaining jar still provides are written.
+     */
+    public synchronized void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        entries.entrySet().removeIf(mapEntry -> {
+            String path = mapEntry.getKey();
+            boolean gone = !mapEntry.getValue().seen && !(NestedJars.isNested(path) ? NestedJars.outerFile(path) : new File(path)).exists();
+            dirty |= gone;
+            return gone;
+        });
+        if (!dirty) {
+            return;
+        }
+        int[] remap = new int[classNames.size()];
+        Arrays.fill(remap, -1);
+        List<Integer> kept = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            for (int id : entry.classes) {
+                if (remap[id] == -1) {
+                    remap[id] = kept.size();
+                    kept.add(id);
+                }
+            }
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(kept.size());
+                byte[] name = new byte[256];
+                for (int id : kept) {
+                    int length = classNames.length(id);
+                    if (length > name.length) {
+                        name = new byte[length];
+                    }
+                    classNames.copy(id, name, 0);
+                    out.writeShort(length);
+                    out.write(name, 0, length);
+                }
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                    Entry entry = mapEntry.getValue();
+                    out.writeUTF(mapEntry.getKey());
+                    out.writeLong(entry.stamp.size);
+                    out.writeLong(entry.stamp.lastModified);
+                    out.writeInt(entry.classes.length);
+                    for (int id : entry.classes) {
+                        out.writeInt(remap[id]);
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private int internClass(byte[] bytes, int offset, int length) {
+        int before = classNames.size();
+        int id = classNames.intern(bytes, offset, length);
+        if (id == before) {
+            int slash = length - 1;
+            while (slash >= 0 && bytes[offset + slash] != '/') {
+                slash--;
+            }
+            if (id == packageOf.length) {
+                packageOf = Arrays.copyOf(packageOf, id * 2);
+            }
+            packageOf[id] = packageNames.intern(bytes, offset, Math.max(slash, 0));
+        }
+        return id;
+    }
+
+    private static int[] distinct(int[] sorted) {
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return count == sorted.length ? sorted : Arrays.copyOf(sorted, count);
+    }
+
+    private static ClassNames scan(File jarFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(jarFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= Integer.MAX_VALUE) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                try {
+                    return scan(new CentralDirectory(buffer));
+                } catch (ZipException e) {
+                    LOGGER.log(Level.FINE, "Falling back to ZipFile for " + jarFile + ".", e);
+                } finally {
+                    Mappings.unmap(buffer);
+                }
+            }
+        }
+        try (ZipFile zipFile = new ZipFile(jarFile)) {
+            ClassNames classNames = new ClassNames();
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                byte[] name = zipEntries.nextElement().getName().getBytes(StandardCharsets.UTF_8);
+                classNames.add(name, name.length);
+            }
+            return classNames;
+        }
+    }
+
+    private static ClassNames scanNested(File jarFile) throws IOException {
+        ClassNames classNames = NestedJars.withDirectory(jarFile.getPath(), ClassIndex::scan);
+        if (classNames == null) {
+            throw new FileNotFoundException(jarFile + " does not exist.");
+        }
+        return classNames;
+    }
+
+    private static ClassNames scan(CentralDirectory centralDirectory) throws ZipException {
+        ClassNames classNames = new ClassNames();
+        byte[] name = new byte[256];
+        for (int header = centralDirectory.first(); header != -1; header = centralDirectory.next(header)) {
+            int length = centralDirectory.nameLength(header);
+            if (length > name.length) {
+                name = new byte[length];
+            }
+            centralDirectory.copyName(header, name, 0);
+            classNames.add(name, length);
+        }
+        return classNames;
+    }
+
+    private static class Entry {
+        private final FileStamp stamp;
+        private final int[] classes;
+        private boolean seen;
+
+        private Entry(FileStamp stamp, int[] classes) {
+            this.stamp = stamp;
+            this.classes = classes;
+        }
+    }
+
+    /**
+     * The class entry names of one jar, back to back, while they wait to be interned.
+     */
+    private static class ClassNames {
+        private static final byte[] CLASS_SUFFIX = ".class".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] META_INF = "META-INF/".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] VERSIONS = "META-INF/versions/".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] MODULE_INFO = "module-info".getBytes(StandardCharsets.US_ASCII);
+
+        private byte[] bytes = new byte[4096];
+        private int[] ends = new int[64];
+        private int count;
+        private int size;
+
+        private void add(byte[] name, int length) {
+            if (!endsWith(name, length, CLASS_SUFFIX)) {
+                return;
+            }
+            int start = 0;
+            if (startsWith(name, 0, length, META_INF)) {
+                if (!startsWith(name, 0, length, VERSIONS)) {
+                    return;
+                }
+                start = VERSIONS.length;
+                while (start < length && name[start] != '/') {
+                    start++;
+                }
+                start++;
+            }
+            int end = length - CLASS_SUFFIX.length;
+            if (start >= end || (end - start == MODULE_INFO.length && startsWith(name, start, end, MODULE_INFO))) {
+                return;
+            }
+            if (size + end - start > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + end - start));
+            }
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            System.arraycopy(name, start, bytes, size, end - start);
+            size += end - start;
+            ends[count++] = size;
+        }
+
+        private static boolean startsWith(byte[] name, int from, int to, byte[] prefix) {
+            return to - from >= prefix.length && Arrays.equals(name, from, from + prefix.length, prefix, 0, prefix.length);
+        }
+
+        private static boolean endsWith(byte[] name, int length, byte[] suffix) {
+            return length >= suffix.length && Arrays.equals(name, length - suffix.length, length, suffix, 0, suffix.length);
+        }
+    }
+}
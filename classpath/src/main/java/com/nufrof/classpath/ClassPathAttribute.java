@@ -0,0 +1,17 @@
+package com.nufrof.classpath;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Manifest;
+
+final class ClassPathAttribute {
+    private ClassPathAttribute() {
+    }
+
+    static List<String> parse(Manifest manifest) {
+        String classPath = manifest.getMainAttributes().getValue("Class-Path");
+        if (classPath == null) return null;
+        List<String> classPathList = Arrays.asList(classPath.split(" "));
+        return classPathList;
+    }
+}
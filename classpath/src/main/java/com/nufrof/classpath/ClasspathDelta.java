@@ -0,0 +1,116 @@
+package com.nufrof.classpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What changed between two resolutions of the same root: files that joined the graph, files that left
+ * it, and files still in it that were replaced or now resolve differently.
+ */
+public class ClasspathDelta {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final List<String> added = new ArrayList<>();
+
+    private final List<String> removed = new ArrayList<>();
+
+    private final List<String> changed = new ArrayList<>();
+
+    private final ClasspathGraph after;
+
+    /**
+     * Compares two graphs.  Paths in touched are reported as changed when they are in both graphs even
+     * if they resolve the same, since the file itself was replaced.
+     */
+    static ClasspathDelta between(ClasspathGraph before, ClasspathGraph after, Collection<String> touched) {
+        ClasspathDelta delta = new ClasspathDelta(after);
+        Map<String, Integer> beforeIds = canonicalIds(before);
+        Map<String, Integer> afterIds = canonicalIds(after);
+        for (Map.Entry<String, Integer> entry : afterIds.entrySet()) {
+            Integer beforeId = beforeIds.get(entry.getKey());
+            if (beforeId == null) {
+                delta.added.add(entry.getKey());
+            } else if (touched.contains(entry.getKey()) || !sameResolution(before, beforeId, after, entry.getValue())) {
+                delta.changed.add(entry.getKey());
+            }
+        }
+        for (String path : beforeIds.keySet()) {
+            if (!afterIds.containsKey(path)) {
+                delta.removed.add(path);
+            }
+        }
+        Collections.sort(delta.added);
+        Collections.sort(delta.removed);
+        Collections.sort(delta.changed);
+        return delta;
+    }
+
+    private ClasspathDelta(ClasspathGraph after) {
+        this.after = after;
+    }
+
+    public List<String> getAdded() {
+        return added;
+    }
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    public List<String> getChanged() {
+        return changed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    /**
+     * One line per file: "+" added, "-" removed, "~" changed, followed by the file's current marker.
+     */
+    public void write(Writer out) throws IOException {
+        for (String path : added) {
+            out.write("+ " + path + marker(path) + LINE_SEPARATOR);
+        }
+        for (String path : removed) {
+            out.write("- " + path + LINE_SEPARATOR);
+        }
+        for (String path : changed) {
+            out.write("~ " + path + marker(path) + LINE_SEPARATOR);
+        }
+    }
+
+    private String marker(String path) {
+        String marker = after.status(after.find(path)).getMarker();
+        return marker == null ? "" : " [" + marker + "]";
+    }
+
+    private static Map<String, Integer> canonicalIds(ClasspathGraph graph) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (int id = 0; id < graph.nodeCount(); id++) {
+            if (graph.isCanonical(id)) {
+                ids.put(new File(graph.path(id)).getAbsolutePath(), id);
+            }
+        }
+        return ids;
+    }
+
+    private static boolean sameResolution(ClasspathGraph before, int beforeId, ClasspathGraph after, int afterId) {
+        if (before.status(beforeId) != after.status(afterId) || before.childCount(beforeId) != after.childCount(afterId)) {
+            return false;
+        }
+        for (int i = 0; i < before.childCount(beforeId); i++) {
+            if (!before.path(before.child(beforeId, i)).equals(after.path(after.child(afterId, i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,226 @@
+package com.nufrof.classpath;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The resolved Class-Path graph.  Every distinct path string gets an int id and edges are kept in two
+ * int arrays (compressed sparse rows), so a graph costs a few ints per edge on top of its path strings.
+ * <p>
+ * Two path strings that name the same file (a relative root and its absolute form, say) are separate
+ * nodes that share one canonical node.  Status and children are kept on the canonical node, and
+ * {@link #status(int)} and {@link #childCount(int)} answer for it whichever id they are given.  Writers
+ * print {@link #path(int)} of the id they were handed and track what they have visited by
+ * {@link #canonical(int)}, which reproduces the original output exactly.
+ */
+public final class ClasspathGraph {
+    private static final JarStatus[] STATUSES = JarStatus.values();
+
+    private final int root;
+    private final String[] paths;
+    private final int[] canonical;
+    private final byte[] status;
+    private final int[] edgeStart;
+    private final int[] edgeTargets;
+    private final Map<String, Integer> idsByAbsolutePath;
+
+    private ClasspathGraph(int root, String[] paths, int[] canonical, byte[] status, int[] edgeStart, int[] edgeTargets, Map<String, Integer> idsByAbsolutePath) {
+        this.root = root;
+        this.paths = paths;
+        this.canonical = canonical;
+        this.status = status;
+        this.edgeStart = edgeStart;
+        this.edgeTargets = edgeTargets;
+        this.idsByAbsolutePath = idsByAbsolutePath;
+    }
+
+    public int root() {
+        return root;
+    }
+
+    public int nodeCount() {
+        return paths.length;
+    }
+
+    public int edgeCount() {
+        return edgeTargets.length;
+    }
+
+    public String path(int id) {
+        return paths[id];
+    }
+
+    public int canonical(int id) {
+        return canonical[id];
+    }
+
+    public boolean isCanonical(int id) {
+        return canonical[id] == id;
+    }
+
+    public JarStatus status(int id) {
+        return STATUSES[status[canonical[id]]];
+    }
+
+    public int childCount(int id) {
+        int c = canonical[id];
+        return edgeStart[c + 1] - edgeStart[c];
+    }
+
+    public int child(int id, int index) {
+        return edgeTargets[edgeStart[canonical[id]] + index];
+    }
+
+    /**
+     * Returns the canonical ids of the jars that exist, in the order a class loader would search them:
+     * the order the tree output first prints them in.  Directories and missing jars are left out.
+     */
+    public int[] jarsInClasspathOrder() {
+        int[] order = new int[paths.length];
+        int count = 0;
+        BitSet visited = new BitSet(paths.length);
+        // Frames of (node, next edge), so memory follows the depth of the walk rather than its width.
+        int[] nodes = new int[16];
+        int[] nextEdge = new int[16];
+        int top = 0;
+        int c = canonical[root];
+        visited.set(c);
+        order[count++] = c;
+        nodes[top] = c;
+        nextEdge[top++] = edgeStart[c];
+        while (top > 0) {
+            int frame = top - 1;
+            if (nextEdge[frame] == edgeStart[nodes[frame] + 1]) {
+                top--;
+                continue;
+            }
+            c = canonical[edgeTargets[nextEdge[frame]++]];
+            if (visited.get(c)) {
+                continue;
+            }
+            visited.set(c);
+            order[count++] = c;
+            if (top == nodes.length) {
+                nodes = Arrays.copyOf(nodes, top * 2);
+                nextEdge = Arrays.copyOf(nextEdge, top * 2);
+            }
+            nodes[top] = c;
+            nextEdge[top++] = edgeStart[c];
+        }
+        int jars = 0;
+        for (int i = 0; i < count; i++) {
+            JarStatus nodeStatus = status(order[i]);
+            if (nodeStatus == JarStatus.JAR || nodeStatus == JarStatus.NO_CLASS_PATH) {
+                order[jars++] = order[i];
+            }
+        }
+        return Arrays.copyOf(order, jars);
+    }
+
+    /**
+     * Returns the canonical id of the node for the given path, or -1 if the path is not in the graph.
+     */
+    public int find(String path) {
+        Integer id = idsByAbsolutePath.get(new File(path).getAbsolutePath());
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Collects a graph while it is being resolved.  All methods are synchronized so a parallel
+     * resolver can share one builder.
+     */
+    static final class Builder {
+        private static final byte UNRESOLVED = -1;
+
+        private final Map<String, Integer> idsByPath = new HashMap<>();
+        private final Map<String, Integer> idsByAbsolutePath = new HashMap<>();
+        private final BitSet claimed = new BitSet();
+        private String[] paths = new String[64];
+        private int[] canonical = new int[64];
+        private byte[] status = new byte[64];
+        private int[][] children = new int[64][];
+        private int nodeCount;
+        private int edgeCount;
+
+        /**
+         * Returns the id for the path string, creating the node (and its canonical node) if needed.
+         */
+        synchronized int node(String path) {
+            Integer id = idsByPath.get(path);
+            if (id != null) {
+                return id;
+            }
+            if (nodeCount == paths.length) {
+                int capacity = nodeCount * 2;
+                paths = Arrays.copyOf(paths, capacity);
+                canonical = Arrays.copyOf(canonical, capacity);
+                status = Arrays.copyOf(status, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            int newId = nodeCount++;
+            paths[newId] = path;
+            status[newId] = UNRESOLVED;
+            canonical[newId] = idsByAbsolutePath.computeIfAbsent(new File(path).getAbsolutePath(), absolutePath -> newId);
+            idsByPath.put(path, newId);
+            return newId;
+        }
+
+        synchronized String path(int id) {
+            return paths[id];
+        }
+
+        /**
+         * Returns true the first time any path naming the same file as id is claimed.  Only the caller
+         * that gets true inspects the node.
+         */
+        synchronized boolean claim(int id) {
+            int c = canonical[id];
+            if (claimed.get(c)) {
+                return false;
+            }
+            claimed.set(c);
+            return true;
+        }
+
+        /**
+         * Records what inspecting the node turned up and returns the ids of its children in order.
+         */
+        synchronized int[] resolve(int id, JarInfo jarInfo) {
+            int c = canonical[id];
+            List<String> childPaths = jarInfo.getChildren();
+            int[] childIds = new int[childPaths.size()];
+            for (int i = 0; i < childIds.length; i++) {
+                childIds[i] = node(childPaths.get(i));
+            }
+            if (children[c] != null) {
+                edgeCount -= children[c].length;
+            }
+            status[c] = (byte) jarInfo.getStatus().ordinal();
+            children[c] = childIds;
+            edgeCount += childIds.length;
+            return childIds;
+        }
+
+        synchronized ClasspathGraph build(int root) {
+            int[] edgeStart = new int[nodeCount + 1];
+            int[] edgeTargets = new int[edgeCount];
+            int edge = 0;
+            for (int id = 0; id < nodeCount; id++) {
+                edgeStart[id] = edge;
+                if (canonical[id] == id && children[id] != null) {
+                    System.arraycopy(children[id], 0, edgeTargets, edge, children[id].length);
+                    edge += children[id].length;
+                }
+                if (canonical[id] == id && status[id] == UNRESOLVED) {
+                    throw new IllegalStateException("Node " + paths[id] + " was never resolved.");
+                }
+            }
+            edgeStart[nodeCount] = edge;
+            return new ClasspathGraph(root, Arrays.copyOf(paths, nodeCount), Arrays.copyOf(canonical, nodeCount), Arrays.copyOf(status, nodeCount), edgeStart, edgeTargets, new HashMap<>(idsByAbsolutePath));
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.nufrof.classpath;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streams a {@link ClasspathGraph} out in some format.  Implementations write as they walk and keep
+ * no more than a visited set, so output size does not drive memory.
+ */
+public interface ClasspathGraphWriter {
+    void write(ClasspathGraph graph, Writer out) throws IOException;
+}
@@ -0,0 +1,120 @@
+package com.nufrof.classpath;
+
+import java.util.Arrays;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Resolves the Class-Path closure of a jar or directory into a {@link ClasspathGraph}.  Every reachable
+ * file is inspected exactly once.  With a parallelism above one the inspections run on a fork-join pool
+ * of that size; the graph, and so everything written from it, is the same either way.  Neither mode
+ * recurses per hop, so the depth of a Class-Path chain is not limited by the thread stack.
+ */
+public class ClasspathResolver {
+    private final JarInspector jarInspector;
+
+    private int parallelism = 1;
+
+    public ClasspathResolver() {
+        this(new JarInspector());
+    }
+
+    public ClasspathResolver(JarInspector jarInspector) {
+        this.jarInspector = jarInspector;
+    }
+
+    public ClasspathResolver setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, but was " + parallelism + ".");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public ClasspathGraph resolve(String jarPath) throws Exception {
+        ClasspathGraph.Builder builder = new ClasspathGraph.Builder();
+        int root = builder.node(jarPath);
+        builder.claim(root);
+        if (parallelism == 1) {
+            resolveSerially(builder, root);
+        } else {
+            resolveInParallel(builder, root);
+        }
+        return builder.build(root);
+    }
+
+    private void resolveSerially(ClasspathGraph.Builder builder, int root) throws Exception {
+        int[] pending = new int[16];
+        int top = 0;
+        pending[top++] = root;
+        while (top > 0) {
+            int id = pending[--top];
+            for (int child : builder.resolve(id, jarInspector.inspect(builder.path(id)))) {
+                if (builder.claim(child)) {
+                    if (top == pending.length) {
+                        pending = Arrays.copyOf(pending, top * 2);
+                    }
+                    pending[top++] = child;
+                }
+            }
+        }
+    }
+
+    private void resolveInParallel(ClasspathGraph.Builder builder, int root) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new ResolveTask(null, builder, root));
+        } catch (InspectionException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Inspects one node and forks a task per newly claimed child without waiting for them; the root
+     * completes once every task below it has.
+     */
+    private class ResolveTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final ClasspathGraph.Builder builder;
+        private final int id;
+
+        private ResolveTask(CountedCompleter<?> parent, ClasspathGraph.Builder builder, int id) {
+            super(parent);
+            this.builder = builder;
+            this.id = id;
+        }
+
+        @Override
+        public void compute() {
+            JarInfo jarInfo;
+            try {
+                jarInfo = jarInspector.inspect(builder.path(id));
+            } catch (Exception e) {
+                throw new InspectionException(e);
+            }
+            for (int child : builder.resolve(id, jarInfo)) {
+                if (builder.claim(child)) {
+                    addToPendingCount(1);
+                    new ResolveTask(this, builder, child).fork();
+                }
+            }
+            tryComplete();
+        }
+    }
+
+    private static class InspectionException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private InspectionException(Exception cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized Exception getCause() {
+            return (Exception) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.nufrof.classpath;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a {@link ClasspathGraph} current while jars are copied in, replaced and deleted.  Every
+ * directory that holds a file of the graph is watched, including directories the graph expands and
+ * the directories of missing jars.  After a burst of changes goes quiet, only the changed files (and
+ * the listings of directories that gained or lost a jar) are read again; everything else is answered
+ * from what the previous resolution found.  The listener gets the new graph and what changed.
+ */
+public class ClasspathWatcher implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(ClasspathWatcher.class.getName());
+
+    public interface Listener {
+        void onChange(ClasspathGraph graph, ClasspathDelta delta) throws IOException;
+    }
+
+    private final String jarPath;
+
+    private final MemoizingJarInspector jarInspector;
+
+    private final ClasspathResolver resolver;
+
+    private final Listener listener;
+
+    private final WatchService watchService;
+
+    private final Map<Path, WatchKey> watchKeys = new HashMap<>();
+
+    private long quietPeriodMillis = 250;
+
+    private ClasspathGraph graph;
+
+    public ClasspathWatcher(String jarPath, JarInspector jarInspector, int parallelism, Listener listener) throws IOException {
+        this.jarPath = jarPath;
+        this.jarInspector = new MemoizingJarInspector(jarInspector);
+        this.resolver = new ClasspathResolver(this.jarInspector).setParallelism(parallelism);
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    public ClasspathWatcher setQuietPeriodMillis(long quietPeriodMillis) {
+        this.quietPeriodMillis = quietPeriodMillis;
+        return this;
+    }
+
+    /**
+     * Resolves the graph for the first time and starts watching its directories.
+     */
+    public ClasspathGraph start() throws Exception {
+        graph = resolver.resolve(jarPath);
+        updateWatchedDirectories();
+        return graph;
+    }
+
+    public ClasspathGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Waits for changes and reports them to the listener until the watcher is closed or the thread is
+     * interrupted.
+     */
+    public void run() throws Exception {
+        try {
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = collect(watchService.take(), changed);
+                WatchKey key;
+                while ((key = watchService.poll(quietPeriodMillis, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= collect(key, changed);
+                }
+                if (overflow) {
+                    jarInspector.invalidateAll();
+                }
+                if (overflow || !changed.isEmpty()) {
+                    ClasspathDelta delta = refresh(changed);
+                    if (!delta.isEmpty()) {
+                        listener.onChange(graph, delta);
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            LOGGER.fine("Stopped watching " + jarPath + ".");
+        }
+    }
+
+    /**
+     * Re-resolves after the given files changed and returns what that did to the graph.
+     */
+    ClasspathDelta refresh(Collection<Path> changedPaths) throws Exception {
+        Set<String> touched = new HashSet<>();
+        for (Path changedPath : changedPaths) {
+            String path = changedPath.toFile().getAbsolutePath();
+            if (jarInspector.invalidate(path)) {
+                touched.add(path);
+            }
+            // A jar appearing in or vanishing from a directory the graph expands changes its listing.
+            String parent = changedPath.toFile().getAbsoluteFile().getParent();
+            int parentId = parent == null ? -1 : graph.find(parent);
+            if (parentId != -1 && graph.status(parentId) == JarStatus.DIRECTORY) {
+                jarInspector.invalidate(parent);
+            }
+        }
+        ClasspathGraph before = graph;
+        graph = resolver.resolve(jarPath);
+        updateWatchedDirectories();
+        return ClasspathDelta.between(before, graph, touched);
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private boolean collect(WatchKey key, Set<Path> changed) {
+        Path directory = (Path) key.watchable();
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (path.getFileName().toString().endsWith(".jar") || graph.find(path.toString()) != -1) {
+                changed.add(path);
+            }
+        }
+        key.reset();
+        return overflow;
+    }
+
+    private void updateWatchedDirectories() throws IOException {
+        Set<Path> directories = new HashSet<>();
+        for (int id = 0; id < graph.nodeCount(); id++) {
+            if (!graph.isCanonical(id)) {
+                continue;
+            }
+            File file = new File(graph.path(id)).getAbsoluteFile();
+            if (graph.status(id) == JarStatus.DIRECTORY) {
+                directories.add(file.toPath());
+            }
+            File parent = file.getParentFile();
+            if (parent != null && parent.isDirectory()) {
+                directories.add(parent.toPath());
+            }
+        }
+        for (Iterator<Map.Entry<Path, WatchKey>> iterator = watchKeys.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Path, WatchKey> entry = iterator.next();
+            if (!directories.contains(entry.getKey()) || !entry.getValue().isValid()) {
+                entry.getValue().cancel();
+                iterator.remove();
+            }
+        }
+        for (Path directory : directories) {
+            if (!watchKeys.containsKey(directory) && Files.isDirectory(directory)) {
+                watchKeys.put(directory, directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY));
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.nufrof.classpath;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the graph in Graphviz DOT.  Missing jars are drawn dashed, jars without a Class-Path grey and
+ * directories as folders.  Paths that name the same file are folded into one node.
+ */
+public class DotWriter implements ClasspathGraphWriter {
+    @Override
+    public void write(ClasspathGraph graph, Writer out) throws IOException {
+        out.write("digraph classpath {\n");
+        out.write("  node [shape=box];\n");
+        for (int id = 0; id < graph.nodeCount(); id++) {
+            if (!graph.isCanonical(id)) {
+                continue;
+            }
+            out.write("  n");
+            out.write(Integer.toString(id));
+            out.write(" [label=");
+            writeString(graph.path(id), out);
+            out.write(attributes(graph.status(id)));
+            out.write("];\n");
+        }
+        for (int id = 0; id < graph.nodeCount(); id++) {
+            if (!graph.isCanonical(id)) {
+                continue;
+            }
+            for (int i = 0; i < graph.childCount(id); i++) {
+                out.write("  n");
+                out.write(Integer.toString(id));
+                out.write(" -> n");
+                out.write(Integer.toString(graph.canonical(graph.child(id, i))));
+                out.write(";\n");
+            }
+        }
+        out.write("}\n");
+    }
+
+    private static String attributes(JarStatus status) {
+        switch (status) {
+            case MISSING:
+                return ", style=dashed, color=red";
+            case NO_CLASS_PATH:
+                return ", style=filled, fillcolor=lightgrey";
+            case DIRECTORY:
+                return ", shape=folder";
+            default:
+                return "";
+        }
+    }
+
+    private static void writeString(String value, Writer out) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,111 @@
+package com.nufrof.classpath;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Finds classes and packages that more than one jar of a resolved {@link ClasspathGraph} provides.
+ * Jars are scanned concurrently into a {@link ClassIndex}; with a saved index only jars that changed
+ * since the last run are opened at all.
+ */
+public class DuplicateClassDetector {
+    private final ClassIndex classIndex;
+
+    private int parallelism = 1;
+
+    public DuplicateClassDetector() {
+        this(ClassIndex.inMemory());
+    }
+
+    public DuplicateClassDetector(ClassIndex classIndex) {
+        this.classIndex = classIndex;
+    }
+
+    public DuplicateClassDetector setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, but was " + parallelism + ".");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public DuplicateClassReport detect(ClasspathGraph graph) throws Exception {
+        int[] jars = graph.jarsInClasspathOrder();
+        int[][] classesByJar = scan(graph, jars);
+
+        // For each class remember the first jar that has it; only classes seen again get a list.
+        int[] firstJar = new int[classIndex.classCount()];
+        Arrays.fill(firstJar, -1);
+        Map<Integer, List<Integer>> duplicateClasses = new HashMap<>();
+        int[] firstPackageJar = new int[classIndex.packageCount()];
+        int[] lastPackageJar = new int[firstPackageJar.length];
+        Arrays.fill(firstPackageJar, -1);
+        Map<Integer, List<Integer>> splitPackages = new HashMap<>();
+        for (int jar = 0; jar < jars.length; jar++) {
+            for (int classId : classesByJar[jar]) {
+                if (firstJar[classId] == -1) {
+                    firstJar[classId] = jar;
+                } else {
+                    duplicateClasses.computeIfAbsent(classId, id -> new ArrayList<>(Arrays.asList(firstJar[id]))).add(jar);
+                }
+                int packageId = classIndex.packageOf(classId);
+                if (firstPackageJar[packageId] == -1) {
+                    firstPackageJar[packageId] = jar;
+                    lastPackageJar[packageId] = jar;
+                } else if (lastPackageJar[packageId] != jar) {
+                    lastPackageJar[packageId] = jar;
+                    splitPackages.computeIfAbsent(packageId, id -> new ArrayList<>(Arrays.asList(firstPackageJar[id]))).add(jar);
+                }
+            }
+        }
+        return new DuplicateClassReport(toConflicts(duplicateClasses, true, graph, jars), toConflicts(splitPackages, false, graph, jars));
+    }
+
+    private int[][] scan(ClasspathGraph graph, int[] jars) throws Exception {
+        int[][] classesByJar = new int[jars.length][];
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+            for (int i = 0; i < jars.length; i++) {
+                int jar = i;
+                completionService.submit(() -> {
+                    classesByJar[jar] = classIndex.classesOf(new File(graph.path(jars[jar])));
+                    return null;
+                });
+            }
+            for (int i = 0; i < jars.length; i++) {
+                try {
+                    completionService.take().get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return classesByJar;
+    }
+
+    private List<DuplicateClassReport.Conflict> toConflicts(Map<Integer, List<Integer>> conflicts, boolean classes, ClasspathGraph graph, int[] jars) {
+        List<DuplicateClassReport.Conflict> result = new ArrayList<>(conflicts.size());
+        for (Map.Entry<Integer, List<Integer>> conflict : conflicts.entrySet()) {
+            String name = classes ? classIndex.className(conflict.getKey()) : classIndex.packageName(conflict.getKey());
+            List<String> paths = new ArrayList<>(conflict.getValue().size());
+            for (int jar : conflict.getValue()) {
+                paths.add(graph.path(jars[jar]));
+            }
+            result.add(new DuplicateClassReport.Conflict(name.isEmpty() ? "(default package)" : name, paths));
+        }
+        result.sort(Comparator.comparing(DuplicateClassReport.Conflict::getName));
+        return result;
+    }
+}
@@ -0,0 +1,66 @@
+package com.nufrof.classpath;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Classes and packages that more than one jar on the resolved classpath provides.  Each conflict lists
+ * its jars in classpath order, so the first jar is the one that wins and the rest are shadowed.
+ */
+public class DuplicateClassReport {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final List<Conflict> duplicateClasses;
+
+    private final List<Conflict> splitPackages;
+
+    DuplicateClassReport(List<Conflict> duplicateClasses, List<Conflict> splitPackages) {
+        this.duplicateClasses = Collections.unmodifiableList(duplicateClasses);
+        this.splitPackages = Collections.unmodifiableList(splitPackages);
+    }
+
+    public List<Conflict> getDuplicateClasses() {
+        return duplicateClasses;
+    }
+
+    public List<Conflict> getSplitPackages() {
+        return splitPackages;
+    }
+
+    public void write(Writer out) throws IOException {
+        out.write("Duplicate classes: " + duplicateClasses.size() + " (the first jar listed wins)" + LINE_SEPARATOR);
+        write(duplicateClasses, out);
+        out.write("Split packages: " + splitPackages.size() + LINE_SEPARATOR);
+        write(splitPackages, out);
+    }
+
+    private static void write(List<Conflict> conflicts, Writer out) throws IOException {
+        for (Conflict conflict : conflicts) {
+            out.write(conflict.getName() + LINE_SEPARATOR);
+            for (String jar : conflict.getJars()) {
+                out.write("  - " + jar + LINE_SEPARATOR);
+            }
+        }
+    }
+
+    public static class Conflict {
+        private final String name;
+
+        private final List<String> jars;
+
+        Conflict(String name, List<String> jars) {
+            this.name = name;
+            this.jars = Collections.unmodifiableList(jars);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getJars() {
+            return jars;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.nufrof.classpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A file's size and last-modified time, read with a single stat.  The caches use it to tell whether a
+ * jar has changed since it was last read.
+ */
+final class FileStamp {
+    final long size;
+    final long lastModified;
+
+    FileStamp(long size, long lastModified) {
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    static FileStamp of(File file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        return new FileStamp(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+    }
+
+    boolean matches(FileStamp other) {
+        return size == other.size && lastModified == other.lastModified;
+    }
+}
@@ -1,90 +1,128 @@
 package com.nufrof.classpath;
 
-import java.io.File;
-import java.io.InputStream;
-import java.nio.file.Path;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-import java.util.jar.Manifest;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 public class GetCp {
-    private static Set<String> alreadyScanned = new HashSet<>();
+    private static final int SLOWEST_COUNT = 10;
 
     public static void main(String[] args) throws Exception {
-        System.out.println("AS = Already Scanned.");
-        System.out.println("NCP = Either no MANIFEST.MF or no Class-Path attribute in the MANIFEST.MF.");
-        System.out.println("DNE = The jar doesn't exist.");
-        traverse(args[0], null);
-    }
-
-    public static void traverse(String jarPath, Integer iteration) throws Exception {
-        if (iteration == null) {
-            iteration = 0;
-        }
-        String spacer = "";
-        for (int i = 0; i < iteration; i++) {
-            spacer += "  ";
+        String jarPath = null;
+        Integer parallelism = null;
+        ManifestCache manifestCache = null;
+        String format = "tree";
+        boolean duplicates = false;
+        boolean watch = false;
+        boolean nested = false;
+        ResolutionStats stats = null;
+        ClassIndex classIndex = ClassIndex.inMemory();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--parallel")) {
+                parallelism = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--cache")) {
+                manifestCache = ManifestCache.load(Paths.get(args[++i]));
+            } else if (args[i].equals("--format")) {
+                format = args[++i];
+            } else if (args[i].equals("--watch")) {
+                watch = true;
+            } else if (args[i].equals("--stats")) {
+                stats = new ResolutionStats();
+            } else if (args[i].equals("--nested")) {
+                nested = true;
+            } else if (args[i].equals("--duplicates")) {
+                duplicates = true;
+            } else if (args[i].equals("--class-index")) {
+                classIndex = ClassIndex.load(Paths.get(args[++i]));
+            } else {
+                jarPath = args[i];
+            }
         }
-        spacer += "- ";
-        File jarFile = new File(jarPath);
-        if (alreadyScanned.contains(jarFile.getAbsolutePath())) {
-            System.out.println(spacer + jarPath + " [AS]");
+        ClasspathGraphWriter graphWriter = getWriter(format);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        JarInspector jarInspector = new JarInspector(manifestCache).setNested(nested);
+        if (watch) {
+            // A watch runs until it is stopped, so there is never a summary to print.
+            watch(jarPath, jarInspector, manifestCache, parallelism == null ? 1 : parallelism, graphWriter, out);
             return;
         }
-        alreadyScanned.add(jarFile.getAbsolutePath());
-        if (!doesJarExist(jarPath)) {
-            System.out.println(spacer + jarPath + " [DNE]");
-            return;
+        ClasspathResolver resolver = new ClasspathResolver(jarInspector.setStats(stats));
+        if (parallelism != null) {
+            resolver.setParallelism(parallelism);
         }
-        if (jarFile.isDirectory()) {
-            for (File file : jarFile.listFiles()) {
-                if (file.getName().endsWith(".jar")) {
-                    traverse(file.getAbsolutePath(), iteration);
-                }
+        ClasspathGraph graph = resolver.resolve(jarPath);
+        if (duplicates) {
+            new DuplicateClassDetector(classIndex).setParallelism(parallelism == null ? 1 : parallelism).detect(graph).write(out);
+            classIndex.save();
+        } else {
+            if (graphWriter instanceof TreeWriter) {
+                TreeWriter.writeLegend(out);
             }
-            return;
+            graphWriter.write(graph, out);
         }
-        List<String> classPathList = getJarsManifestClasspath(jarPath);
-        if (classPathList == null || classPathList.isEmpty()) {
-            System.out.println(spacer + jarPath + " [NCP]");
-            return;
-        } else {
-            System.out.println(spacer + jarPath);
+        out.flush();
+        if (manifestCache != null) {
+            manifestCache.save();
+        }
+        if (stats != null) {
+            Writer err = new BufferedWriter(new OutputStreamWriter(System.err));
+            stats.write(err, SLOWEST_COUNT);
+            err.flush();
         }
-        for (String s : classPathList) {
-            String depPath = getAbsolutePathOfDependency(jarPath, s);
-            traverse(depPath, iteration + 1);
+    }
+
+    /**
+     * Prints the graph once, then prints a delta each time a jar in it is added, replaced or removed.
+     * Runs until the process is stopped.
+     */
+    private static void watch(String jarPath, JarInspector jarInspector, ManifestCache manifestCache, int parallelism, ClasspathGraphWriter graphWriter, Writer out) throws Exception {
+        try (ClasspathWatcher watcher = new ClasspathWatcher(jarPath, jarInspector, parallelism, (graph, delta) -> {
+            delta.write(out);
+            out.flush();
+            if (manifestCache != null) {
+                manifestCache.save();
+            }
+        })) {
+            if (graphWriter instanceof TreeWriter) {
+                TreeWriter.writeLegend(out);
+            }
+            graphWriter.write(watcher.start(), out);
+            out.flush();
+            watcher.run();
         }
     }
 
-    private static String getAbsolutePathOfDependency(String jarFilePath, String dependencyPathFromManifest) {
-        Path jarPath = Paths.get(new File(jarFilePath).getParent());
-        Path dependencyPath = Paths.get(dependencyPathFromManifest);
-        if (dependencyPath.isAbsolute()) {
-            return dependencyPathFromManifest;
+    /**
+     * Resolves the tree rooted at jarPath and prints it to stdout, indented by iteration levels.
+     */
+    public static void traverse(String jarPath, Integer iteration) throws Exception {
+        if (iteration == null) {
+            iteration = 0;
         }
-        return Paths.get(jarPath.toString(), dependencyPath.toString()).toAbsolutePath().normalize().toString();
+        ClasspathGraph graph = resolve(jarPath);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        new TreeWriter(iteration).write(graph, out);
+        out.flush();
     }
 
-    private static boolean doesJarExist(String pathToJar) {
-        File file = new File(pathToJar);
-        return file.exists();
+    /**
+     * Resolves the Class-Path closure of a jar, or of every jar in a directory, without printing it.
+     */
+    public static ClasspathGraph resolve(String jarPath) throws Exception {
+        return new ClasspathResolver().resolve(jarPath);
     }
 
-    private static List<String> getJarsManifestClasspath(String pathToJar) throws Exception {
-        ZipFile zipFile = new ZipFile(pathToJar);
-        ZipEntry manifestEntry = zipFile.getEntry("META-INF/MANIFEST.MF");
-        if (manifestEntry == null) return null;
-        InputStream inputStream = zipFile.getInputStream(manifestEntry);
-        Manifest manifest = new Manifest(inputStream);
-        String classPath = manifest.getMainAttributes().getValue("Class-Path");
-        if (classPath == null) return null;
-        List<String> classPathList = Arrays.asList(classPath.split(" "));
-        return classPathList;
+    private static ClasspathGraphWriter getWriter(String format) {
+        switch (format) {
+            case "tree":
+                return new TreeWriter();
+            case "json":
+                return new JsonWriter();
+            case "dot":
+                return new DotWriter();
+            default:
+                throw new IllegalArgumentException("Unknown format " + format + ".  Use tree, json or dot.");
+        }
     }
 }
@@ -0,0 +1,26 @@
+package com.nufrof.classpath;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a single look at a jar path turned up: its {@link JarStatus} and the paths it leads to next.
+ * Children are already in the form the tree output prints them.
+ */
+public final class JarInfo {
+    private final JarStatus status;
+    private final List<String> children;
+
+    JarInfo(JarStatus status, List<String> children) {
+        this.status = status;
+        this.children = children == null ? Collections.emptyList() : children;
+    }
+
+    public JarStatus getStatus() {
+        return status;
+    }
+
+    public List<String> getChildren() {
+        return children;
+    }
+}
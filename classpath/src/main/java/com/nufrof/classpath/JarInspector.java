@@ -0,0 +1,207 @@
+package com.nufrof.classpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Does the file system work for one node of the walk.  Holds no per-walk state so the same instance
+ * can be shared by every thread of a parallel {@link ClasspathResolver}.  When given a
+ * {@link ManifestCache} the cache is consulted before the jar is opened.  Manifests are read with a
+ * {@link MappedManifestReader} unless another {@link ManifestReader} is supplied.
+ * <p>
+ * With {@link #setNested(boolean)} the library jars packed inside a jar (BOOT-INF/lib, WEB-INF/lib)
+ * follow its Class-Path entries as children, under paths like app.jar!/BOOT-INF/lib/lib.jar, and are
+ * read in place by {@link NestedJars}.  A jar that holds libraries is a JAR even without a Class-Path.
+ * The libraries of a jar on disk are cached with its Class-Path, so a cached jar is not opened to list
+ * them; nested jars themselves never go through the manifest cache.
+ * <p>
+ * With {@link #setStats(ResolutionStats)} each inspection is timed stage by stage.  Without it no
+ * clock is read.
+ */
+public class JarInspector {
+    private final ManifestCache manifestCache;
+
+    private final ManifestReader manifestReader;
+
+    private boolean nested;
+
+    private ResolutionStats stats;
+
+    public JarInspector() {
+        this(null);
+    }
+
+    public JarInspector(ManifestCache manifestCache) {
+        this(manifestCache, new MappedManifestReader());
+    }
+
+    public JarInspector(ManifestCache manifestCache, ManifestReader manifestReader) {
+        this.manifestCache = manifestCache;
+        this.manifestReader = manifestReader;
+    }
+
+    public JarInspector setNested(boolean nested) {
+        this.nested = nested;
+        return this;
+    }
+
+    /**
+     * Records what each inspection spends its time on in stats.  Off (null) by default.
+     */
+    public JarInspector setStats(ResolutionStats stats) {
+        this.stats = stats;
+        return this;
+    }
+
+    public JarInfo inspect(String jarPath) throws Exception {
+        if (stats == null) {
+            return inspect(jarPath, null);
+        }
+        ResolutionStats.JarTiming timing = stats.start(jarPath);
+        try {
+            return inspect(jarPath, timing);
+        } finally {
+            stats.finish(timing);
+        }
+    }
+
+    private JarInfo inspect(String jarPath, ResolutionStats.JarTiming timing) throws Exception {
+        File jarFile = new File(jarPath);
+        long start = now(timing);
+        boolean exists = doesJarExist(jarPath);
+        boolean directory = exists && jarFile.isDirectory();
+        start = record(timing, ResolutionStats.Stage.EXISTENCE_CHECK, start);
+        if (!exists) {
+            if (nested && NestedJars.isNested(jarPath)) {
+                return inspectNested(jarPath, timing);
+            }
+            return new JarInfo(JarStatus.MISSING, null);
+        }
+        if (directory) {
+            List<String> jars = new ArrayList<>();
+            for (File file : jarFile.listFiles()) {
+                if (file.getName().endsWith(".jar")) {
+                    jars.add(file.getAbsolutePath());
+                }
+            }
+            if (timing != null) {
+                timing.fileOpened();
+                record(timing, ResolutionStats.Stage.DIRECTORY_LISTING, start);
+            }
+            return new JarInfo(JarStatus.DIRECTORY, jars);
+        }
+        List<String> classPathList = getClassPath(jarFile, timing);
+        List<String> libraries = nested ? getLibraries(jarFile, timing) : Collections.emptyList();
+        return toJarInfo(jarPath, classPathList, libraries, timing);
+    }
+
+    private static JarInfo inspectNested(String jarPath, ResolutionStats.JarTiming timing) throws IOException {
+        long start = now(timing);
+        NestedJars.Contents contents = NestedJars.inspect(jarPath);
+        if (timing != null) {
+            timing.fileOpened();
+            record(timing, ResolutionStats.Stage.ZIP_OPEN, start);
+        }
+        if (contents == null) {
+            return new JarInfo(JarStatus.MISSING, null);
+        }
+        return toJarInfo(jarPath, contents.classPath, contents.libraries, timing);
+    }
+
+    private static JarInfo toJarInfo(String jarPath, List<String> classPathList, List<String> libraries, ResolutionStats.JarTiming timing) {
+        if ((classPathList == null || classPathList.isEmpty()) && libraries.isEmpty()) {
+            return new JarInfo(JarStatus.NO_CLASS_PATH, null);
+        }
+        long start = now(timing);
+        List<String> dependencies = new ArrayList<>((classPathList == null ? 0 : classPathList.size()) + libraries.size());
+        if (classPathList != null) {
+            for (String s : classPathList) {
+                dependencies.add(getAbsolutePathOfDependency(jarPath, s));
+            }
+        }
+        dependencies.addAll(libraries);
+        record(timing, ResolutionStats.Stage.PATH_NORMALIZATION, start);
+        return new JarInfo(JarStatus.JAR, dependencies);
+    }
+
+    private List<String> getClassPath(File jarFile, ResolutionStats.JarTiming timing) throws Exception {
+        if (manifestCache == null) {
+            return readClassPath(jarFile, timing);
+        }
+        long start = now(timing);
+        List<String> classPathList = manifestCache.get(jarFile);
+        record(timing, ResolutionStats.Stage.CACHE_LOOKUP, start);
+        if (stats != null) {
+            if (classPathList == null) {
+                stats.cacheMiss();
+            } else {
+                stats.cacheHit();
+            }
+        }
+        if (classPathList == null) {
+            classPathList = readClassPath(jarFile, timing);
+            manifestCache.put(jarFile, classPathList);
+        }
+        return classPathList;
+    }
+
+    // Must follow getClassPath, which leaves the jar in the manifest cache.
+    private List<String> getLibraries(File jarFile, ResolutionStats.JarTiming timing) throws IOException {
+        long start = now(timing);
+        if (manifestCache != null) {
+            List<String> libraries = manifestCache.getLibraries(jarFile);
+            start = record(timing, ResolutionStats.Stage.CACHE_LOOKUP, start);
+            if (libraries != null) {
+                return libraries;
+            }
+        }
+        List<String> libraries = NestedJars.libraries(jarFile);
+        if (timing != null) {
+            timing.fileOpened();
+            record(timing, ResolutionStats.Stage.ZIP_OPEN, start);
+        }
+        if (manifestCache != null) {
+            manifestCache.putLibraries(jarFile, libraries);
+        }
+        return libraries;
+    }
+
+    private List<String> readClassPath(File jarFile, ResolutionStats.JarTiming timing) throws IOException {
+        return timing == null ? manifestReader.readClassPath(jarFile) : manifestReader.readClassPath(jarFile, timing);
+    }
+
+    private static long now(ResolutionStats.JarTiming timing) {
+        return timing == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Adds the time since start to the stage and returns the current time, when timing.
+     */
+    private static long record(ResolutionStats.JarTiming timing, ResolutionStats.Stage stage, long start) {
+        if (timing == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        timing.add(stage, now - start);
+        return now;
+    }
+
+    private static String getAbsolutePathOfDependency(String jarFilePath, String dependencyPathFromManifest) {
+        Path jarPath = Paths.get(new File(jarFilePath).getParent());
+        Path dependencyPath = Paths.get(dependencyPathFromManifest);
+        if (dependencyPath.isAbsolute()) {
+            return dependencyPathFromManifest;
+        }
+        return Paths.get(jarPath.toString(), dependencyPath.toString()).toAbsolutePath().normalize().toString();
+    }
+
+    private static boolean doesJarExist(String pathToJar) {
+        File file = new File(pathToJar);
+        return file.exists();
+    }
+}
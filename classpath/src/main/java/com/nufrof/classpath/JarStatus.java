@@ -0,0 +1,24 @@
+package com.nufrof.classpath;
+
+/**
+ * What a path turned out to be.  The marker is what the tree output puts after the path; "AS" is not
+ * a status of its own because it only says a node was already printed higher up.
+ */
+public enum JarStatus {
+    JAR(null),
+    NO_CLASS_PATH("NCP"),
+    MISSING("DNE"),
+    DIRECTORY(null);
+
+    public static final String ALREADY_SCANNED_MARKER = "AS";
+
+    private final String marker;
+
+    JarStatus(String marker) {
+        this.marker = marker;
+    }
+
+    public String getMarker() {
+        return marker;
+    }
+}
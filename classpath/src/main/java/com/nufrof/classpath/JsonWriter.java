@@ -0,0 +1,70 @@
+package com.nufrof.classpath;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the graph as one JSON object: the root id, one entry per file with its path and status, and
+ * edges as [from, to] pairs of those ids in Class-Path order.  Paths that name the same file are
+ * folded into one node.
+ */
+public class JsonWriter implements ClasspathGraphWriter {
+    @Override
+    public void write(ClasspathGraph graph, Writer out) throws IOException {
+        out.write("{\"root\":");
+        out.write(Integer.toString(graph.canonical(graph.root())));
+        out.write(",\"nodes\":[");
+        boolean first = true;
+        for (int id = 0; id < graph.nodeCount(); id++) {
+            if (!graph.isCanonical(id)) {
+                continue;
+            }
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            out.write("\n{\"id\":");
+            out.write(Integer.toString(id));
+            out.write(",\"path\":");
+            writeString(graph.path(id), out);
+            out.write(",\"status\":\"");
+            out.write(graph.status(id).name());
+            out.write("\"}");
+        }
+        out.write("\n],\"edges\":[");
+        first = true;
+        for (int id = 0; id < graph.nodeCount(); id++) {
+            if (!graph.isCanonical(id)) {
+                continue;
+            }
+            for (int i = 0; i < graph.childCount(id); i++) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                out.write("\n[");
+                out.write(Integer.toString(id));
+                out.write(',');
+                out.write(Integer.toString(graph.canonical(graph.child(id, i))));
+                out.write(']');
+            }
+        }
+        out.write("\n]}\n");
+    }
+
+    private static void writeString(String value, Writer out) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write(String.format("\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+}
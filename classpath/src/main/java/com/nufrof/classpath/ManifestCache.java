@@ -0,0 +1,216 @@
+package com.nufrof.classpath;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * On-disk cache of the Class-Path entries read from each jar's MANIFEST.MF, keyed by absolute path
+ * and checked against the jar's size and last-modified time before the zip is opened.  An entry whose
+ * jar has changed is dropped on lookup and re-read.  Jars with no Class-Path are cached as an empty
+ * list so they are not reopened either.  The library jars packed in a jar are cached alongside once
+ * they have been listed, for {@link JarInspector#setNested(boolean)}.
+ */
+public class ManifestCache {
+    private static final Logger LOGGER = Logger.getLogger(ManifestCache.class.getName());
+
+    private static final int MAGIC = 0x47435043;
+
+    private static final int VERSION = 2;
+
+    private final Path file;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private volatile boolean dirty;
+
+    private ManifestCache(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the cache from file.  A missing, unreadable or older-format file gives an empty cache.
+     */
+    public static ManifestCache load(Path file) {
+        ManifestCache cache = new ManifestCache(file);
+        if (!Files.exists(file)) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.info("Ignoring manifest cache " + file + " because it was written by a different version.");
+                return cache;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                int classPathSize = in.readInt();
+                List<String> classPath = new ArrayList<>(classPathSize);
+                for (int j = 0; j < classPathSize; j++) {
+                    classPath.add(in.readUTF());
+                }
+                Entry entry = new Entry(size, lastModified, Collections.unmodifiableList(classPath));
+                // -1 when the libraries were never listed.
+                int librariesSize = in.readInt();
+                if (librariesSize >= 0) {
+                    List<String> libraries = new ArrayList<>(librariesSize);
+                    for (int j = 0; j < librariesSize; j++) {
+                        libraries.add(in.readUTF());
+                    }
+                    entry.libraries = Collections.unmodifiableList(libraries);
+                }
+                cache.entries.put(path, entry);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Ignoring unreadable manifest cache " + file + ".", e);
+            cache.entries.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the cached Class-Path entries for the jar, an empty list if the jar is known to have
+     * none, or null if the jar is not cached or has changed since it was cached.
+     */
+    public List<String> get(File jarFile) throws IOException {
+        Entry entry = current(jarFile);
+        return entry == null ? null : entry.classPath;
+    }
+
+    /**
+     * Returns the cached absolute paths of the library jars packed in the jar, or null if the jar is
+     * not cached, has changed since it was cached or its libraries were never listed.
+     */
+    public List<String> getLibraries(File jarFile) throws IOException {
+        Entry entry = current(jarFile);
+        return entry == null ? null : entry.libraries;
+    }
+
+    public void put(File jarFile, List<String> classPath) throws IOException {
+        FileStamp stamp = FileStamp.of(jarFile);
+        List<String> value = classPath == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(classPath));
+        Entry entry = new Entry(stamp.size, stamp.lastModified, value);
+        entry.seen = true;
+        entries.put(jarFile.getAbsolutePath(), entry);
+        dirty = true;
+    }
+
+    /**
+     * Caches the library jars packed in a jar whose Class-Path is already cached.  Does nothing for a
+     * jar that is not.
+     */
+    public void putLibraries(File jarFile, List<String> libraries) {
+        Entry entry = entries.get(jarFile.getAbsolutePath());
+        if (entry == null) {
+            return;
+        }
+        entry.libraries = Collections.unmodifiableList(new ArrayList<>(libraries));
+        dirty = true;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the cache back if anything changed.  Entries that were not used this run and whose jar
+     * is gone are dropped.  The file is replaced atomically so concurrent runs never see half of it.
+     */
+    public void save() throws IOException {
+        for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+            if (!mapEntry.getValue().seen && !new File(mapEntry.getKey()).exists()) {
+                entries.remove(mapEntry.getKey());
+                dirty = true;
+            }
+        }
+        if (!dirty) {
+            return;
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                List<Map.Entry<String, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Entry> mapEntry : snapshot) {
+                    Entry entry = mapEntry.getValue();
+                    out.writeUTF(mapEntry.getKey());
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.lastModified);
+                    out.writeInt(entry.classPath.size());
+                    for (String classPathEntry : entry.classPath) {
+                        out.writeUTF(classPathEntry);
+                    }
+                    List<String> libraries = entry.libraries;
+                    out.writeInt(libraries == null ? -1 : libraries.size());
+                    if (libraries != null) {
+                        for (String library : libraries) {
+                            out.writeUTF(library);
+                        }
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (NoSuchFileException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Returns the jar's entry, or null if it is not cached or has changed, in which case the entry is
+     * dropped.
+     */
+    private Entry current(File jarFile) throws IOException {
+        String path = jarFile.getAbsolutePath();
+        Entry entry = entries.get(path);
+        if (entry == null) {
+            return null;
+        }
+        FileStamp stamp = FileStamp.of(jarFile);
+        if (entry.size != stamp.size || entry.lastModified != stamp.lastModified) {
+            entries.remove(path, entry);
+            dirty = true;
+            return null;
+        }
+        entry.seen = true;
+        return entry;
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final List<String> classPath;
+        // Null until listed.
+        private volatile List<String> libraries;
+        private volatile boolean seen;
+
+        private Entry(long size, long lastModified, List<String> classPath) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.classPath = classPath;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.nufrof.classpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Pulls the Class-Path attribute out of a jar's MANIFEST.MF.
+ */
+public interface ManifestReader {
+    String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    /**
+     * Returns the Class-Path entries, or null if the jar has no manifest or the manifest has no
+     * Class-Path attribute.
+     */
+    List<String> readClassPath(File jarFile) throws IOException;
+
+    /**
+     * Reads the Class-Path like {@link #readClassPath(File)} and records the time, bytes and file
+     * handles it took in timing.  Readers that cannot tell opening the jar from parsing the manifest
+     * record it all as {@link ResolutionStats.Stage#ZIP_OPEN}.
+     */
+    default List<String> readClassPath(File jarFile, ResolutionStats.JarTiming timing) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return readClassPath(jarFile);
+        } finally {
+            timing.add(ResolutionStats.Stage.ZIP_OPEN, System.nanoTime() - start);
+            timing.fileOpened();
+        }
+    }
+}
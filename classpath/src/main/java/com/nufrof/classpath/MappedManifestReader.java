@@ -0,0 +1,94 @@
+package com.nufrof.classpath;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.jar.Manifest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the manifest by memory-mapping the jar, finding the end of central directory record, walking
+ * the central directory to META-INF/MANIFEST.MF and inflating only that entry.  Only the pages that
+ * hold the tail of the file and the manifest are ever read, whatever the size of the jar, and the
+ * mapping and channel are released before returning.  Archives the mapped path cannot handle (over
+ * 2 GB, zip64 entries, unusual compression) are handed to {@link ZipFileManifestReader}.
+ */
+public class MappedManifestReader implements ManifestReader {
+    private static final Logger LOGGER = Logger.getLogger(MappedManifestReader.class.getName());
+
+    private final ManifestReader fallback = new ZipFileManifestReader();
+
+    @Override
+    public List<String> readClassPath(File jarFile) throws IOException {
+        byte[] manifest;
+        try {
+            manifest = readEntry(jarFile, MANIFEST_NAME);
+        } catch (ZipException e) {
+            LOGGER.log(Level.FINE, "Falling back to ZipFile for " + jarFile + ".", e);
+            return fallback.readClassPath(jarFile);
+        }
+        if (manifest == null) return null;
+        return ClassPathAttribute.parse(new Manifest(new ByteArrayInputStream(manifest)));
+    }
+
+    /**
+     * Records mapping the jar, walking the central directory and inflating the manifest as the zip
+     * open, and parsing the manifest as the manifest parse.
+     */
+    @Override
+    public List<String> readClassPath(File jarFile, ResolutionStats.JarTiming timing) throws IOException {
+        long start = System.nanoTime();
+        byte[] manifest;
+        try {
+            manifest = readEntry(jarFile, MANIFEST_NAME, timing);
+        } catch (ZipException e) {
+            LOGGER.log(Level.FINE, "Falling back to ZipFile for " + jarFile + ".", e);
+            timing.add(ResolutionStats.Stage.ZIP_OPEN, System.nanoTime() - start);
+            return fallback.readClassPath(jarFile, timing);
+        }
+        long opened = System.nanoTime();
+        timing.add(ResolutionStats.Stage.ZIP_OPEN, opened - start);
+        if (manifest == null) return null;
+        try {
+            return ClassPathAttribute.parse(new Manifest(new ByteArrayInputStream(manifest)));
+        } finally {
+            timing.add(ResolutionStats.Stage.MANIFEST_PARSE, System.nanoTime() - opened);
+        }
+    }
+
+    /**
+     * Returns the named entry's uncompressed bytes, or null if the jar has no such entry.
+     */
+    static byte[] readEntry(File jarFile, String name) throws IOException {
+        return readEntry(jarFile, name, null);
+    }
+
+    private static byte[] readEntry(File jarFile, String name, ResolutionStats.JarTiming timing) throws IOException {
+        if (timing != null) {
+            timing.fileOpened();
+        }
+        try (FileChannel channel = FileChannel.open(jarFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new ZipException(jarFile + " is too large to map in one piece.");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            try {
+                CentralDirectory centralDirectory = new CentralDirectory(buffer);
+                int header = centralDirectory.find(name);
+                if (timing != null) {
+                    timing.addBytesRead(centralDirectory.tailSize() + (header == -1 ? 0 : centralDirectory.compressedSize(header)));
+                }
+                return header == -1 ? null : centralDirectory.read(header);
+            } finally {
+                Mappings.unmap(buffer);
+            }
+        }
+    }
+}
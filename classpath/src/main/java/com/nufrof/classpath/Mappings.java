@@ -0,0 +1,51 @@
+package com.nufrof.classpath;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Releases a mapping without waiting for the garbage collector.  The JDK has no public way to do this,
+ * so it goes through sun.misc.Unsafe#invokeCleaner when that is available and otherwise leaves the
+ * mapping to be released when the buffer is collected.  Nothing may touch the buffer, or any view of it,
+ * once it has been unmapped.
+ */
+final class Mappings {
+    private static final Logger LOGGER = Logger.getLogger(Mappings.class.getName());
+
+    private static final Object UNSAFE;
+
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", java.nio.ByteBuffer.class);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Mappings will be released by the garbage collector.", e);
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private Mappings() {
+    }
+
+    static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not unmap buffer.", e);
+        }
+    }
+}
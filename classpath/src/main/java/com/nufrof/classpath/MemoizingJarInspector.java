@@ -0,0 +1,43 @@
+package com.nufrof.classpath;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers what each path turned out to be so a later resolution only goes to disk for paths that
+ * were invalidated or never seen.  Used by {@link ClasspathWatcher} to re-resolve just the part of the
+ * graph a file change touches.
+ */
+final class MemoizingJarInspector extends JarInspector {
+    private final JarInspector delegate;
+
+    private final Map<String, JarInfo> memo = new ConcurrentHashMap<>();
+
+    MemoizingJarInspector(JarInspector delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public JarInfo inspect(String jarPath) throws Exception {
+        String key = new File(jarPath).getAbsolutePath();
+        JarInfo jarInfo = memo.get(key);
+        if (jarInfo == null) {
+            jarInfo = delegate.inspect(jarPath);
+            memo.put(key, jarInfo);
+        }
+        return jarInfo;
+    }
+
+    /**
+     * Forgets the path, and any jars nested inside it.  Returns true if it had been inspected.
+     */
+    boolean invalidate(String absolutePath) {
+        memo.keySet().removeIf(path -> NestedJars.isInside(path, absolutePath));
+        return memo.remove(absolutePath) != null;
+    }
+
+    void invalidateAll() {
+        memo.clear();
+    }
+}
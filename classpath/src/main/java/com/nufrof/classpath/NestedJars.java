@@ -0,0 +1,315 @@
+package com.nufrof.classpath;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.Manifest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Jars packed inside other jars, the way Spring Boot (BOOT-INF/lib) and WAR files (WEB-INF/lib) ship
+ * their libraries.  A nested jar's path is the outer jar's path, "!/" and the entry name, once per
+ * level, as in app.jar!/BOOT-INF/lib/lib.jar.
+ * <p>
+ * Nothing is extracted.  The outer jar is mapped, and a stored inner jar is read in place through a
+ * slice of the mapping, so its central directory is walked exactly like a jar on disk.  A deflated
+ * inner jar is inflated as a stream only as far as its manifest, which the jar tool always writes
+ * first; the jars inside a deflated inner jar are not listed.  Archives the mapped path cannot handle
+ * are streamed through {@link ZipFile} instead.
+ */
+final class NestedJars {
+    private static final Logger LOGGER = Logger.getLogger(NestedJars.class.getName());
+
+    static final String SEPARATOR = "!/";
+
+    private static final Pattern SEPARATOR_PATTERN = Pattern.compile("![/\\\\]");
+
+    private static final byte[][] LIBRARY_DIRECTORIES = {
+            "BOOT-INF/lib/".getBytes(StandardCharsets.US_ASCII),
+            "WEB-INF/lib/".getBytes(StandardCharsets.US_ASCII),
+            "WEB-INF/lib-provided/".getBytes(StandardCharsets.US_ASCII)
+    };
+
+    private NestedJars() {
+    }
+
+    static boolean isNested(String path) {
+        return SEPARATOR_PATTERN.matcher(path).find();
+    }
+
+    /**
+     * Returns true if path names a jar somewhere inside the jar at outerPath.
+     */
+    static boolean isInside(String path, String outerPath) {
+        int length = outerPath.length();
+        return path.length() > length + 1 && path.startsWith(outerPath) && path.charAt(length) == '!'
+                && (path.charAt(length + 1) == '/' || path.charAt(length + 1) == '\\');
+    }
+
+    static File outerFile(String path) {
+        return new File(split(path)[0]);
+    }
+
+    /**
+     * Returns the absolute paths of the library jars packed in a jar on disk, in central directory
+     * order.
+     */
+    static List<String> libraries(File jarFile) throws IOException {
+        String jarPath = jarFile.getAbsolutePath();
+        try (FileChannel channel = FileChannel.open(jarFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= Integer.MAX_VALUE) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                try {
+                    return libraries(jarPath, new CentralDirectory(buffer));
+                } catch (ZipException e) {
+                    LOGGER.log(Level.FINE, "Falling back to ZipFile for " + jarFile + ".", e);
+                } finally {
+                    Mappings.unmap(buffer);
+                }
+            }
+        }
+        List<String> libraries = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(jarFile)) {
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                String name = zipEntries.nextElement().getName();
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                if (isLibrary(bytes, bytes.length)) {
+                    libraries.add(jarPath + SEPARATOR + name);
+                }
+            }
+        }
+        return libraries;
+    }
+
+    /**
+     * Reads the Class-Path and the library jars of the jar at a nested path.  Returns null if the outer
+     * jar or any entry along the path does not exist.
+     */
+    static Contents inspect(String path) throws IOException {
+        String[] segments = split(path);
+        File outer = new File(segments[0]);
+        if (!outer.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(outer.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= Integer.MAX_VALUE) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                try {
+                    CentralDirectory directory = new CentralDirectory(buffer);
+                    for (int i = 1; i < segments.length; i++) {
+                        int header = directory.find(segments[i]);
+                        if (header == -1) {
+                            return null;
+                        }
+                        if (!directory.isStored(header)) {
+                            if (i < segments.length - 1) {
+                                throw new ZipException(segments[i] + " is compressed, so the jars inside it cannot be read in place.");
+                            }
+                            return new Contents(streamClassPath(new ByteBufferInputStream(directory.rawData(header)), true), Collections.emptyList());
+                        }
+                        directory = new CentralDirectory(directory.rawData(header));
+                    }
+                    int manifest = directory.find(ManifestReader.MANIFEST_NAME);
+                    List<String> classPath = manifest == -1 ? null : ClassPathAttribute.parse(new Manifest(new ByteArrayInputStream(directory.read(manifest))));
+                    return new Contents(classPath, libraries(new File(path).getAbsolutePath(), directory));
+                } catch (ZipException e) {
+                    LOGGER.log(Level.FINE, "Falling back to ZipFile for " + path + ".", e);
+                } finally {
+                    Mappings.unmap(buffer);
+                }
+            }
+        }
+        return streamFromZipFile(segments);
+    }
+
+    /**
+     * Hands the central directory of the jar at a nested path to reader and returns what it returns,
+     * or null if the outer jar or any entry along the path does not exist.  A deflated inner jar is
+     * inflated into memory first.
+     */
+    static <T> T withDirectory(String path, DirectoryReader<T> reader) throws IOException {
+        String[] segments = split(path);
+        File outer = new File(segments[0]);
+        if (!outer.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(outer.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new ZipException(outer + " is too large to map in one piece.");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                CentralDirectory directory = new CentralDirectory(buffer);
+                for (int i = 1; i < segments.length; i++) {
+                    int header = directory.find(segments[i]);
+                    if (header == -1) {
+                        return null;
+                    }
+                    ByteBuffer inner = directory.isStored(header) ? directory.rawData(header) : ByteBuffer.wrap(directory.read(header));
+                    directory = new CentralDirectory(inner);
+                }
+                return reader.read(directory);
+            } finally {
+                Mappings.unmap(buffer);
+            }
+        }
+    }
+
+    private static String[] split(String path) {
+        String[] segments = SEPARATOR_PATTERN.split(path);
+        for (int i = 1; i < segments.length; i++) {
+            segments[i] = segments[i].replace('\\', '/');
+        }
+        return segments;
+    }
+
+    private static List<String> libraries(String jarPath, CentralDirectory directory) throws ZipException {
+        List<String> libraries = new ArrayList<>();
+        byte[] name = new byte[256];
+        for (int header = directory.first(); header != -1; header = directory.next(header)) {
+            int length = directory.nameLength(header);
+            if (length > name.length) {
+                name = new byte[length];
+            }
+            directory.copyName(header, name, 0);
+            if (isLibrary(name, length)) {
+                libraries.add(jarPath + SEPARATOR + new String(name, 0, length, StandardCharsets.UTF_8));
+            }
+        }
+        return libraries;
+    }
+
+    /**
+     * A library is a .jar directly inside one of the library directories.
+     */
+    private static boolean isLibrary(byte[] name, int length) {
+        if (length < 4 || name[length - 4] != '.' || name[length - 3] != 'j' || name[length - 2] != 'a' || name[length - 1] != 'r') {
+            return false;
+        }
+        for (byte[] directory : LIBRARY_DIRECTORIES) {
+            if (length > directory.length + 4 && startsWith(name, directory)) {
+                for (int i = directory.length; i < length; i++) {
+                    if (name[i] == '/') {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] name, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (name[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Contents streamFromZipFile(String[] segments) throws IOException {
+        try (ZipFile zipFile = new ZipFile(segments[0])) {
+            ZipEntry zipEntry = zipFile.getEntry(segments[1]);
+            if (zipEntry == null) {
+                return null;
+            }
+            InputStream in = zipFile.getInputStream(zipEntry);
+            for (int i = 2; i < segments.length; i++) {
+                ZipInputStream zipIn = new ZipInputStream(in);
+                if (!skipTo(zipIn, segments[i])) {
+                    return null;
+                }
+                in = zipIn;
+            }
+            return new Contents(streamClassPath(in, false), Collections.emptyList());
+        }
+    }
+
+    /**
+     * Reads a jar as a stream up to its manifest and returns the Class-Path, or null if it has none.
+     * With deflated set, in holds the jar's raw deflated bytes.
+     */
+    private static List<String> streamClassPath(InputStream in, boolean deflated) throws IOException {
+        Inflater inflater = deflated ? new Inflater(true) : null;
+        try {
+            ZipInputStream zipIn = new ZipInputStream(deflated ? new InflaterInputStream(in, inflater) : in);
+            return skipTo(zipIn, ManifestReader.MANIFEST_NAME) ? ClassPathAttribute.parse(new Manifest(zipIn)) : null;
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    private static boolean skipTo(ZipInputStream in, String name) throws IOException {
+        for (ZipEntry zipEntry = in.getNextEntry(); zipEntry != null; zipEntry = in.getNextEntry()) {
+            if (zipEntry.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    interface DirectoryReader<T> {
+        T read(CentralDirectory directory) throws IOException;
+    }
+
+    /**
+     * What a nested jar holds: its Class-Path entries, null if it has none, and the absolute paths of
+     * the library jars packed in it.
+     */
+    static final class Contents {
+        final List<String> classPath;
+        final List<String> libraries;
+
+        Contents(List<String> classPath, List<String> libraries) {
+            this.classPath = classPath;
+            this.libraries = libraries;
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.nufrof.classpath;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Where resolution time went, jar by jar.  Give it to {@link JarInspector#setStats} and every
+ * inspection records how long each {@link Stage} took, how many bytes of the jar were read and how
+ * many files were opened.  Each inspection fills its own {@link JarTiming} on the thread doing it, so
+ * a parallel resolve shares one instance without contention; the histogram, the slowest jars and the
+ * totals are only worked out when asked for.
+ * <p>
+ * Bytes read counts the bytes of the archive a reader had to look at (the central directory, the end
+ * records and the manifest entry), not the pages the operating system actually brought in.
+ */
+public class ResolutionStats {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private static final int BUCKETS = 40;
+
+    public enum Stage {
+        EXISTENCE_CHECK("existence check"),
+        DIRECTORY_LISTING("directory listing"),
+        CACHE_LOOKUP("manifest cache lookup"),
+        ZIP_OPEN("zip open"),
+        MANIFEST_PARSE("manifest parse"),
+        PATH_NORMALIZATION("path normalization");
+
+        private final String description;
+
+        Stage(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final Queue<JarTiming> timings = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder cacheMisses = new LongAdder();
+
+    JarTiming start(String path) {
+        return new JarTiming(path, System.nanoTime());
+    }
+
+    void finish(JarTiming timing) {
+        timing.nanos = System.nanoTime() - timing.start;
+        timings.add(timing);
+    }
+
+    void cacheHit() {
+        cacheHits.increment();
+    }
+
+    void cacheMiss() {
+        cacheMisses.increment();
+    }
+
+    public List<JarTiming> getTimings() {
+        return new ArrayList<>(timings);
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * Counts inspections by how long they took: bucket 0 is under 2 microseconds and bucket i (i > 0)
+     * is from 2^i up to 2^(i+1) microseconds.
+     */
+    public long[] getHistogram() {
+        long[] histogram = new long[BUCKETS];
+        for (JarTiming timing : timings) {
+            long micros = timing.nanos / 1000;
+            int bucket = micros < 2 ? 0 : 63 - Long.numberOfLeadingZeros(micros);
+            histogram[Math.min(bucket, BUCKETS - 1)]++;
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the n slowest inspections, slowest first.
+     */
+    public List<JarTiming> getSlowest(int n) {
+        List<JarTiming> slowest = getTimings();
+        slowest.sort(Comparator.comparingLong((JarTiming timing) -> timing.nanos).reversed());
+        return slowest.subList(0, Math.min(n, slowest.size()));
+    }
+
+    /**
+     * Writes the summary GetCp prints for --stats: totals per stage, bytes, file handles, the manifest
+     * cache hit ratio, the latency histogram and the slowest jars.
+     */
+    public void write(Writer out, int slowestCount) throws IOException {
+        List<JarTiming> all = getTimings();
+        long[] stageNanos = new long[Stage.values().length];
+        long totalNanos = 0;
+        long bytesRead = 0;
+        long filesOpened = 0;
+        for (JarTiming timing : all) {
+            totalNanos += timing.nanos;
+            bytesRead += timing.bytesRead;
+            filesOpened += timing.filesOpened;
+            for (int i = 0; i < stageNanos.length; i++) {
+                stageNanos[i] += timing.stageNanos[i];
+            }
+        }
+        out.write("Inspected " + all.size() + " paths in " + millis(totalNanos) + " (summed over threads)" + LINE_SEPARATOR);
+        for (Stage stage : Stage.values()) {
+            out.write("  " + stage.getDescription() + ": " + millis(stageNanos[stage.ordinal()]) + LINE_SEPARATOR);
+        }
+        out.write("Bytes read: " + bytesRead + ", file handles opened: " + filesOpened + LINE_SEPARATOR);
+        long hits = getCacheHits();
+        long lookups = hits + getCacheMisses();
+        if (lookups > 0) {
+            out.write(String.format(Locale.ROOT, "Manifest cache: %d hits, %d misses (%.1f%% hit ratio)", hits, lookups - hits, 100.0 * hits / lookups) + LINE_SEPARATOR);
+        }
+        out.write("Latency per path:" + LINE_SEPARATOR);
+        long[] histogram = getHistogram();
+        long largest = 0;
+        for (long count : histogram) {
+            largest = Math.max(largest, count);
+        }
+        for (int bucket = 0; bucket < histogram.length; bucket++) {
+            if (histogram[bucket] == 0) {
+                continue;
+            }
+            String from = bucket == 0 ? "0" : micros(1L << bucket);
+            String to = bucket == histogram.length - 1 ? "" : micros(1L << (bucket + 1));
+            StringBuilder bar = new StringBuilder();
+            for (long i = 0, width = Math.max(1, histogram[bucket] * 40 / largest); i < width; i++) {
+                bar.append('#');
+            }
+            out.write(String.format(Locale.ROOT, "  %8s - %-8s %8d %s", from, to, histogram[bucket], bar) + LINE_SEPARATOR);
+        }
+        List<JarTiming> slowest = getSlowest(slowestCount);
+        out.write("Slowest " + slowest.size() + ":" + LINE_SEPARATOR);
+        for (JarTiming timing : slowest) {
+            StringBuilder stages = new StringBuilder();
+            for (Stage stage : Stage.values()) {
+                long nanos = timing.stageNanos[stage.ordinal()];
+                if (nanos > 0) {
+                    stages.append(stages.length() == 0 ? "" : ", ").append(stage.getDescription()).append(' ').append(millis(nanos));
+                }
+            }
+            out.write("  " + millis(timing.nanos) + " " + timing.path + " (" + stages + ")" + LINE_SEPARATOR);
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f ms", nanos / 1e6);
+    }
+
+    private static String micros(long micros) {
+        if (micros >= 1_000_000) {
+            return micros / 1_000_000 + " s";
+        }
+        return micros >= 1000 ? micros / 1000 + " ms" : micros + " us";
+    }
+
+    /**
+     * One inspection of one path.  Filled in by the thread doing the inspection and read only after
+     * it has been handed back to {@link ResolutionStats}.
+     */
+    public static final class JarTiming {
+        private final String path;
+        private final long start;
+        private final long[] stageNanos = new long[Stage.values().length];
+        private long nanos;
+        private long bytesRead;
+        private int filesOpened;
+
+        private JarTiming(String path, long start) {
+            this.path = path;
+            this.start = start;
+        }
+
+        void add(Stage stage, long nanos) {
+            stageNanos[stage.ordinal()] += nanos;
+        }
+
+        void addBytesRead(long bytes) {
+            bytesRead += bytes;
+        }
+
+        void fileOpened() {
+            filesOpened++;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getNanos(Stage stage) {
+            return stageNanos[stage.ordinal()];
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public int getFilesOpened() {
+            return filesOpened;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.nufrof.classpath;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns UTF-8 byte strings into dense int ids.  The bytes live back to back in one pool and the
+ * lookup is an open-addressing table of ids, so a string costs its bytes plus three ints instead of a
+ * String, a char array and a map entry.  Not thread-safe.
+ */
+final class StringTable {
+    private byte[] pool = new byte[1 << 16];
+    private int poolSize;
+    private int[] starts = new int[1024];
+    private int[] hashes = new int[1024];
+    private int size;
+    private int[] slots = new int[2048];
+
+    int intern(byte[] bytes, int offset, int length) {
+        int hash = hash(bytes, offset, length);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id == -1) {
+                id = add(bytes, offset, length, hash);
+                slots[slot] = id + 1;
+                if (size * 2 > slots.length) {
+                    rehash();
+                }
+                return id;
+            }
+            if (hashes[id] == hash && equals(id, bytes, offset, length)) {
+                return id;
+            }
+        }
+    }
+
+    int intern(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return intern(bytes, 0, bytes.length);
+    }
+
+    String get(int id) {
+        return new String(pool, starts[id], length(id), StandardCharsets.UTF_8);
+    }
+
+    int length(int id) {
+        return (id + 1 < size ? starts[id + 1] : poolSize) - starts[id];
+    }
+
+    /**
+     * Copies the string's bytes into dst at offset.
+     */
+    void copy(int id, byte[] dst, int offset) {
+        System.arraycopy(pool, starts[id], dst, offset, length(id));
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int add(byte[] bytes, int offset, int length, int hash) {
+        if (poolSize + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+        }
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        System.arraycopy(bytes, offset, pool, poolSize, length);
+        starts[size] = poolSize;
+        hashes[size] = hash;
+        poolSize += length;
+        return size++;
+    }
+
+    private boolean equals(int id, byte[] bytes, int offset, int length) {
+        int start = starts[id];
+        return length(id) == length && Arrays.equals(pool, start, start + length, bytes, offset, offset + length);
+    }
+
+    private void rehash() {
+        int[] newSlots = new int[slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (newSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = id + 1;
+        }
+        slots = newSlots;
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ bytes[i]) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
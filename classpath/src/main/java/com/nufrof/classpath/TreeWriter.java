@@ -0,0 +1,124 @@
+package com.nufrof.classpath;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The indented tree GetCp has always printed.  A directory is not printed itself; the jars in it are
+ * printed at its level.  A file seen before is printed again with [AS] and not descended into.
+ * <p>
+ * The walk keeps its own stack of (node, depth, next child) frames instead of recursing, so a
+ * Class-Path chain of any length prints without touching the thread stack, and memory beyond the
+ * visited set is three ints per level of the current path.  Lines are written piece by piece straight
+ * to the writer; give it a buffered one.
+ */
+public class TreeWriter implements ClasspathGraphWriter {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private static final String ALREADY_SCANNED = " [" + JarStatus.ALREADY_SCANNED_MARKER + "]";
+
+    private static final String MISSING = " [" + JarStatus.MISSING.getMarker() + "]";
+
+    private static final String NO_CLASS_PATH = " [" + JarStatus.NO_CLASS_PATH.getMarker() + "]";
+
+    private final int indent;
+
+    private char[] spaces = new char[64];
+
+    public TreeWriter() {
+        this(0);
+    }
+
+    public TreeWriter(int indent) {
+        this.indent = indent;
+        Arrays.fill(spaces, ' ');
+    }
+
+    public static void writeLegend(Writer out) throws IOException {
+        out.write("AS = Already Scanned." + LINE_SEPARATOR);
+        out.write("NCP = Either no MANIFEST.MF or no Class-Path attribute in the MANIFEST.MF." + LINE_SEPARATOR);
+        out.write("DNE = The jar doesn't exist." + LINE_SEPARATOR);
+    }
+
+    @Override
+    public void write(ClasspathGraph graph, Writer out) throws IOException {
+        BitSet alreadyScanned = new BitSet(graph.nodeCount());
+        int[] nodes = new int[16];
+        int[] depths = new int[16];
+        int[] nextChild = new int[16];
+        int top = 0;
+        int root = graph.root();
+        if (writeNode(graph, root, indent, alreadyScanned, out)) {
+            nodes[0] = root;
+            depths[0] = childDepth(graph, root, indent);
+            top = 1;
+        }
+        while (top > 0) {
+            int frame = top - 1;
+            int id = nodes[frame];
+            if (nextChild[frame] == graph.childCount(id)) {
+                top--;
+                continue;
+            }
+            int child = graph.child(id, nextChild[frame]++);
+            int depth = depths[frame];
+            if (writeNode(graph, child, depth, alreadyScanned, out)) {
+                if (top == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, top * 2);
+                    depths = Arrays.copyOf(depths, top * 2);
+                    nextChild = Arrays.copyOf(nextChild, top * 2);
+                }
+                nodes[top] = child;
+                depths[top] = childDepth(graph, child, depth);
+                nextChild[top] = 0;
+                top++;
+            }
+        }
+    }
+
+    /**
+     * Writes the node's line, if it gets one, and returns true if its children are to be written next.
+     */
+    private boolean writeNode(ClasspathGraph graph, int id, int depth, BitSet alreadyScanned, Writer out) throws IOException {
+        int canonical = graph.canonical(id);
+        if (alreadyScanned.get(canonical)) {
+            writeLine(depth, graph.path(id), ALREADY_SCANNED, out);
+            return false;
+        }
+        alreadyScanned.set(canonical);
+        switch (graph.status(id)) {
+            case MISSING:
+                writeLine(depth, graph.path(id), MISSING, out);
+                return false;
+            case NO_CLASS_PATH:
+                writeLine(depth, graph.path(id), NO_CLASS_PATH, out);
+                return false;
+            case DIRECTORY:
+                return true;
+            default:
+                writeLine(depth, graph.path(id), null, out);
+                return true;
+        }
+    }
+
+    private static int childDepth(ClasspathGraph graph, int id, int depth) {
+        return graph.status(id) == JarStatus.DIRECTORY ? depth : depth + 1;
+    }
+
+    private void writeLine(int depth, String jarPath, String suffix, Writer out) throws IOException {
+        int width = depth * 2;
+        if (width > spaces.length) {
+            spaces = new char[Math.max(width, spaces.length * 2)];
+            Arrays.fill(spaces, ' ');
+        }
+        out.write(spaces, 0, width);
+        out.write("- ");
+        out.write(jarPath);
+        if (suffix != null) {
+            out.write(suffix);
+        }
+        out.write(LINE_SEPARATOR);
+    }
+}
@@ -0,0 +1,48 @@
+package com.nufrof.classpath;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the manifest through {@link ZipFile}, which parses the whole central directory up front.
+ */
+public class ZipFileManifestReader implements ManifestReader {
+    @Override
+    public List<String> readClassPath(File jarFile) throws IOException {
+        try (ZipFile zipFile = new ZipFile(jarFile)) {
+            ZipEntry manifestEntry = zipFile.getEntry(MANIFEST_NAME);
+            if (manifestEntry == null) return null;
+            try (InputStream inputStream = zipFile.getInputStream(manifestEntry)) {
+                return ClassPathAttribute.parse(new Manifest(inputStream));
+            }
+        }
+    }
+
+    /**
+     * Records opening the jar and finding the manifest as the zip open, and inflating and parsing it
+     * as the manifest parse.  Only the manifest entry counts as bytes read, since {@link ZipFile} does
+     * not say how large the central directory it read was.
+     */
+    @Override
+    public List<String> readClassPath(File jarFile, ResolutionStats.JarTiming timing) throws IOException {
+        long start = System.nanoTime();
+        timing.fileOpened();
+        try (ZipFile zipFile = new ZipFile(jarFile)) {
+            ZipEntry manifestEntry = zipFile.getEntry(MANIFEST_NAME);
+            long opened = System.nanoTime();
+            timing.add(ResolutionStats.Stage.ZIP_OPEN, opened - start);
+            if (manifestEntry == null) return null;
+            timing.addBytesRead(manifestEntry.getCompressedSize());
+            try (InputStream inputStream = zipFile.getInputStream(manifestEntry)) {
+                return ClassPathAttribute.parse(new Manifest(inputStream));
+            } finally {
+                timing.add(ResolutionStats.Stage.MANIFEST_PARSE, System.nanoTime() - opened);
+            }
+        }
+    }
+}
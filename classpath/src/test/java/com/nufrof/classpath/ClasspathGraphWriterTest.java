@@ -0,0 +1,46 @@
+package com.nufrof.classpath;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClasspathGraphWriterTest {
+    private String jarPath = "fauxproj1/build/libs/";
+
+    @Test
+    public void treeTest() throws Exception {
+        String fauxproj1 = new File("fauxproj1/build/libs/fauxproj1.jar").getAbsolutePath();
+        String nonexistant = new File("nonexistant/nonexistant.jar").getAbsolutePath();
+        String[] lines = write(new TreeWriter()).split(System.lineSeparator());
+        assertEquals(5, lines.length);
+        assertEquals("- " + fauxproj1, lines[0]);
+        assertEquals("  - " + nonexistant + " [AS]", lines[4]);
+    }
+
+    @Test
+    public void jsonTest() throws Exception {
+        String json = write(new JsonWriter());
+        assertTrue(json.startsWith("{\"root\":0,\"nodes\":["));
+        assertTrue(json.contains("\"path\":\"fauxproj1/build/libs/\",\"status\":\"DIRECTORY\""));
+        assertTrue(json.contains("\"status\":\"MISSING\""));
+        assertTrue(json.contains("[1,3]"));
+    }
+
+    @Test
+    public void dotTest() throws Exception {
+        String dot = write(new DotWriter());
+        assertTrue(dot.startsWith("digraph classpath {"));
+        assertTrue(dot.contains("n0 -> n1;"));
+        assertTrue(dot.contains("style=dashed"));
+    }
+
+    private String write(ClasspathGraphWriter graphWriter) throws Exception {
+        StringWriter out = new StringWriter();
+        graphWriter.write(new ClasspathResolver().resolve(jarPath), out);
+        return out.toString();
+    }
+}
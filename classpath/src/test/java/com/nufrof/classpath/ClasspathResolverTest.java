@@ -0,0 +1,36 @@
+package com.nufrof.classpath;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+public class ClasspathResolverTest {
+    private String jarPath = "fauxproj1/build/libs/";
+
+    @Test
+    public void graphTest() throws Exception {
+        ClasspathGraph graph = new ClasspathResolver().resolve(jarPath);
+        assertEquals(JarStatus.DIRECTORY, graph.status(graph.root()));
+        assertEquals(5, graph.nodeCount());
+        assertEquals(5, graph.edgeCount());
+        int fauxproj1 = graph.child(graph.root(), 0);
+        assertEquals(JarStatus.JAR, graph.status(fauxproj1));
+        assertEquals(2, graph.childCount(fauxproj1));
+        assertEquals(JarStatus.MISSING, graph.status(graph.child(fauxproj1, 1)));
+        assertEquals(JarStatus.NO_CLASS_PATH, graph.status(graph.find("fauxproj3/build/libs/fauxproj3.jar")));
+        assertEquals(-1, graph.find("fauxproj4/build/libs/fauxproj4.jar"));
+    }
+
+    @Test
+    public void parallelMatchesSerialTest() throws Exception {
+        assertEquals(tree(new ClasspathResolver().resolve(jarPath)), tree(new ClasspathResolver().setParallelism(4).resolve(jarPath)));
+    }
+
+    private String tree(ClasspathGraph graph) throws Exception {
+        StringWriter out = new StringWriter();
+        new TreeWriter().write(graph, out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,63 @@
+package com.nufrof.classpath;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClasspathWatcherTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void refreshTest() throws Exception {
+        File lib = temporaryFolder.newFolder("lib");
+        File app = jar(new File(lib, "app.jar"), "dep.jar");
+        try (ClasspathWatcher watcher = new ClasspathWatcher(lib.getPath(), new JarInspector(), 1, (graph, delta) -> {
+        })) {
+            ClasspathGraph graph = watcher.start();
+            assertEquals(JarStatus.MISSING, graph.status(graph.find(new File(lib, "dep.jar").getPath())));
+
+            // The missing dependency shows up.
+            File dep = jar(new File(lib, "dep.jar"), null);
+            ClasspathDelta delta = watcher.refresh(Collections.singletonList(dep.toPath()));
+            assertEquals(Collections.emptyList(), delta.getAdded());
+            assertEquals(Arrays.asList(lib.getAbsolutePath(), dep.getAbsolutePath()), delta.getChanged());
+            assertEquals(JarStatus.NO_CLASS_PATH, watcher.getGraph().status(watcher.getGraph().find(dep.getPath())));
+
+            // The app is replaced by one that needs a new jar.
+            jar(app, "dep.jar other.jar");
+            delta = watcher.refresh(Collections.singletonList(app.toPath()));
+            assertEquals(Collections.singletonList(new File(lib, "other.jar").getAbsolutePath()), delta.getAdded());
+            assertEquals(Collections.singletonList(app.getAbsolutePath()), delta.getChanged());
+
+            // The app goes away.
+            Files.delete(app.toPath());
+            delta = watcher.refresh(Collections.singletonList(app.toPath()));
+            assertTrue(delta.getRemoved().contains(app.getAbsolutePath()));
+            assertTrue(delta.getRemoved().contains(new File(lib, "other.jar").getAbsolutePath()));
+        }
+    }
+
+    private File jar(File jar, String classPath) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (classPath != null) {
+            manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+        }
+        new JarOutputStream(new FileOutputStream(jar), manifest).close();
+        return jar;
+    }
+}
@@ -0,0 +1,78 @@
+package com.nufrof.classpath;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertEquals;
+
+public class DuplicateClassDetectorTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shadowingOrderTest() throws Exception {
+        File app = jar("app.jar", "lib/old.jar lib/new.jar", "com/example/App.class", "com/example/Util.class");
+        jar("lib/old.jar", null, "com/example/Util.class", "org/lib/Thing.class", "META-INF/versions/11/org/lib/Thing.class", "module-info.class");
+        jar("lib/new.jar", null, "org/lib/Thing.class", "org/lib/Other.class", "module-info.class");
+
+        DuplicateClassReport report = new DuplicateClassDetector().setParallelism(2).detect(new ClasspathResolver().resolve(app.getPath()));
+
+        assertEquals(2, report.getDuplicateClasses().size());
+        DuplicateClassReport.Conflict util = report.getDuplicateClasses().get(0);
+        assertEquals("com.example.Util", util.getName());
+        assertEquals(Arrays.asList(app.getPath(), path("lib/old.jar")), util.getJars());
+        DuplicateClassReport.Conflict thing = report.getDuplicateClasses().get(1);
+        assertEquals("org.lib.Thing", thing.getName());
+        assertEquals(Arrays.asList(path("lib/old.jar"), path("lib/new.jar")), thing.getJars());
+        assertEquals(2, report.getSplitPackages().size());
+        assertEquals("org.lib", report.getSplitPackages().get(1).getName());
+    }
+
+    @Test
+    public void savedIndexTest() throws Exception {
+        File jar = jar("a.jar", null, "a/B.class", "a/C.class", "D.class");
+        Path indexFile = temporaryFolder.getRoot().toPath().resolve("class-index.bin");
+        ClassIndex index = ClassIndex.load(indexFile);
+        assertEquals(3, index.classesOf(jar).length);
+        index.save();
+
+        ClassIndex reloaded = ClassIndex.load(indexFile);
+        assertEquals(3, reloaded.classCount());
+        int[] classes = reloaded.classesOf(jar);
+        assertEquals(3, classes.length);
+        assertEquals("a.B", reloaded.className(classes[0]));
+        assertEquals("", reloaded.packageName(reloaded.packageOf(classes[2])));
+    }
+
+    private String path(String name) {
+        return new File(temporaryFolder.getRoot(), name).getAbsolutePath();
+    }
+
+    private File jar(String name, String classPath, String... entries) throws IOException {
+        File jar = new File(temporaryFolder.getRoot(), name);
+        jar.getParentFile().mkdirs();
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (classPath != null) {
+            manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+        }
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+            for (String entry : entries) {
+                out.putNextEntry(new ZipEntry(entry));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,50 @@
+package com.nufrof.classpath;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ManifestCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void roundTripTest() throws Exception {
+        Path cacheFile = temporaryFolder.getRoot().toPath().resolve("manifest-cache.bin");
+        File jar = temporaryFolder.newFile("a.jar");
+        File noClassPathJar = temporaryFolder.newFile("b.jar");
+
+        ManifestCache cache = ManifestCache.load(cacheFile);
+        assertNull(cache.get(jar));
+        cache.put(jar, Arrays.asList("c.jar", "lib/d.jar"));
+        cache.put(noClassPathJar, null);
+        cache.putLibraries(jar, Collections.singletonList(jar.getAbsolutePath() + "!/BOOT-INF/lib/e.jar"));
+        cache.save();
+
+        ManifestCache reloaded = ManifestCache.load(cacheFile);
+        assertEquals(Arrays.asList("c.jar", "lib/d.jar"), reloaded.get(jar));
+        assertEquals(Collections.emptyList(), reloaded.get(noClassPathJar));
+        assertEquals(Collections.singletonList(jar.getAbsolutePath() + "!/BOOT-INF/lib/e.jar"), reloaded.getLibraries(jar));
+        assertNull(reloaded.getLibraries(noClassPathJar));
+    }
+
+    @Test
+    public void staleEntryTest() throws Exception {
+        File jar = temporaryFolder.newFile("a.jar");
+        ManifestCache cache = ManifestCache.load(temporaryFolder.getRoot().toPath().resolve("manifest-cache.bin"));
+        cache.put(jar, Collections.singletonList("c.jar"));
+
+        Files.write(jar.toPath(), new byte[]{1, 2, 3});
+        assertNull(cache.get(jar));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,87 @@
+package com.nufrof.classpath;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MappedManifestReaderTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MappedManifestReader reader = new MappedManifestReader();
+
+    @Test
+    public void deflatedManifestTest() throws Exception {
+        File jar = jar("deflated.jar", "a.jar b.jar");
+        assertEquals(Arrays.asList("a.jar", "b.jar"), reader.readClassPath(jar));
+        assertEquals(new ZipFileManifestReader().readClassPath(jar), reader.readClassPath(jar));
+    }
+
+    @Test
+    public void storedManifestWithPrefixTest() throws Exception {
+        File jar = temporaryFolder.newFile("stored.jar");
+        byte[] manifest = "Manifest-Version: 1.0\r\nClass-Path: lib/c.jar\r\n\r\n".getBytes(StandardCharsets.UTF_8);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            ZipEntry entry = new ZipEntry(ManifestReader.MANIFEST_NAME);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(manifest.length);
+            CRC32 crc = new CRC32();
+            crc.update(manifest);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(manifest);
+            out.closeEntry();
+        }
+        File prefixed = temporaryFolder.newFile("prefixed.jar");
+        byte[] script = "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes(StandardCharsets.UTF_8);
+        byte[] body = Files.readAllBytes(jar.toPath());
+        byte[] both = Arrays.copyOf(script, script.length + body.length);
+        System.arraycopy(body, 0, both, script.length, body.length);
+        Files.write(prefixed.toPath(), both);
+
+        assertEquals(Arrays.asList("lib/c.jar"), reader.readClassPath(jar));
+        assertEquals(Arrays.asList("lib/c.jar"), reader.readClassPath(prefixed));
+    }
+
+    @Test
+    public void noClassPathTest() throws Exception {
+        assertNull(reader.readClassPath(jar("noclasspath.jar", null)));
+        File noManifest = temporaryFolder.newFile("nomanifest.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(noManifest))) {
+            out.putNextEntry(new ZipEntry("a/B.class"));
+            out.closeEntry();
+        }
+        assertNull(reader.readClassPath(noManifest));
+    }
+
+    private File jar(String name, String classPath) throws IOException {
+        File jar = temporaryFolder.newFile(name);
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (classPath != null) {
+            manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+        }
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+            out.putNextEntry(new ZipEntry("a/B.class"));
+            out.write(new byte[1024]);
+            out.closeEntry();
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,151 @@
+package com.nufrof.classpath;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.assertEquals;
+
+public class NestedJarsTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File fat;
+
+    @Before
+    public void createFatJar() throws IOException {
+        jar(new FileOutputStream(new File(temporaryFolder.getRoot(), "outside.jar")), null);
+        fat = new File(temporaryFolder.getRoot(), "fat.jar");
+        try (JarOutputStream out = manifestStream(new FileOutputStream(fat), "outside.jar")) {
+            entry(out, "BOOT-INF/classes/com/example/App.class", new byte[0], false);
+            entry(out, "BOOT-INF/lib/stored.jar", jarBytes("deflated.jar gone.jar", "a/A.class", "a/B.class"), true);
+            entry(out, "BOOT-INF/lib/deflated.jar", jarBytes(null, "a/A.class"), false);
+            entry(out, "BOOT-INF/lib/tools/not-a-library.jar", jarBytes(null), true);
+        }
+    }
+
+    @Test
+    public void nestedTest() throws Exception {
+        for (int parallelism : new int[]{1, 4}) {
+            ClasspathGraph graph = new ClasspathResolver(new JarInspector().setNested(true)).setParallelism(parallelism).resolve(fat.getPath());
+
+            int root = graph.root();
+            assertEquals(JarStatus.JAR, graph.status(root));
+            assertEquals(Arrays.asList(path("outside.jar"), nested("stored.jar"), nested("deflated.jar")), children(graph, root));
+            int stored = graph.find(nested("stored.jar"));
+            assertEquals(JarStatus.JAR, graph.status(stored));
+            assertEquals(Arrays.asList(nested("deflated.jar"), nested("gone.jar")), children(graph, stored));
+            assertEquals(JarStatus.NO_CLASS_PATH, graph.status(graph.find(nested("deflated.jar"))));
+            assertEquals(JarStatus.MISSING, graph.status(graph.find(nested("gone.jar"))));
+        }
+    }
+
+    @Test
+    public void offByDefaultTest() throws Exception {
+        ClasspathGraph graph = new ClasspathResolver().resolve(fat.getPath());
+
+        assertEquals(Arrays.asList(path("outside.jar")), children(graph, graph.root()));
+    }
+
+    @Test
+    public void nestedRootTest() throws Exception {
+        JarInspector jarInspector = new JarInspector().setNested(true);
+
+        assertEquals(JarStatus.JAR, jarInspector.inspect(nested("stored.jar")).getStatus());
+        assertEquals(JarStatus.MISSING, jarInspector.inspect(nested("gone.jar")).getStatus());
+        assertEquals(JarStatus.MISSING, new JarInspector().inspect(nested("stored.jar")).getStatus());
+    }
+
+    @Test
+    public void cachedTest() throws Exception {
+        ManifestCache manifestCache = ManifestCache.load(temporaryFolder.getRoot().toPath().resolve("cache.bin"));
+        new ClasspathResolver(new JarInspector(manifestCache).setNested(true)).resolve(fat.getPath());
+        manifestCache.save();
+
+        // A new cache from the file lists the libraries without opening the fat jar.
+        ResolutionStats stats = new ResolutionStats();
+        ClasspathGraph graph = new ClasspathResolver(new JarInspector(ManifestCache.load(temporaryFolder.getRoot().toPath().resolve("cache.bin"))).setNested(true).setStats(stats)).resolve(fat.getPath());
+
+        assertEquals(Arrays.asList(path("outside.jar"), nested("stored.jar"), nested("deflated.jar")), children(graph, graph.root()));
+        ResolutionStats.JarTiming fatTiming = stats.getTimings().stream().filter(timing -> timing.getPath().equals(fat.getPath())).findFirst().get();
+        assertEquals(0, fatTiming.getFilesOpened());
+    }
+
+    @Test
+    public void duplicatesTest() throws Exception {
+        ClasspathGraph graph = new ClasspathResolver(new JarInspector().setNested(true)).resolve(fat.getPath());
+
+        DuplicateClassReport report = new DuplicateClassDetector().detect(graph);
+
+        assertEquals(1, report.getDuplicateClasses().size());
+        assertEquals("a.A", report.getDuplicateClasses().get(0).getName());
+        assertEquals(Arrays.asList(nested("stored.jar"), nested("deflated.jar")), report.getDuplicateClasses().get(0).getJars());
+    }
+
+    private String path(String name) {
+        return new File(temporaryFolder.getRoot(), name).getAbsolutePath();
+    }
+
+    private String nested(String name) {
+        return fat.getAbsolutePath() + "!/BOOT-INF/lib/" + name;
+    }
+
+    private static List<String> children(ClasspathGraph graph, int id) {
+        String[] children = new String[graph.childCount(id)];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = graph.path(graph.child(id, i));
+        }
+        return Arrays.asList(children);
+    }
+
+    private static byte[] jarBytes(String classPath, String... entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        jar(bytes, classPath, entries);
+        return bytes.toByteArray();
+    }
+
+    private static void jar(OutputStream target, String classPath, String... entries) throws IOException {
+        try (JarOutputStream out = manifestStream(target, classPath)) {
+            for (String entry : entries) {
+                entry(out, entry, new byte[0], false);
+            }
+        }
+    }
+
+    private static JarOutputStream manifestStream(OutputStream target, String classPath) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (classPath != null) {
+            manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+        }
+        return new JarOutputStream(target, manifest);
+    }
+
+    private static void entry(JarOutputStream out, String name, byte[] data, boolean stored) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            zipEntry.setMethod(ZipEntry.STORED);
+            zipEntry.setSize(data.length);
+            zipEntry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(zipEntry);
+        out.write(data);
+        out.closeEntry();
+    }
+}
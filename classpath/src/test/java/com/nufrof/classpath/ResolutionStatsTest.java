@@ -0,0 +1,73 @@
+package com.nufrof.classpath;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResolutionStatsTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void statsTest() throws Exception {
+        File app = jar("app.jar", "lib/a.jar lib/b.jar lib/gone.jar");
+        jar("lib/a.jar", "b.jar");
+        jar("lib/b.jar", null);
+        ManifestCache manifestCache = ManifestCache.load(temporaryFolder.getRoot().toPath().resolve("cache.bin"));
+
+        ResolutionStats cold = new ResolutionStats();
+        new ClasspathResolver(new JarInspector(manifestCache).setStats(cold)).setParallelism(2).resolve(app.getPath());
+
+        List<ResolutionStats.JarTiming> timings = cold.getTimings();
+        assertEquals(4, timings.size());
+        assertEquals(4, Arrays.stream(cold.getHistogram()).sum());
+        assertEquals(0, cold.getCacheHits());
+        assertEquals(3, cold.getCacheMisses());
+        for (ResolutionStats.JarTiming timing : timings) {
+            boolean exists = new File(timing.getPath()).exists();
+            assertEquals(timing.getPath(), exists ? 1 : 0, timing.getFilesOpened());
+            assertEquals(timing.getPath(), exists, timing.getBytesRead() > 0);
+            assertTrue(timing.getNanos() >= timing.getNanos(ResolutionStats.Stage.ZIP_OPEN) + timing.getNanos(ResolutionStats.Stage.MANIFEST_PARSE));
+        }
+        ResolutionStats.JarTiming appTiming = timings.stream().filter(timing -> timing.getPath().equals(app.getPath())).findFirst().get();
+        assertTrue(appTiming.getNanos(ResolutionStats.Stage.PATH_NORMALIZATION) > 0);
+        List<ResolutionStats.JarTiming> slowest = cold.getSlowest(2);
+        assertEquals(2, slowest.size());
+        assertTrue(slowest.get(0).getNanos() >= slowest.get(1).getNanos());
+
+        ResolutionStats warm = new ResolutionStats();
+        new ClasspathResolver(new JarInspector(manifestCache).setStats(warm)).resolve(app.getPath());
+
+        assertEquals(3, warm.getCacheHits());
+        assertEquals(0, warm.getCacheMisses());
+        StringWriter out = new StringWriter();
+        warm.write(out, 2);
+        assertTrue(out.toString(), out.toString().contains("Manifest cache: 3 hits, 0 misses (100.0% hit ratio)"));
+        assertTrue(out.toString(), out.toString().contains("Slowest 2:"));
+    }
+
+    private File jar(String name, String classPath) throws IOException {
+        File jar = new File(temporaryFolder.getRoot(), name);
+        jar.getParentFile().mkdirs();
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (classPath != null) {
+            manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+        }
+        new JarOutputStream(new FileOutputStream(jar), manifest).close();
+        return jar;
+    }
+}
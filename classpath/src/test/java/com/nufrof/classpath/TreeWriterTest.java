@@ -0,0 +1,92 @@
+package com.nufrof.classpath;
+
+import org.junit.Test;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TreeWriterTest {
+    private static final int NODES = 100_000;
+
+    @Test
+    public void deepChainTest() throws Exception {
+        ClasspathGraph graph = chain(NODES);
+        assertEquals(NODES, graph.jarsInClasspathOrder().length);
+
+        // Every line of a chain is indented one level deeper, so the text grows with the square of the
+        // depth; a shorter chain is enough to show the writer does not recurse.
+        CountingWriter out = new CountingWriter();
+        new TreeWriter().write(chain(10_000), out);
+        assertEquals(10_000, out.lines);
+    }
+
+    /**
+     * The throughput target: a 100k-node graph with about 200k edges is written in well under a second.  The bound
+     * asserted is looser, so that only a real regression fails on a slow machine.
+     */
+    @Test
+    public void throughputTest() throws Exception {
+        Random random = new Random(42);
+        ClasspathGraph.Builder builder = new ClasspathGraph.Builder();
+        int edges = 0;
+        for (int i = 0; i < NODES; i++) {
+            List<String> children = new ArrayList<>();
+            for (int child = 4 * i + 1; child <= 4 * i + 4 && child < NODES; child++) {
+                children.add("/estate/lib/dependency-" + child + ".jar");
+            }
+            children.add("/estate/lib/dependency-" + random.nextInt(NODES) + ".jar");
+            edges += children.size();
+            builder.resolve(builder.node("/estate/lib/dependency-" + i + ".jar"), new JarInfo(JarStatus.JAR, children));
+        }
+        ClasspathGraph graph = builder.build(0);
+        TreeWriter treeWriter = new TreeWriter();
+        treeWriter.write(graph, new CountingWriter());
+
+        long start = System.nanoTime();
+        CountingWriter out = new CountingWriter();
+        treeWriter.write(graph, out);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        assertEquals(edges + 1, out.lines);
+        assertTrue("Writing took " + millis + " ms.", millis < 2_000);
+    }
+
+    private static ClasspathGraph chain(int length) {
+        ClasspathGraph.Builder builder = new ClasspathGraph.Builder();
+        for (int i = 0; i < length; i++) {
+            List<String> children = new ArrayList<>();
+            if (i + 1 < length) {
+                children.add("/chain/" + (i + 1) + ".jar");
+            }
+            builder.resolve(builder.node("/chain/" + i + ".jar"), new JarInfo(i + 1 < length ? JarStatus.JAR : JarStatus.NO_CLASS_PATH, children));
+        }
+        return builder.build(0);
+    }
+
+    private static class CountingWriter extends Writer {
+        private long lines;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void write(String str) {
+            if (str.indexOf('\n') != -1) {
+                lines++;
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
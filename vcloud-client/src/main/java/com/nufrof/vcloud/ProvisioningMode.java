@@ -0,0 +1,16 @@
+package com.nufrof.vcloud;
+
+/**
+ * How createVApp sets each VM's CPUs, memory and computer name.
+ */
+public enum ProvisioningMode {
+    /**
+     * Compose the vApp powered off, reconfigure each VM, then power the vApp on.
+     */
+    RECONFIGURE,
+    /**
+     * Send the hardware and guest customization of each VM with the composition, which deploys and powers the vApp
+     * on by itself.  One task for the whole vApp instead of one per VM.
+     */
+    SINGLE_COMPOSE
+}
@@ -0,0 +1,293 @@
+package com.nufrof.vcloud;
+
+import com.nufrof.vcloud.domain.VAppRequest;
+import com.nufrof.vcloud.domain.VMRequest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * An append-only file recording each step of every createVApp as it happens: the VM names chosen, the vApp and
+ * composition task, each reconfigure task and VM reconfigured, and the power on task.  A service given the journal
+ * picks up a createVApp for the same request where it stopped, waiting on tasks still running in vCD instead of
+ * composing the vApp again.
+ * <p>
+ * Every record is forced to disk as it is written.  The VM names are recorded before the composition is requested, and
+ * each task as soon as the request that started it returns, so a crash in between leaves a task the journal does not
+ * know of.  Finished requests are dropped from the file when it is next opened.  A request should be worked on by one
+ * service at a time.
+ */
+public class VAppJournal implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(VAppJournal.class.getName());
+
+    enum Event {
+        // VM names, joined with commas.  Written before the composition is requested.
+        COMPOSING,
+        // vApp href and composition task href.
+        COMPOSE_STARTED,
+        COMPOSED,
+        // VM name and task href.
+        RECONFIGURE_STARTED,
+        // VM name.
+        RECONFIGURED,
+        // Task href.
+        POWER_ON_STARTED,
+        FINISHED,
+        // The composition failed, so a retry starts over.
+        ABANDONED
+    }
+
+    /**
+     * How far one request got.
+     */
+    public static class Entry {
+        final String key;
+        final List<String> vmNames = new ArrayList<>();
+        String vAppHref;
+        String composeTaskHref;
+        boolean composed;
+        // Task hrefs by VM name, for reconfigurations started and not yet recorded as finished.
+        final Map<String, String> reconfigureTaskHrefs = new LinkedHashMap<>();
+        final Set<String> reconfiguredVms = new LinkedHashSet<>();
+        String powerOnTaskHref;
+
+        Entry(String key) {
+            this.key = key;
+        }
+
+        Entry(Entry entry) {
+            this(entry.key);
+            vmNames.addAll(entry.vmNames);
+            vAppHref = entry.vAppHref;
+            composeTaskHref = entry.composeTaskHref;
+            composed = entry.composed;
+            reconfigureTaskHrefs.putAll(entry.reconfigureTaskHrefs);
+            reconfiguredVms.addAll(entry.reconfiguredVms);
+            powerOnTaskHref = entry.powerOnTaskHref;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * The names given to the VMs, in the order of the request.
+         */
+        public List<String> getVmNames() {
+            return vmNames;
+        }
+
+        /**
+         * The vApp, or null if its composition was not yet requested.
+         */
+        public String getVAppHref() {
+            return vAppHref;
+        }
+
+        public boolean isComposed() {
+            return composed;
+        }
+    }
+
+    private final Path file;
+
+    private final FileChannel channel;
+
+    // Unfinished requests by key.
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Opens the journal, replaying it and then rewriting it with only the unfinished requests.
+     */
+    public VAppJournal(Path file) throws IOException {
+        this.file = file;
+        if (Files.exists(file)) {
+            replay(Files.readAllLines(file, StandardCharsets.UTF_8), !new String(Files.readAllBytes(file), StandardCharsets.UTF_8).endsWith("\n"));
+        }
+        compact();
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Returns a key that is the same for equal requests, however they were built: the org, network and name of the
+     * vApp, and the catalog, vApp template, VM template, name, CPUs and memory of each VM, in order.
+     */
+    public static String key(VAppRequest vAppRequest) {
+        List<String> vms = vAppRequest.getVms().stream().map(vmRequest -> vmRequest.getCatalog() + "/" + vmRequest.getVApp() + "/" + vmRequest.getVm() + "/" + vmRequest.getName() + "/" + vmRequest.getNumCpus() + "/" + vmRequest.getMbsMemory()).collect(Collectors.toList());
+        return vAppRequest.getOrg() + "|" + vAppRequest.getNetwork() + "|" + vAppRequest.getName() + "|" + String.join(",", vms);
+    }
+
+    /**
+     * Returns a copy of how far the request got, or null if it is not in the journal or finished.
+     */
+    public synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : new Entry(entry);
+    }
+
+    /**
+     * Returns the keys of the requests that were started and neither finished nor abandoned.
+     */
+    public synchronized List<String> pending() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    void composing(String key, List<String> vmNames) {
+        append(key, Event.COMPOSING, String.join(",", vmNames.stream().map(VAppJournal::encode).collect(Collectors.toList())));
+    }
+
+    void composeStarted(String key, String vAppHref, String taskHref) {
+        append(key, Event.COMPOSE_STARTED, vAppHref, taskHref);
+    }
+
+    void composed(String key) {
+        append(key, Event.COMPOSED);
+    }
+
+    void reconfigureStarted(String key, String vmName, String taskHref) {
+        append(key, Event.RECONFIGURE_STARTED, vmName, taskHref);
+    }
+
+    void reconfigured(String key, String vmName) {
+        append(key, Event.RECONFIGURED, vmName);
+    }
+
+    void powerOnStarted(String key, String taskHref) {
+        append(key, Event.POWER_ON_STARTED, taskHref);
+    }
+
+    void finished(String key) {
+        append(key, Event.FINISHED);
+    }
+
+    void abandoned(String key) {
+        append(key, Event.ABANDONED);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private synchronized void append(String key, Event event, String... arguments) {
+        String line = encode(key) + "\t" + event + Arrays.stream(arguments).map(argument -> "\t" + encode(argument)).collect(Collectors.joining()) + "\n";
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the journal " + file + ".", e);
+        }
+        apply(key, event, arguments);
+    }
+
+    private void replay(List<String> lines, boolean tornTail) {
+        for (int i = 0; i < lines.size(); i++) {
+            // The last record may have been cut short by a crash while it was written.
+            if (tornTail && i == lines.size() - 1) {
+                LOGGER.warning("Ignoring the incomplete last record of " + file + ".");
+                break;
+            }
+            String[] fields = lines.get(i).split("\t", -1);
+            String[] arguments = Arrays.stream(fields).skip(2).map(VAppJournal::decode).toArray(String[]::new);
+            apply(decode(fields[0]), Event.valueOf(fields[1]), arguments);
+        }
+    }
+
+    private void apply(String key, Event event, String[] arguments) {
+        Entry entry = entries.computeIfAbsent(key, Entry::new);
+        switch (event) {
+            case COMPOSING:
+                entry.vmNames.clear();
+                if (!arguments[0].isEmpty()) {
+                    Arrays.stream(arguments[0].split(",")).map(VAppJournal::decode).forEach(entry.vmNames::add);
+                }
+                break;
+            case COMPOSE_STARTED:
+                entry.vAppHref = arguments[0];
+                entry.composeTaskHref = arguments[1];
+                break;
+            case COMPOSED:
+                entry.composed = true;
+                break;
+            case RECONFIGURE_STARTED:
+                entry.reconfigureTaskHrefs.put(arguments[0], arguments[1]);
+                break;
+            case RECONFIGURED:
+                entry.reconfigureTaskHrefs.remove(arguments[0]);
+                entry.reconfiguredVms.add(arguments[0]);
+                break;
+            case POWER_ON_STARTED:
+                entry.powerOnTaskHref = arguments[0];
+                break;
+            case FINISHED:
+            case ABANDONED:
+                entries.remove(key);
+                break;
+        }
+    }
+
+    // Rewrites the file with just the unfinished requests, through a temporary file so that a crash leaves one or the other.
+    private void compact() throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Entry entry : entries.values()) {
+                String key = encode(entry.key);
+                writer.write(key + "\t" + Event.COMPOSING + "\t" + encode(String.join(",", entry.vmNames.stream().map(VAppJournal::encode).collect(Collectors.toList()))) + "\n");
+                if (entry.vAppHref != null) {
+                    writer.write(key + "\t" + Event.COMPOSE_STARTED + "\t" + encode(entry.vAppHref) + "\t" + encode(entry.composeTaskHref) + "\n");
+                }
+                if (entry.composed) {
+                    writer.write(key + "\t" + Event.COMPOSED + "\n");
+                }
+                for (String vmName : entry.reconfiguredVms) {
+                    writer.write(key + "\t" + Event.RECONFIGURED + "\t" + encode(vmName) + "\n");
+                }
+                for (Map.Entry<String, String> vmAndTask : entry.reconfigureTaskHrefs.entrySet()) {
+                    writer.write(key + "\t" + Event.RECONFIGURE_STARTED + "\t" + encode(vmAndTask.getKey()) + "\t" + encode(vmAndTask.getValue()) + "\n");
+                }
+                if (entry.powerOnTaskHref != null) {
+                    writer.write(key + "\t" + Event.POWER_ON_STARTED + "\t" + encode(entry.powerOnTaskHref) + "\n");
+                }
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package com.nufrof.vcloud;
+
+import com.nufrof.vcloud.domain.VAppRequest;
+import com.nufrof.vcloud.domain.VMRequest;
+import com.vmware.vcloud.api.rest.schema_v1_5.VAppType;
+import com.vmware.vcloud.api.rest.schema_v1_5.VmType;
+import org.apache.commons.lang3.RandomStringUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps vApps composed ahead of time, so that {@link #createVApp} only has to rename, reconfigure and power one on.
+ * vApps are pooled per org, network and set of VM templates: {@link #register} a request of that shape and how many
+ * should be kept ready, and the pool composes them powered off in the background.  A request with no ready vApp of its
+ * shape is created from scratch.
+ * <p>
+ * Taking a vApp out, finding one missing on a periodic check, or removing one that has sat idle longer than maxIdle
+ * all start a new composition.  The pooled vApps are written to a state file after every change, so a new pool started
+ * on the same file picks up the vApps the last one left behind, once it has checked that they still exist, and
+ * composes none until then.
+ */
+public class VAppPool implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(VAppPool.class.getName());
+
+    private static final int POWER_ON_ATTEMPTS = 5;
+
+    private final VCloudVMService vCloudVMService;
+
+    private final Path stateFile;
+
+    private final long maxIdleMillis;
+
+    private final ScheduledExecutorService scheduler;
+
+    // How many vApps to keep ready, by key.
+    private final Map<String, Target> targets = new HashMap<>();
+
+    // Ready and composing vApps.
+    private final List<PooledVApp> pooled = new ArrayList<>();
+
+    // Whether the vApps in the state file have been checked.  Nothing is composed before, so that a vApp left behind
+    // is not composed again.
+    private boolean recovered;
+
+    public VAppPool(VCloudVMService vCloudVMService, Path stateFile) {
+        this(vCloudVMService, stateFile, VAppPoolOptions.builder().build());
+    }
+
+    public VAppPool(VCloudVMService vCloudVMService, Path stateFile, VAppPoolOptions options) {
+        this.vCloudVMService = vCloudVMService;
+        this.stateFile = stateFile;
+        this.maxIdleMillis = options.getMaxIdle().toMillis();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(options.getComposeParallelism(), runnable -> {
+            Thread thread = new Thread(runnable, "vcloud-pool-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::recover);
+        long refillMillis = options.getRefillInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::maintain, refillMillis, refillMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Keeps size vApps of the prototype's shape ready.  The prototype's name and VM sizes do not matter.
+     */
+    public void register(VAppRequest prototype, int size) {
+        synchronized (this) {
+            targets.put(key(prototype), new Target(prototype, size));
+        }
+        scheduler.execute(this::refill);
+    }
+
+    /**
+     * Hands out a ready vApp of the request's shape, renamed, reconfigured and powered on, or creates one if there is
+     * none.
+     */
+    public VAppType createVApp(VAppRequest vAppRequest) throws Exception {
+        vCloudVMService.validate(vAppRequest);
+        String key = key(vAppRequest);
+        PooledVApp pooledVApp = null;
+        synchronized (this) {
+            for (Iterator<PooledVApp> iterator = pooled.iterator(); iterator.hasNext(); ) {
+                PooledVApp candidate = iterator.next();
+                if (candidate.key.equals(key) && candidate.readySince > 0) {
+                    iterator.remove();
+                    pooledVApp = candidate;
+                    save();
+                    break;
+                }
+            }
+        }
+        scheduler.execute(this::refill);
+        if (pooledVApp == null) {
+            LOGGER.info("No pooled vApp for " + key + ".  Creating one.");
+            return vCloudVMService.createVApp(vAppRequest);
+        }
+        try {
+            return handOut(pooledVApp, vAppRequest);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not hand out pooled vApp " + pooledVApp.href + ".  Removing it.", e);
+            String href = pooledVApp.href;
+            scheduler.execute(() -> removeQuietly(href));
+            throw e;
+        }
+    }
+
+    /**
+     * Returns how many vApps of the request's shape are ready.
+     */
+    public synchronized int ready(VAppRequest vAppRequest) {
+        String key = key(vAppRequest);
+        return (int) pooled.stream().filter(pooledVApp -> pooledVApp.key.equals(key) && pooledVApp.readySince > 0).count();
+    }
+
+    /**
+     * Stops composing.  The pooled vApps are left in vCD and in the state file for the next pool.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        synchronized (this) {
+            save();
+        }
+    }
+
+    private VAppType handOut(PooledVApp pooledVApp, VAppRequest vAppRequest) throws Exception {
+        VAppType vAppType = vCloudVMService.getVApp(pooledVApp.href);
+
+        // Give each requested VM a pooled VM made from the same template, renamed to the requested unique name.
+        Map<String, Deque<VmType>> vmsByTemplate = new HashMap<>();
+        for (VmType vmType : vAppType.getChildren().getVm()) {
+            vmsByTemplate.computeIfAbsent(pooledVApp.vmTemplates.get(vmType.getName()), template -> new ArrayDeque<>()).add(vmType);
+        }
+        Map<VmType, VMRequest> vmRequestsByVm = new LinkedHashMap<>();
+        for (VMRequest vmRequest : vAppRequest.getVms()) {
+            Deque<VmType> vms = vmsByTemplate.get(template(vmRequest));
+            if (vms == null || vms.isEmpty()) {
+                throw new IllegalStateException("Pooled vApp " + pooledVApp.href + " has no VM left from " + template(vmRequest) + ".");
+            }
+            VmType vmType = vms.poll();
+            vmType.setName(vmRequest.getUniqueName());
+            vmRequestsByVm.put(vmType, vmRequest);
+        }
+
+        vCloudVMService.renameVApp(vAppType, vAppRequest.getName());
+        vCloudVMService.reconfigureVms(vmRequestsByVm);
+        vCloudVMService.powerOn(vAppType, POWER_ON_ATTEMPTS);
+        return vCloudVMService.getVApp(pooledVApp.href);
+    }
+
+    private void recover() {
+        try {
+            recoverPooled();
+        } finally {
+            synchronized (this) {
+                recovered = true;
+            }
+        }
+        refill();
+    }
+
+    private void recoverPooled() {
+        List<PooledVApp> loaded;
+        try {
+            loaded = load(stateFile);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read the pool state from " + stateFile + ".  Starting empty.", e);
+            return;
+        }
+        for (PooledVApp pooledVApp : loaded) {
+            VAppType vAppType;
+            try {
+                vAppType = vCloudVMService.getVApp(pooledVApp.href);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Dropping pooled vApp " + pooledVApp.href + ", which could not be found.", e);
+                continue;
+            }
+            // Correct readySince before the vApp can be seen, so that one still composing is never handed out.
+            boolean composing = vAppType.getTasks() != null && !vAppType.getTasks().getTask().isEmpty();
+            synchronized (this) {
+                if (composing) {
+                    pooledVApp.readySince = 0;
+                } else if (pooledVApp.readySince == 0) {
+                    pooledVApp.readySince = System.currentTimeMillis();
+                }
+                pooled.add(pooledVApp);
+            }
+            if (composing) {
+                awaitComposition(pooledVApp, vAppType);
+            }
+        }
+        LOGGER.info("Recovered " + loaded.size() + " pooled vApps from " + stateFile + ".");
+        synchronized (this) {
+            save();
+        }
+    }
+
+    private void maintain() {
+        List<PooledVApp> idle = new ArrayList<>();
+        List<PooledVApp> ready = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Iterator<PooledVApp> iterator = pooled.iterator(); iterator.hasNext(); ) {
+                PooledVApp pooledVApp = iterator.next();
+                if (pooledVApp.readySince > 0 && now - pooledVApp.readySince > maxIdleMillis) {
+                    iterator.remove();
+                    idle.add(pooledVApp);
+                } else if (pooledVApp.readySince > 0) {
+                    ready.add(pooledVApp);
+                }
+            }
+            if (!idle.isEmpty()) {
+                save();
+            }
+        }
+        for (PooledVApp pooledVApp : idle) {
+            LOGGER.info("Removing pooled vApp " + pooledVApp.href + ", which has been idle too long.");
+            removeQuietly(pooledVApp.href);
+        }
+
+        // Drop ready vApps removed from vCD behind the pool's back, unless handed out in the meantime.
+        for (PooledVApp pooledVApp : ready) {
+            try {
+                vCloudVMService.getVApp(pooledVApp.href);
+            } catch (RuntimeException e) {
+                boolean dropped;
+                synchronized (this) {
+                    dropped = pooled.remove(pooledVApp);
+                    if (dropped) {
+                        save();
+                    }
+                }
+                if (dropped) {
+                    LOGGER.log(Level.WARNING, "Dropping pooled vApp " + pooledVApp.href + ", which could not be found.", e);
+                    // In case it is there after all, so that it is not left behind.
+                    removeQuietly(pooledVApp.href);
+                }
+            }
+        }
+        refill();
+    }
+
+    private void refill() {
+        List<PooledVApp> toCompose = new ArrayList<>();
+        List<VAppRequest> prototypes = new ArrayList<>();
+        synchronized (this) {
+            // Recovery refills once it is done.
+            if (!recovered) {
+                return;
+            }
+            for (Map.Entry<String, Target> target : targets.entrySet()) {
+                long count = pooled.stream().filter(pooledVApp -> pooledVApp.key.equals(target.getKey())).count();
+                for (long i = count; i < target.getValue().size; i++) {
+                    PooledVApp pooledVApp = new PooledVApp(target.getKey());
+                    pooled.add(pooledVApp);
+                    toCompose.add(pooledVApp);
+                    prototypes.add(target.getValue().prototype);
+                }
+            }
+        }
+        for (int i = 0; i < toCompose.size(); i++) {
+            PooledVApp pooledVApp = toCompose.get(i);
+            VAppRequest prototype = prototypes.get(i);
+            scheduler.execute(() -> compose(pooledVApp, prototype));
+        }
+    }
+
+    private void compose(PooledVApp pooledVApp, VAppRequest prototype) {
+        // Fresh VMRequests, so that every pooled vApp gets its own VM names.
+        List<VMRequest> vmRequests = prototype.getVms().stream().map(vm -> new VMRequest(vm.getCatalog(), vm.getVApp(), vm.getVm(), vm.getName(), vm.getNumCpus(), vm.getMbsMemory())).collect(Collectors.toList());
+        VAppRequest vAppRequest = VAppRequest.builder()
+                .org(prototype.getOrg())
+                .network(prototype.getNetwork())
+                .vms(vmRequests)
+                .name("pool" + RandomStringUtils.randomAlphanumeric(4))
+                .build();
+        for (VMRequest vmRequest : vmRequests) {
+            pooledVApp.vmTemplates.put(vmRequest.getUniqueName(), template(vmRequest));
+        }
+        try {
+            VAppType vAppType = vCloudVMService.startComposition(vAppRequest, false, false, false);
+            synchronized (this) {
+                pooledVApp.href = vAppType.getHref();
+                save();
+            }
+            awaitComposition(pooledVApp, vAppType);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not compose a vApp for the pool " + pooledVApp.key + ".", e);
+            synchronized (this) {
+                pooled.remove(pooledVApp);
+                save();
+            }
+        }
+    }
+
+    private void awaitComposition(PooledVApp pooledVApp, VAppType vAppType) {
+        vCloudVMService.watchTask(VCloudVMService.getCompositionTask(vAppType)).whenComplete((taskType, throwable) -> {
+            synchronized (this) {
+                if (throwable == null) {
+                    pooledVApp.readySince = System.currentTimeMillis();
+                } else {
+                    pooled.remove(pooledVApp);
+                }
+                save();
+            }
+            if (throwable != null) {
+                LOGGER.log(Level.WARNING, "Composing pooled vApp " + pooledVApp.href + " failed.  Removing it.", throwable);
+                scheduler.execute(() -> removeQuietly(pooledVApp.href));
+            }
+        });
+    }
+
+    private void removeQuietly(String vAppTypeHref) {
+        try {
+            vCloudVMService.removeVApp(vAppTypeHref);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not remove vApp " + vAppTypeHref + ".", e);
+        }
+    }
+
+    // Must hold the lock.
+    private void save() {
+        try {
+            save(stateFile, pooled);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write the pool state to " + stateFile + ".", e);
+        }
+    }
+
+    static String key(VAppRequest vAppRequest) {
+        List<String> templates = vAppRequest.getVms().stream().map(VAppPool::template).sorted().collect(Collectors.toList());
+        return vAppRequest.getOrg() + "|" + vAppRequest.getNetwork() + "|" + String.join(",", templates);
+    }
+
+    private static String template(VMRequest vmRequest) {
+        return vmRequest.getCatalog() + "/" + vmRequest.getVApp() + "/" + vmRequest.getVm();
+    }
+
+    /**
+     * Writes one line per pooled vApp whose composition has been requested: key, href, when it became ready (0 while
+     * composing) and the template of each VM by name, every field URL-encoded.
+     */
+    static void save(Path stateFile, Collection<PooledVApp> pooledVApps) throws IOException {
+        Path temporary = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (PooledVApp pooledVApp : pooledVApps) {
+                if (pooledVApp.href == null) {
+                    continue;
+                }
+                String vmTemplates = pooledVApp.vmTemplates.entrySet().stream().map(vmTemplate -> encode(vmTemplate.getKey()) + "=" + encode(vmTemplate.getValue())).collect(Collectors.joining(","));
+                writer.write(encode(pooledVApp.key) + "\t" + encode(pooledVApp.href) + "\t" + pooledVApp.readySince + "\t" + vmTemplates);
+                writer.newLine();
+            }
+        }
+        Files.move(temporary, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static List<PooledVApp> load(Path stateFile) throws IOException {
+        List<PooledVApp> pooledVApps = new ArrayList<>();
+        if (!Files.exists(stateFile)) {
+            return pooledVApps;
+        }
+        for (String line : Files.readAllLines(stateFile, StandardCharsets.UTF_8)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            PooledVApp pooledVApp = new PooledVApp(decode(fields[0]));
+            pooledVApp.href = decode(fields[1]);
+            pooledVApp.readySince = Long.parseLong(fields[2]);
+            if (!fields[3].isEmpty()) {
+                for (String vmTemplate : fields[3].split(",")) {
+                    String[] nameAndTemplate = vmTemplate.split("=", 2);
+                    pooledVApp.vmTemplates.put(decode(nameAndTemplate[0]), decode(nameAndTemplate[1]));
+                }
+            }
+            pooledVApps.add(pooledVApp);
+        }
+        return pooledVApps;
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Target {
+        private final VAppRequest prototype;
+        private final int size;
+
+        private Target(VAppRequest prototype, int size) {
+            this.prototype = prototype;
+            this.size = size;
+        }
+    }
+
+    static class PooledVApp {
+        final String key;
+        // Null until the composition has been requested.
+        String href;
+        // When composition finished, in epoch milliseconds; 0 while composing.
+        long readySince;
+        // The template each VM was made from, by VM name.
+        final Map<String, String> vmTemplates = new LinkedHashMap<>();
+
+        PooledVApp(String key) {
+            this.key = key;
+        }
+    }
+}
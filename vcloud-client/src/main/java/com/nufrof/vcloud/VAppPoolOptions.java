@@ -0,0 +1,27 @@
+package com.nufrof.vcloud;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Builder
+@Getter
+public class VAppPoolOptions {
+    /**
+     * How long a pre-composed vApp may wait to be handed out before it is removed and composed again.
+     */
+    @Builder.Default
+    private Duration maxIdle = Duration.ofHours(8);
+    /**
+     * How often the pool is checked for vApps that are missing or have been idle too long.  Each check fetches every
+     * ready vApp.
+     */
+    @Builder.Default
+    private Duration refillInterval = Duration.ofMinutes(1);
+    /**
+     * How many vApps are composed for the pool at once.
+     */
+    @Builder.Default
+    private int composeParallelism = 2;
+}
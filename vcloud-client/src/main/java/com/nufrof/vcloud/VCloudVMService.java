@@ -1,59 +1,200 @@
 package com.nufrof.vcloud;
 
+import com.nufrof.vcloud.cache.TtlCache;
 import com.nufrof.vcloud.domain.VAppRequest;
 import com.nufrof.vcloud.domain.VMRequest;
-import com.vmware.cxfrestclient.CxfClientSecurityContext;
-import com.vmware.vcloud.api.rest.client.VcdBasicLoginCredentials;
+import com.nufrof.vcloud.jaxb.JaxbContexts;
+import com.nufrof.vcloud.metrics.Stage;
+import com.nufrof.vcloud.metrics.VCloudMetrics;
+import com.nufrof.vcloud.query.QueryPages;
+import com.nufrof.vcloud.query.TypedQuery;
+import com.nufrof.vcloud.session.SessionPool;
+import com.nufrof.vcloud.session.VcdSessions;
+import com.nufrof.vcloud.task.TaskFailedException;
+import com.nufrof.vcloud.task.TaskMonitor;
+import com.nufrof.vcloud.throttle.KeyedConcurrencyLimiter;
+import com.nufrof.vcloud.throttle.TokenBucket;
+import com.nufrof.vcloud.trace.WireTrace;
+import com.nufrof.vcloud.trace.WireTraceSink;
+import com.nufrof.vcloud.view.CatalogView;
+import com.nufrof.vcloud.view.LinkView;
+import com.nufrof.vcloud.view.VAppView;
 import com.vmware.vcloud.api.rest.client.VcdClient;
-import com.vmware.vcloud.api.rest.client.VcdClientImpl;
 import com.vmware.vcloud.api.rest.client.constants.RestAdminConstants;
 import com.vmware.vcloud.api.rest.schema.ovf.MsgType;
 import com.vmware.vcloud.api.rest.schema.ovf.RASDType;
+import com.vmware.vcloud.api.rest.schema.ovf.SectionType;
 import com.vmware.vcloud.api.rest.schema.ovf.VirtualHardwareSectionType;
 import com.vmware.vcloud.api.rest.schema_v1_5.*;
 import com.vmware.vcloud.api.rest.version.ApiVersion;
 import org.apache.bval.jsr.ApacheValidationProvider;
 import org.apache.cxf.jaxrs.provider.JAXBElementTypedProvider;
 
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validation;
 import javax.validation.Validator;
 import javax.validation.ValidatorFactory;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
-import javax.xml.bind.Marshaller;
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
 import java.net.URI;
-import java.security.SecureRandom;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
-public class VCloudVMService {
+public class VCloudVMService implements AutoCloseable {
     private static final Logger LOGGER = Logger.getLogger(VCloudVMService.class.getName());
 
-    private VcdClient vcdClient;
+    private final SessionPool<VcdClient> sessionPool;
+
+    // Whether the pool was opened by, and so is closed with, this service.
+    private final boolean ownsSessionPool;
 
     private JAXBElementTypedProvider jaxbElementTypedProvider = getJAXBElementTypedProvider();
 
+    private final JaxbContexts jaxbContexts = new JaxbContexts(jaxbElementTypedProvider::getJAXBContext);
+
     private ObjectFactory objectFactory = new ObjectFactory();
 
-    private Validator validator;
+    // Building a factory is slow, and the validators it hands out are thread safe.
+    private static final ValidatorFactory VALIDATOR_FACTORY
+            = Validation.byProvider(ApacheValidationProvider.class)
+            .configure().buildValidatorFactory();
+
+    private final Validator validator = VALIDATOR_FACTORY.getValidator();
+
+    private static final String LOGGED_IN_ORG_KEY = "loggedInOrg";
+
+    private static final String QUERY_LIST_KEY = "queryList";
+
+    // Holds the org, query list, catalogs, catalog items, vApp templates, network references and VDCs, keyed by href.
+    private final TtlCache<String, Object> resourceCache;
+
+    // Runs the catalog, vApp template, network and VDC lookups for a composition side by side.
+    private final ExecutorService lookupExecutor;
+
+    // The lookup executor, counting the calls a lookup makes toward the createVApp that started it.
+    private final Executor lookups;
+
+    private final int reconfigureParallelism;
+
+    private final ProvisioningMode provisioningMode;
+
+    private final TaskMonitor taskMonitor;
+
+    // Null when API calls are not rate limited.
+    private final TokenBucket apiCallLimiter;
+
+    // Runs the vApps of createVApps, undeployVApps and removeVApps, a few per org at a time.
+    private final ExecutorService bulkExecutor;
+
+    private final KeyedConcurrencyLimiter<String> orgLimiter;
+
+    // Null when bodies are not traced.
+    private final WireTraceSink wireTraceSink;
+
+    private final VCloudMetrics metrics;
+
+    private final boolean queryLookups;
+
+    private final int queryPageSize;
+
+    private final VAppJournal journal;
+
+    private final boolean streamingViews;
+
+    // Counts the HTTP round trips made for the createVApp running on this thread.  Null outside createVApp.
+    private final ThreadLocal<AtomicInteger> callCount = new ThreadLocal<>();
 
     public VCloudVMService(String url, ApiVersion apiVersion, String orgName, String username, String password) throws Exception {
-        this.vcdClient = getVcdClient(url, apiVersion, orgName, username, password);
-        ValidatorFactory validatorFactory
-                = Validation.byProvider(ApacheValidationProvider.class)
-                .configure().buildValidatorFactory();
-        this.validator = validatorFactory.getValidator();
+        this(url, apiVersion, orgName, username, password, VCloudVMServiceOptions.builder().build());
+    }
+
+    public VCloudVMService(String url, ApiVersion apiVersion, String orgName, String username, String password, VCloudVMServiceOptions options) throws Exception {
+        this(VcdSessions.pool(url, apiVersion, orgName, username, password, options.getSessions()), true, options);
+    }
+
+    /**
+     * Uses sessions from a pool that may be shared with other services.  The pool is left open when this service is
+     * closed.
+     */
+    public VCloudVMService(SessionPool<VcdClient> sessionPool, VCloudVMServiceOptions options) {
+        this(sessionPool, false, options);
+    }
+
+    private VCloudVMService(SessionPool<VcdClient> sessionPool, boolean ownsSessionPool, VCloudVMServiceOptions options) {
+        this.sessionPool = sessionPool;
+        this.ownsSessionPool = ownsSessionPool;
+        this.resourceCache = new TtlCache<>(options.getCacheTtl(), options.getCacheMaxEntries());
+        this.lookupExecutor = getLookupExecutor(options.getLookupParallelism());
+        this.lookups = runnable -> lookupExecutor.execute(inCallCount(runnable));
+        if (options.getReconfigureParallelism() < 1) {
+            throw new IllegalArgumentException("reconfigureParallelism must be at least 1, but was " + options.getReconfigureParallelism() + ".");
+        }
+        this.reconfigureParallelism = options.getReconfigureParallelism();
+        this.provisioningMode = options.getProvisioningMode();
+        this.taskMonitor = new TaskMonitor(this::getTask, this::queryTaskStatuses, options.getTaskPollMinDelay(), options.getTaskPollMaxDelay());
+        this.apiCallLimiter = options.getApiCallsPerSecond() > 0 ? new TokenBucket(options.getApiCallsPerSecond(), options.getApiCallBurst()) : null;
+        this.bulkExecutor = Executors.newCachedThreadPool(daemonThreadFactory("vcloud-bulk-"));
+        this.orgLimiter = new KeyedConcurrencyLimiter<>(options.getMaxConcurrentVAppsPerOrg(), bulkExecutor);
+        this.wireTraceSink = options.getWireTraceSink();
+        this.metrics = options.getMetrics();
+        this.queryLookups = options.isQueryLookups();
+        if (options.getQueryPageSize() < 1) {
+            throw new IllegalArgumentException("queryPageSize must be at least 1, but was " + options.getQueryPageSize() + ".");
+        }
+        this.queryPageSize = options.getQueryPageSize();
+        this.journal = options.getJournal();
+        this.streamingViews = options.isStreamingViews();
+    }
+
+    private ExecutorService getLookupExecutor(int lookupParallelism) {
+        if (lookupParallelism < 1) {
+            throw new IllegalArgumentException("lookupParallelism must be at least 1, but was " + lookupParallelism + ".");
+        }
+        return Executors.newFixedThreadPool(lookupParallelism, daemonThreadFactory("vcloud-lookup-"));
+    }
+
+    private static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            // Daemon threads, so a service that is never closed does not keep the JVM alive.
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Stops the lookup and bulk threads and the task monitor, and logs out unless the sessions came from a shared pool.
+     * Lookups already running are allowed to finish; waits for tasks still running fail.
+     */
+    @Override
+    public void close() {
+        lookupExecutor.shutdown();
+        bulkExecutor.shutdown();
+        taskMonitor.close();
+        if (ownsSessionPool) {
+            sessionPool.close();
+        }
     }
 
     private JAXBElementTypedProvider getJAXBElementTypedProvider() {
@@ -71,60 +212,95 @@ public class VCloudVMService {
             com.vmware.vcloud.api.rest.schema.ovf.environment.ObjectFactory.class
     };
 
-    private VcdClient getVcdClient(String url, ApiVersion apiVersion, String orgName, String username, String password) throws Exception {
-        LOGGER.fine("Attempting to create the VcdClient.");
-        SSLContext sslContext = SSLContext.getInstance("SSL");
-        sslContext.init(null, new TrustManager[]{new X509TrustManager() {
-            @Override
-            public void checkClientTrusted(X509Certificate[] x509Certificates, String s) throws CertificateException {
+    /**
+     * Forgets every cached org, query list, catalog, catalog item, vApp template, network reference and VDC.
+     */
+    public void invalidateCache() {
+        resourceCache.invalidateAll();
+    }
 
-            }
+    /**
+     * Forgets one cached object, by href.
+     */
+    public void invalidateCache(String href) {
+        resourceCache.invalidate(href);
+    }
 
-            @Override
-            public void checkServerTrusted(X509Certificate[] x509Certificates, String s) throws CertificateException {
+    private OrgType getLoggedInOrg() {
+        return (OrgType) resourceCache.get(LOGGED_IN_ORG_KEY, () -> call("GET", VcdClient::getLoggedInOrg));
+    }
 
-            }
+    private QueryListType getQueryList() {
+        return (QueryListType) resourceCache.get(QUERY_LIST_KEY, () -> call("GET", VcdClient::getQueryList));
+    }
 
-            @Override
-            public X509Certificate[] getAcceptedIssuers() {
-                return new X509Certificate[0];
-            }
-        }}, new SecureRandom());
-        SSLSocketFactory sslSocketFactory = sslContext.getSocketFactory();
-        VcdClient vcdClient = new VcdClientImpl(URI.create(url + "/api"), Arrays.asList(apiVersion), CxfClientSecurityContext.getCxfClientSecurityContext(sslSocketFactory, false));
-        vcdClient.setCredentials(new VcdBasicLoginCredentials(username, orgName, password));
-        LOGGER.fine("VcdClient created successfully.");
-        return vcdClient;
+    private <T> T getCachedResource(String href, Class<T> resourceClass, Function<T, JAXBElement<T>> jaxbElementFactory) {
+        return resourceClass.cast(resourceCache.get(href, () -> {
+            T resource = getResource(URI.create(href), resourceClass);
+            traceResponse("GET", href, jaxbElementFactory.apply(resource));
+            return resource;
+        }));
     }
 
-    private CatalogType getCatalog(String catalogName) {
-        String catalogTypeHref = vcdClient.getLoggedInOrg().getLink().stream().filter(link -> link.getType().equals(CatalogType.CONTENT_TYPE + RestAdminConstants.MediaType.XML_FORMAT_SUFFIX) && link.getName().equals(catalogName)).map(link -> link.getHref()).findFirst().get();
-        CatalogType catalog = vcdClient.getResource(URI.create(catalogTypeHref), CatalogType.class);
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("Calling GET on " + catalogTypeHref + " returned the following:\n" + jaxbElementToXml(objectFactory.createCatalog(catalog)));
+    private CatalogView getCatalog(String catalogName) {
+        String catalogTypeHref = getLoggedInOrg().getLink().stream().filter(link -> link.getType().equals(CatalogType.CONTENT_TYPE + RestAdminConstants.MediaType.XML_FORMAT_SUFFIX) && link.getName().equals(catalogName)).map(link -> link.getHref()).findFirst().get();
+        if (!streamingViews) {
+            return CatalogView.of(getCachedResource(catalogTypeHref, CatalogType.class, objectFactory::createCatalog));
         }
-        return catalog;
+        return (CatalogView) resourceCache.get(catalogTypeHref, () -> getView(catalogTypeHref, CatalogView::read));
+    }
+
+    private LinkType getQueryLink(String type, String format) {
+        return getQueryList().getLink().stream().filter(link -> link.getHref().contains("type=" + type + "&") && link.getType().contains(format)).findFirst().get();
+    }
+
+    // Whether the names can be looked up with typed queries rather than by walking the parent documents.
+    private boolean canQuery(String... names) {
+        return queryLookups && Arrays.stream(names).allMatch(TypedQuery::isLiteral);
+    }
+
+    private ReferenceType getFirstReference(TypedQuery query) {
+        ReferencesType referencesType = getCachedResource(query.href(), ReferencesType.class, objectFactory::createReferences);
+        return referencesType.getReference().stream().map(JAXBElement::getValue).findFirst().get();
     }
 
-    private VAppTemplateType getVAppTemplate(CatalogType catalog, String vAppName) {
+    private VAppTemplateType queryVAppTemplate(String catalogName, String vAppName) {
+        // Find the vAppTemplate by name within the catalog.
+        TypedQuery query = new TypedQuery(getQueryLink("vAppTemplate", "references").getHref()).filter("name", vAppName).filter("catalogName", catalogName);
+        String vAppTemplateHref = getFirstReference(query).getHref();
+
+        // Get the vAppTemplate.
+        return getCachedResource(vAppTemplateHref, VAppTemplateType.class, objectFactory::createVAppTemplate);
+    }
+
+    /**
+     * Returns the names of the vApp templates in a catalog, fetched queryPageSize at a time.
+     */
+    public List<String> getVAppTemplateNames(String catalogName) {
+        List<String> names = new ArrayList<>();
+        TypedQuery query = new TypedQuery(getQueryLink("vAppTemplate", "references").getHref()).filter("catalogName", catalogName);
+        QueryPages.forEach(query, queryPageSize, href -> {
+            ReferencesType referencesType = getResource(URI.create(href), ReferencesType.class);
+            traceResponse("GET", href, objectFactory.createReferences(referencesType));
+            return referencesType;
+        }, ReferencesType::getReference, reference -> names.add(reference.getValue().getName()));
+        return names;
+    }
+
+    private VAppTemplateType getVAppTemplate(CatalogView catalog, String vAppName) {
         // Get the catalog item.
-        ReferenceType vappCatalogItem = catalog.getCatalogItems().getCatalogItem().stream().filter(catalogItem -> catalogItem.getName().equals(vAppName)).findFirst().get();
-        CatalogItemType catalogItemType = vcdClient.getResource(URI.create(vappCatalogItem.getHref()), CatalogItemType.class);
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("Calling GET on " + vappCatalogItem.getHref() + " returned the following:\n" + jaxbElementToXml(objectFactory.createCatalogItem(catalogItemType)));
-        }
+        String vappCatalogItemHref = catalog.getItemHrefs().entrySet().stream().filter(catalogItem -> catalogItem.getKey().equals(vAppName)).map(Map.Entry::getValue).findFirst().get();
+        CatalogItemType catalogItemType = getCachedResource(vappCatalogItemHref, CatalogItemType.class, objectFactory::createCatalogItem);
 
         // Get the vAppTemplate.
-        String entityHref = catalogItemType.getEntity().getHref();
-        VAppTemplateType vAppTemplate = vcdClient.getResource(URI.create(entityHref), VAppTemplateType.class);
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("Calling GET on " + entityHref + " returned the following:\n" + jaxbElementToXml(objectFactory.createVAppTemplate(vAppTemplate)));
-        }
-        return vAppTemplate;
+        return getCachedResource(catalogItemType.getEntity().getHref(), VAppTemplateType.class, objectFactory::createVAppTemplate);
+    }
+
+    private VAppTemplateType getVmTemplate(VAppTemplateType vAppTemplate, String vmTemplateName) {
+        return vAppTemplate.getChildren().getVm().stream().filter(vm -> vm.getName().equals(vmTemplateName)).findFirst().get();
     }
 
-    private ReferenceType getVmReference(VAppTemplateType vAppTemplate, String vmTemplateName, String vmName) {
-        VAppTemplateType vmTemplate = vAppTemplate.getChildren().getVm().stream().filter(vm -> vm.getName().equals(vmTemplateName)).findFirst().get();
+    private ReferenceType getVmReference(VAppTemplateType vmTemplate, String vmName) {
         ReferenceType vmReferenceType = new ReferenceType();
         vmReferenceType.setName(vmName);
         vmReferenceType.setHref(vmTemplate.getHref());
@@ -145,13 +321,24 @@ public class VCloudVMService {
         return networkConnectionSectionType;
     }
 
-    private SourcedCompositionItemParamType getSourceVm(VAppTemplateType vAppTemplate, NetworkConnectionSectionType vmNetworkSection, String vmTemplateName, String vmName) {
+    private SourcedCompositionItemParamType getSourceVm(VAppTemplateType vAppTemplate, NetworkConnectionSectionType vmNetworkSection, VMRequest vmRequest, String vmName, boolean customize) {
         // From the template, get the populated reference to the vm.
-        ReferenceType vmReferenceType = getVmReference(vAppTemplate, vmTemplateName, vmName);
+        VAppTemplateType vmTemplate = getVmTemplate(vAppTemplate, vmRequest.getVm());
+        ReferenceType vmReferenceType = getVmReference(vmTemplate, vmName);
 
         // Get vm instantiation params.
         InstantiationParamsType vmInstantiationParamsType = new InstantiationParamsType();
         vmInstantiationParamsType.getSection().add(objectFactory.createNetworkConnectionSection(vmNetworkSection));
+        if (customize) {
+            // Set the hardware and computer name now, instead of reconfiguring the VM after composition.  The sections are
+            // copied because the template is cached and shared.
+            JAXBElement<? extends SectionType> virtualHardwareSection = deepCopy(getSection(vmTemplate.getSection(), VirtualHardwareSectionType.class));
+            updateVirtualHardwareSectionType((VirtualHardwareSectionType) virtualHardwareSection.getValue(), vmRequest.getNumCpus(), vmRequest.getMbsMemory());
+            vmInstantiationParamsType.getSection().add(virtualHardwareSection);
+            JAXBElement<? extends SectionType> guestCustomizationSection = deepCopy(getSection(vmTemplate.getSection(), GuestCustomizationSectionType.class));
+            updateGuestCustomizationSectionType((GuestCustomizationSectionType) guestCustomizationSection.getValue(), vmName);
+            vmInstantiationParamsType.getSection().add(guestCustomizationSection);
+        }
 
         // Create vm request item.
         SourcedCompositionItemParamType sourcedCompositionItemParamType = new SourcedCompositionItemParamType();
@@ -163,14 +350,16 @@ public class VCloudVMService {
     }
 
     private NetworkConfigSectionType getVappNetworkConfig(String networkName) {
-        // Get the parent network for the org.
-        LinkType networkQueryLinkType = vcdClient.getQueryList().getLink().stream().filter(link -> link.getHref().contains("orgVdcNetwork") && link.getType().contains("references")).findFirst().get();
-        ReferencesType orgVdcNetwork = vcdClient.getResource(URI.create(networkQueryLinkType.getHref()), ReferencesType.class);
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("Calling GET on " + networkQueryLinkType.getHref() + " returned the following:\n" + jaxbElementToXml(objectFactory.createReferences(orgVdcNetwork)));
+        // Get the parent network for the org, asking for just that one if we can.
+        LinkType networkQueryLinkType = getQueryList().getLink().stream().filter(link -> link.getHref().contains("orgVdcNetwork") && link.getType().contains("references")).findFirst().get();
+        ReferenceType parentNetwork;
+        if (canQuery(networkName)) {
+            parentNetwork = getFirstReference(new TypedQuery(networkQueryLinkType.getHref()).filter("name", networkName));
+        } else {
+            ReferencesType orgVdcNetwork = getCachedResource(networkQueryLinkType.getHref(), ReferencesType.class, objectFactory::createReferences);
+            JAXBElement<ReferenceType> jaxbElement = orgVdcNetwork.getReference().stream().filter(network -> network.getValue().getName().equals(networkName)).findFirst().get();
+            parentNetwork = jaxbElement.getValue();
         }
-        JAXBElement<ReferenceType> jaxbElement = orgVdcNetwork.getReference().stream().filter(network -> network.getValue().getName().equals(networkName)).findFirst().get();
-        ReferenceType parentNetwork = jaxbElement.getValue();
 
         // Create a network configuration.
         NetworkConfigurationType networkConfigurationType = new NetworkConfigurationType();
@@ -206,101 +395,223 @@ public class VCloudVMService {
         return composeVAppParamsType;
     }
 
+    private String getComposeHref(String orgName) {
+        if (canQuery(orgName)) {
+            // Find the vdc by name, and go straight to its compose action rather than fetching the whole vdc for the link.
+            String vdcHref = getFirstReference(new TypedQuery(getQueryLink("orgVdc", "references").getHref()).filter("name", orgName)).getHref();
+            return vdcHref + "/action/composeVApp";
+        }
+        // Get the compose vapp link.
+        LinkType linkType = getVdcType(orgName).getLink().stream().filter(link -> link.getType().equals(ComposeVAppParamsType.CONTENT_TYPE + RestAdminConstants.MediaType.XML_FORMAT_SUFFIX)).findFirst().get();
+        return linkType.getHref();
+    }
+
     private VdcType getVdcType(String orgName) {
         // Get the org.
-        String vdcHref = vcdClient.getLoggedInOrg().getLink().stream().filter(link -> link.getName().equals(orgName)).map(link -> link.getHref()).findFirst().get();
+        String vdcHref = getLoggedInOrg().getLink().stream().filter(link -> link.getName().equals(orgName)).map(link -> link.getHref()).findFirst().get();
 
         // Get the vdc.
-        VdcType vdcType = vcdClient.getResource(URI.create(vdcHref), VdcType.class);
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("Calling GET on " + vdcHref + " returned the following:\n" + jaxbElementToXml(objectFactory.createVdc(vdcType)));
-        }
-
-        return vdcType;
+        return getCachedResource(vdcHref, VdcType.class, objectFactory::createVdc);
     }
 
-    private VAppType requestComposition(VdcType vdc, ComposeVAppParamsType vappCompositionRequestBody) {
-        // Get the compose vapp link.
-        LinkType linkType = vdc.getLink().stream().filter(link -> link.getType().equals(ComposeVAppParamsType.CONTENT_TYPE + RestAdminConstants.MediaType.XML_FORMAT_SUFFIX)).findFirst().get();
-
+    private VAppType requestComposition(String composeHref, ComposeVAppParamsType vappCompositionRequestBody) {
         // Request vapp composition.
         LOGGER.fine("Requesting VApp composition.");
         JAXBElement<ComposeVAppParamsType> composeVAppParamsTypeJAXBElement = objectFactory.createComposeVAppParams(vappCompositionRequestBody);
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("POSTing to " + linkType.getHref() + " the following:\n" + jaxbElementToXml(composeVAppParamsTypeJAXBElement));
-        }
-        VAppType vAppType = vcdClient.postResource(linkType, ComposeVAppParamsType.CONTENT_TYPE + RestAdminConstants.MediaType.XML_FORMAT_SUFFIX, composeVAppParamsTypeJAXBElement, VAppType.class);
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("Calling POST on " + linkType.getHref() + " returned the following:\n" + jaxbElementToXml(objectFactory.createVApp(vAppType)));
-        }
+        traceRequest("POST", composeHref, composeVAppParamsTypeJAXBElement);
+        VAppType vAppType = postResource(URI.create(composeHref), ComposeVAppParamsType.CONTENT_TYPE + RestAdminConstants.MediaType.XML_FORMAT_SUFFIX, composeVAppParamsTypeJAXBElement, VAppType.class);
+        traceResponse("POST", composeHref, objectFactory.createVApp(vAppType));
         return vAppType;
     }
 
-    private void validate(VAppRequest vAppRequest) throws Exception {
-        Set<ConstraintViolation<VAppRequest>> constraintViolations = validator.validate(vAppRequest);
-        if (constraintViolations.size() > 0) {
-            StringBuffer stringBuffer = new StringBuffer();
-            stringBuffer.append("The following constraints failed:\n");
-            for (ConstraintViolation<VAppRequest> constraintViolation : constraintViolations) {
-                stringBuffer.append("[Field]: " + constraintViolation.getPropertyPath() + ", [Value]: " + constraintViolation.getInvalidValue() + ", [Message]: " + constraintViolation.getMessage() + "\n");
+    void validate(VAppRequest vAppRequest) throws Exception {
+        stage(Stage.VALIDATE, () -> {
+            Set<ConstraintViolation<VAppRequest>> constraintViolations = validator.validate(vAppRequest);
+            if (constraintViolations.size() > 0) {
+                StringBuffer stringBuffer = new StringBuffer();
+                stringBuffer.append("The following constraints failed:\n");
+                for (ConstraintViolation<VAppRequest> constraintViolation : constraintViolations) {
+                    stringBuffer.append("[Field]: " + constraintViolation.getPropertyPath() + ", [Value]: " + constraintViolation.getInvalidValue() + ", [Message]: " + constraintViolation.getMessage() + "\n");
+                }
+                throw new IllegalArgumentException(stringBuffer.toString());
             }
-            throw new IllegalArgumentException(stringBuffer.toString());
-        }
+            return null;
+        });
     }
 
-    private List<SourcedCompositionItemParamType> getSourceVms(String networkName, List<VMRequest> vmRequests) {
+    private List<SourcedCompositionItemParamType> getSourceVms(String networkName, List<VMRequest> vmRequests, List<String> vmNames, boolean customize) throws Exception {
         // Get all the VM's networking information.
         NetworkConnectionSectionType vmNetworkSection = getVMNetworkSection(networkName, "POOL", true);
+        // Start a lookup for every catalog, and one for every VAppTemplate as soon as its catalog arrives.  This way we only go over the wire once per catalog and VAppTemplate, and all of them at the same time.
+        Map<String, CompletableFuture<CatalogView>> catalogs = new HashMap<>();
+        Map<List<String>, CompletableFuture<VAppTemplateType>> vAppTemplates = new HashMap<>();
+        for (VMRequest vmRequest : vmRequests) {
+            vAppTemplates.computeIfAbsent(Arrays.asList(vmRequest.getCatalog(), vmRequest.getVApp()), key -> {
+                // Query for the VAppTemplate itself where we can, rather than fetching its whole catalog.
+                if (canQuery(vmRequest.getCatalog(), vmRequest.getVApp())) {
+                    return CompletableFuture.supplyAsync(() -> queryVAppTemplate(vmRequest.getCatalog(), vmRequest.getVApp()), lookups);
+                }
+                CompletableFuture<CatalogView> catalog = catalogs.computeIfAbsent(vmRequest.getCatalog(), catalogName -> CompletableFuture.supplyAsync(() -> getCatalog(catalogName), lookups));
+                return catalog.thenApplyAsync(catalogView -> getVAppTemplate(catalogView, vmRequest.getVApp()), lookups);
+            });
+        }
         // Instantiate return object.
         List<SourcedCompositionItemParamType> sourceVms = new ArrayList<>();
-        // Create a map of catalogs to VMRequests.  This way we only go over the wire and pull the catalog once.
-        Map<String, List<VMRequest>> vmRequestByCatalog = vmRequests.stream().collect(Collectors.groupingBy(vm -> vm.getCatalog()));
-        // Iterate over the catalogs...
-        for (String catalogName : vmRequestByCatalog.keySet()) {
-            // Get the catalog that holds the vapp.
-            CatalogType catalog = getCatalog(catalogName);
-            // Create a map of VApps to VMRequests.  This way we only go over the wire and pull the VAppTemplate once.
-            Map<String, List<VMRequest>> vmRequestByVApp = vmRequestByCatalog.get(catalogName).stream().collect(Collectors.groupingBy(vm -> vm.getVApp()));
-            // Iterate over the VAppTemplates...
-            for (String vAppTemplateName : vmRequestByVApp.keySet()) {
-                // Get the vapp's template.
-                VAppTemplateType vAppTemplate = getVAppTemplate(catalog, vAppTemplateName);
-                //Iterate over the VMRequests...
-                for (VMRequest vmRequest : vmRequestByVApp.get(vAppTemplateName)) {
-                    // Get a list of source VMs with networking information populated.
-                    SourcedCompositionItemParamType sourceVm = getSourceVm(vAppTemplate, vmNetworkSection, vmRequest.getVm(), vmRequest.getUniqueName());
-                    sourceVms.add(sourceVm);
-                }
-            }
+        //Iterate over the VMRequests, in the order they were asked for...
+        for (int i = 0; i < vmRequests.size(); i++) {
+            VMRequest vmRequest = vmRequests.get(i);
+            // Get the vapp's template.
+            VAppTemplateType vAppTemplate = await(vAppTemplates.get(Arrays.asList(vmRequest.getCatalog(), vmRequest.getVApp())));
+            // Get a list of source VMs with networking information populated.
+            SourcedCompositionItemParamType sourceVm = getSourceVm(vAppTemplate, vmNetworkSection, vmRequest, vmNames.get(i), customize);
+            sourceVms.add(sourceVm);
         }
         return sourceVms;
     }
 
+    /**
+     * Waits for a lookup or a task and returns its result, throwing whatever the lookup or the task monitor threw.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw (Error) e.getCause();
+        }
+    }
+
     public VAppType createVApp(VAppRequest vAppRequest) throws Exception {
-        VAppType vAppType = composeVApp(vAppRequest, false, false);
-        reconfigureVms(vAppType, vAppRequest);
-        powerOn(vAppType, 5);
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger previousCalls = callCount.get();
+        callCount.set(calls);
+        try {
+            return stage(Stage.CREATE_VAPP, () -> {
+                if (journal != null) {
+                    return createJournaledVApp(vAppRequest);
+                }
+                if (provisioningMode == ProvisioningMode.SINGLE_COMPOSE) {
+                    return waitForCompositionAndRefresh(startComposition(vAppRequest, true, true, true));
+                }
+                VAppType vAppType = composeVApp(vAppRequest, false, false);
+                reconfigureVms(vAppType, vAppRequest);
+                powerOn(vAppType, 5);
+                return vAppType;
+            });
+        } finally {
+            callCount.set(previousCalls);
+            metrics.recordCreateVAppCalls(calls.get());
+        }
+    }
+
+    /**
+     * Creates the vApp a step at a time, recording each step in the journal.  When the journal already holds steps of
+     * an equal request, picks up after the last of them: tasks still running are waited on rather than started again,
+     * and VMs already reconfigured are left alone.
+     */
+    private VAppType createJournaledVApp(VAppRequest vAppRequest) throws Exception {
+        String key = VAppJournal.key(vAppRequest);
+        boolean singleCompose = provisioningMode == ProvisioningMode.SINGLE_COMPOSE;
+        VAppJournal.Entry previous = journal.get(key);
+        if (previous == null || previous.vAppHref == null) {
+            // Compose, under the names chosen last time if the composition may already have been requested.
+            List<String> vmNames = previous == null ? getUniqueNames(vAppRequest) : previous.vmNames;
+            journal.composing(key, vmNames);
+            VAppType vAppType = startComposition(vAppRequest, vmNames, singleCompose, singleCompose, singleCompose);
+            journal.composeStarted(key, vAppType.getHref(), getCompositionTask(vAppType).getHref());
+        } else {
+            LOGGER.info("Resuming the creation of vApp " + vAppRequest.getName() + " at " + previous.vAppHref + ".");
+        }
+        VAppJournal.Entry entry = journal.get(key);
+
+        // Wait for composition to complete.
+        if (!entry.composed) {
+            stage(Stage.WAIT, () -> {
+                try {
+                    waitUntilTaskComplete(getTask(entry.composeTaskHref));
+                } catch (TaskFailedException e) {
+                    // There is no vApp to pick up, so the next attempt starts over.
+                    journal.abandoned(key);
+                    throw e;
+                }
+                journal.composed(key);
+                return null;
+            });
+        }
+        VAppType vAppType = getVApp(entry.vAppHref);
+
+        if (!singleCompose) {
+            // Reconfigure the VMs not yet reconfigured.
+            Map<VmType, VMRequest> vmRequestsByVm = matchVmRequests(vAppType, vAppRequest.getVms(), entry.vmNames);
+            vmRequestsByVm.keySet().removeIf(vmType -> entry.reconfiguredVms.contains(vmType.getName()));
+            stage(Stage.RECONFIGURE, () -> {
+                reconfigureEach(vmRequestsByVm, entry.reconfigureTaskHrefs, (vmName, taskHref) -> journal.reconfigureStarted(key, vmName, taskHref), vmName -> journal.reconfigured(key, vmName));
+                return null;
+            });
+
+            // Power on, or wait for the power on already started.
+            stage(Stage.POWER_ON, () -> {
+                if (entry.powerOnTaskHref != null) {
+                    TaskType powerOnTaskType = getTask(entry.powerOnTaskHref);
+                    if (!isFailed(powerOnTaskType)) {
+                        waitUntilTaskComplete(powerOnTaskType);
+                        return null;
+                    }
+                }
+                powerOnWithRetries(vAppType, 5, powerOnTaskType -> journal.powerOnStarted(key, powerOnTaskType.getHref()));
+                return null;
+            });
+        }
+        journal.finished(key);
         return vAppType;
     }
 
-    public VAppType composeVApp(VAppRequest vAppRequest, boolean deploy, boolean powerOn) throws Exception {
-        // Validate the request object.
-        validate(vAppRequest);
+    private static List<String> getUniqueNames(VAppRequest vAppRequest) {
+        return vAppRequest.getVms().stream().map(VMRequest::getUniqueName).collect(Collectors.toList());
+    }
 
-        // Get a list of source VMs with networking information populated.
-        List<SourcedCompositionItemParamType> sourceVms = getSourceVms(vAppRequest.getNetwork(), vAppRequest.getVms());
+    private static boolean isFailed(TaskType taskType) {
+        return "error".equals(taskType.getStatus()) || "aborted".equals(taskType.getStatus()) || "canceled".equals(taskType.getStatus());
+    }
 
-        // Get all the vapp's networking information.
-        NetworkConfigSectionType vappNetworkSection = getVappNetworkConfig(vAppRequest.getNetwork());
+    /**
+     * Creates the vApps, working on up to maxConcurrentVAppsPerOrg of each org at once.  Returns a future per request,
+     * in the same order, and each completes as soon as its own vApp is created or fails.
+     */
+    public List<CompletableFuture<VAppType>> createVApps(List<VAppRequest> vAppRequests) {
+        return vAppRequests.stream().map(vAppRequest -> orgLimiter.submit(vAppRequest.getOrg(), () -> createVApp(vAppRequest))).collect(Collectors.toList());
+    }
 
-        // Get composition request body.
-        ComposeVAppParamsType vappCompositionRequestBody = getVappCompositionRequestBody(vappNetworkSection, vAppRequest.getName(), sourceVms, deploy, powerOn);
+    /**
+     * Undeploys the vApps of an org, up to maxConcurrentVAppsPerOrg at once.  Returns a future per href, in the same
+     * order.
+     */
+    public List<CompletableFuture<Void>> undeployVApps(String orgName, List<String> vAppTypeHrefs) {
+        return vAppTypeHrefs.stream().map(vAppTypeHref -> orgLimiter.submit(orgName, () -> {
+            undeployVApp(vAppTypeHref);
+            return (Void) null;
+        })).collect(Collectors.toList());
+    }
 
-        // Get the VDC.
-        VdcType vdc = getVdcType(vAppRequest.getOrg());
+    /**
+     * Removes the vApps of an org, up to maxConcurrentVAppsPerOrg at once.  With undeploy set, each vApp is undeployed
+     * right before it is removed.  Returns a future per href, in the same order.
+     */
+    public List<CompletableFuture<Void>> removeVApps(String orgName, List<String> vAppTypeHrefs, boolean undeploy) {
+        return vAppTypeHrefs.stream().map(vAppTypeHref -> orgLimiter.submit(orgName, () -> {
+            if (undeploy) {
+                undeployVApp(vAppTypeHref);
+            }
+            removeVApp(vAppTypeHref);
+            return (Void) null;
+        })).collect(Collectors.toList());
+    }
 
+    public VAppType composeVApp(VAppRequest vAppRequest, boolean deploy, boolean powerOn) throws Exception {
         // Request composition.
-        VAppType vAppType = requestComposition(vdc, vappCompositionRequestBody);
+        VAppType vAppType = startComposition(vAppRequest, deploy, powerOn, false);
 
         // Wait for the composition to complete and refresh the in memory vAppType.
         vAppType = waitForCompositionAndRefresh(vAppType);
@@ -308,93 +619,262 @@ public class VCloudVMService {
         return vAppType;
     }
 
-    private VAppType waitForCompositionAndRefresh(VAppType vAppType) throws Exception {
-        // Wait for composition to complete.
-        LOGGER.info(vAppType.getTasks().getTask().size() + " tasks running.  Grabbing the first.");
-        TaskType composeTaskType = vAppType.getTasks().getTask().get(0);
-        waitUntilTaskComplete(composeTaskType, 5000);
+    /**
+     * Validates the request, looks up everything it refers to and requests the composition, without waiting for it.
+     * With customize set, each VM's hardware and computer name are part of the composition.  The vApp returned holds
+     * the composition task.
+     */
+    VAppType startComposition(VAppRequest vAppRequest, boolean deploy, boolean powerOn, boolean customize) throws Exception {
+        return startComposition(vAppRequest, getUniqueNames(vAppRequest), deploy, powerOn, customize);
+    }
 
-        // Refresh vAppType so that so that it has all the now populated VM info.
-        String vAppHref = vAppType.getHref();
-        vAppType = vcdClient.getResource(URI.create(vAppHref), VAppType.class);
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("Calling GET on " + vAppHref + " returned the following:\n" + jaxbElementToXml(objectFactory.createVApp(vAppType)));
+    /**
+     * Composes the vApp with its VMs named vmNames, in the order of the request.
+     */
+    private VAppType startComposition(VAppRequest vAppRequest, List<String> vmNames, boolean deploy, boolean powerOn, boolean customize) throws Exception {
+        // Validate the request object.
+        validate(vAppRequest);
+
+        // Start getting all the vapp's networking information and the VDC's compose link.
+        CompletableFuture<NetworkConfigSectionType> vappNetworkSectionLookup = CompletableFuture.supplyAsync(() -> getVappNetworkConfig(vAppRequest.getNetwork()), lookups);
+        CompletableFuture<String> composeHrefLookup = CompletableFuture.supplyAsync(() -> getComposeHref(vAppRequest.getOrg()), lookups);
+
+        long resolveStart = System.nanoTime();
+        ComposeVAppParamsType vappCompositionRequestBody;
+        String composeHref;
+        boolean resolveFailed = true;
+        try {
+            // Get a list of source VMs with networking information populated, while those run.
+            List<SourcedCompositionItemParamType> sourceVms = getSourceVms(vAppRequest.getNetwork(), vAppRequest.getVms(), vmNames, customize);
+
+            // Get composition request body.
+            vappCompositionRequestBody = getVappCompositionRequestBody(await(vappNetworkSectionLookup), vAppRequest.getName(), sourceVms, deploy, powerOn);
+
+            // Get the VDC's compose link.
+            composeHref = await(composeHrefLookup);
+            resolveFailed = false;
+        } finally {
+            metrics.recordStage(Stage.RESOLVE_SOURCES, System.nanoTime() - resolveStart, resolveFailed);
         }
+
+        // Request composition.
+        return stage(Stage.COMPOSE, () -> requestComposition(composeHref, vappCompositionRequestBody));
+    }
+
+    static TaskType getCompositionTask(VAppType vAppType) {
+        LOGGER.info(vAppType.getTasks().getTask().size() + " tasks running.  Grabbing the first.");
+        return vAppType.getTasks().getTask().get(0);
+    }
+
+    private VAppType waitForCompositionAndRefresh(VAppType vAppType) throws Exception {
+        return stage(Stage.WAIT, () -> {
+            // Wait for composition to complete.
+            waitUntilTaskComplete(getCompositionTask(vAppType));
+
+            // Refresh vAppType so that so that it has all the now populated VM info.
+            return getVApp(vAppType.getHref());
+        });
+    }
+
+    VAppType getVApp(String vAppTypeHref) {
+        VAppType vAppType = getResource(URI.create(vAppTypeHref), VAppType.class);
+        traceResponse("GET", vAppTypeHref, objectFactory.createVApp(vAppType));
         return vAppType;
     }
 
-    public void undeployVApp(String vAppTypeHref) throws Exception {
-        VAppType vAppType = vcdClient.getResource(URI.create(vAppTypeHref), VAppType.class);
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("Calling GET on " + vAppTypeHref + " returned the following:\n" + jaxbElementToXml(objectFactory.createVApp(vAppType)));
+    /**
+     * Returns the vApp's name, status, links and VMs, read as the response streams in unless streamingViews is off.
+     */
+    public VAppView getVAppView(String vAppTypeHref) {
+        if (!streamingViews) {
+            return VAppView.of(getVApp(vAppTypeHref));
         }
-        LinkType undeployLinkType = vAppType.getLink().stream().filter(link -> link.getRel().equals("undeploy")).findFirst().get();
+        return getView(vAppTypeHref, VAppView::read);
+    }
+
+    public void undeployVApp(String vAppTypeHref) throws Exception {
+        stage(Stage.UNDEPLOY, () -> {
+            waitUntilTaskComplete(startUndeploy(getVAppView(vAppTypeHref)));
+            return null;
+        });
+    }
+
+    TaskType startUndeploy(VAppType vAppType) {
+        return startUndeploy(VAppView.of(vAppType));
+    }
+
+    TaskType startUndeploy(VAppView vAppView) {
+        LinkView undeployLink = vAppView.getLink("undeploy").get();
         UndeployVAppParamsType undeployVAppParamsType = new UndeployVAppParamsType();
         undeployVAppParamsType.setUndeployPowerAction("powerOff");
         JAXBElement<UndeployVAppParamsType> undeployVAppParamsTypeJAXBElement = objectFactory.createUndeployVAppParams(undeployVAppParamsType);
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("POSTing to " + undeployLinkType.getHref() + " the following:\n" + jaxbElementToXml(undeployVAppParamsTypeJAXBElement));
-        }
-        TaskType undeployTaskType = vcdClient.postResource(undeployLinkType, undeployLinkType.getType(), undeployVAppParamsTypeJAXBElement, TaskType.class);
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("Calling POST on " + undeployLinkType.getHref() + " returned the following:\n" + jaxbElementToXml(objectFactory.createTask(undeployTaskType)));
-        }
-        waitUntilTaskComplete(undeployTaskType, 1000);
+        traceRequest("POST", undeployLink.getHref(), undeployVAppParamsTypeJAXBElement);
+        TaskType undeployTaskType = postResource(URI.create(undeployLink.getHref()), undeployLink.getType(), undeployVAppParamsTypeJAXBElement, TaskType.class);
+        traceResponse("POST", undeployLink.getHref(), objectFactory.createTask(undeployTaskType));
+        return undeployTaskType;
     }
 
     public void removeVApp(String vAppTypeHref) throws Exception {
-        // We repull the vAppType because the remove link isn't added until the vApp is undeployed.
-        VAppType vAppType = vcdClient.getResource(URI.create(vAppTypeHref), VAppType.class);
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("Calling GET on " + vAppTypeHref + " returned the following:\n" + jaxbElementToXml(objectFactory.createVApp(vAppType)));
-        }
+        stage(Stage.REMOVE, () -> {
+            // We repull the vApp because the remove link isn't added until the vApp is undeployed.
+            waitUntilTaskComplete(startRemoval(getVAppView(vAppTypeHref)));
+            return null;
+        });
+    }
 
-        LinkType removeLinkType = vAppType.getLink().stream().filter(link -> link.getRel().equals("remove")).findFirst().get();
-        TaskType removeTaskType = vcdClient.deleteResource(removeLinkType, true, true, TaskType.class);
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("Calling DELETE on " + removeLinkType.getHref() + " returned the following:\n" + jaxbElementToXml(objectFactory.createTask(removeTaskType)));
+    TaskType startRemoval(VAppType vAppType) {
+        return startRemoval(VAppView.of(vAppType));
+    }
+
+    TaskType startRemoval(VAppView vAppView) {
+        LinkView removeLink = vAppView.getLink("remove").get();
+        TaskType removeTaskType = deleteResource(removeLink.toLinkType(), true, true, TaskType.class);
+        traceResponse("DELETE", removeLink.getHref(), objectFactory.createTask(removeTaskType));
+        return removeTaskType;
+    }
+
+    /**
+     * Reconfigures every VM of the vApp to match its VMRequest.  Up to reconfigureParallelism reconfigure tasks run at
+     * once and are checked on together.  As soon as any of them fails, or can't be started, no more are started, and
+     * the exception names each VM that failed and each VM whose task is still running.
+     */
+    public void reconfigureVms(VAppType vAppType, VAppRequest vAppRequest) throws Exception {
+        reconfigureVms(matchVmRequests(vAppType, vAppRequest));
+    }
+
+    void reconfigureVms(Map<VmType, VMRequest> vmRequestsByVm) throws Exception {
+        stage(Stage.RECONFIGURE, () -> {
+            reconfigureEach(vmRequestsByVm, Collections.emptyMap(), (vmName, taskHref) -> {
+            }, vmName -> {
+            });
+            return null;
+        });
+    }
+
+    /**
+     * @param runningTaskHrefs reconfigure tasks already started, by VM name, to wait on instead of starting new ones
+     * @param started          told the VM name and task href of each reconfiguration started
+     * @param reconfigured     told the name of each VM reconfigured
+     */
+    private void reconfigureEach(Map<VmType, VMRequest> vmRequestsByVm, Map<String, String> runningTaskHrefs, BiConsumer<String, String> started, Consumer<String> reconfigured) throws Exception {
+        Iterator<Map.Entry<VmType, VMRequest>> pending = vmRequestsByVm.entrySet().iterator();
+        // Reconfigure tasks still running, by VM name.
+        Map<String, CompletableFuture<TaskType>> running = new LinkedHashMap<>();
+        while (pending.hasNext() || !running.isEmpty()) {
+            Map<String, String> failures = new LinkedHashMap<>();
+            // Start reconfiguring VMs until the limit is reached, or one of them can't be started.
+            while (pending.hasNext() && running.size() < reconfigureParallelism) {
+                Map.Entry<VmType, VMRequest> vmAndRequest = pending.next();
+                String vmName = vmAndRequest.getKey().getName();
+                try {
+                    running.put(vmName, watch(startReconfiguration(vmAndRequest.getKey(), vmAndRequest.getValue(), runningTaskHrefs.get(vmName), started)));
+                } catch (RuntimeException e) {
+                    failures.put(vmName, e.getMessage());
+                    break;
+                }
+            }
+
+            // Wait for any of them to finish, unless one couldn't be started.
+            if (failures.isEmpty()) {
+                try {
+                    CompletableFuture.anyOf(running.values().toArray(new CompletableFuture<?>[0])).get();
+                } catch (ExecutionException e) {
+                    // Collected below.
+                }
+            }
+            for (Iterator<Map.Entry<String, CompletableFuture<TaskType>>> iterator = running.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<String, CompletableFuture<TaskType>> vmAndTask = iterator.next();
+                if (vmAndTask.getValue().isDone()) {
+                    iterator.remove();
+                    Throwable failure = vmAndTask.getValue().handle((taskType, throwable) -> throwable).join();
+                    if (failure != null) {
+                        failures.put(vmAndTask.getKey(), failure.getMessage());
+                    } else {
+                        reconfigured.accept(vmAndTask.getKey());
+                    }
+                }
+            }
+            if (!failures.isEmpty()) {
+                StringBuilder stringBuilder = new StringBuilder();
+                stringBuilder.append("Reconfiguring the following VMs failed:\n");
+                for (Map.Entry<String, String> failure : failures.entrySet()) {
+                    stringBuilder.append("[VM]: " + failure.getKey() + ", [Details]: " + failure.getValue() + "\n");
+                }
+                if (!running.isEmpty()) {
+                    stringBuilder.append("Still running: " + String.join(", ", running.keySet()) + "\n");
+                }
+                throw new RuntimeException(stringBuilder.toString());
+            }
         }
+    }
 
-        waitUntilTaskComplete(removeTaskType, 1000);
+    /**
+     * Picks up the reconfiguration running as runningTaskHref, if any, or starts one if there is none or it failed.
+     */
+    private TaskType startReconfiguration(VmType vmType, VMRequest vmRequest, String runningTaskHref, BiConsumer<String, String> started) {
+        if (runningTaskHref != null) {
+            TaskType taskType = getTask(runningTaskHref);
+            if (!isFailed(taskType)) {
+                return taskType;
+            }
+            LOGGER.info("Reconfiguring " + vmType.getName() + " again, as task " + runningTaskHref + " finished with status " + taskType.getStatus() + ".");
+        }
+        TaskType taskType = requestReconfiguration(vmType, vmRequest);
+        started.accept(vmType.getName(), taskType.getHref());
+        return taskType;
+    }
 
+    /**
+     * Matches every VM of the vApp to its VMRequest, so that a bad request fails before any VM is reconfigured.
+     */
+    Map<VmType, VMRequest> matchVmRequests(VAppType vAppType, VAppRequest vAppRequest) {
+        return matchVmRequests(vAppType, vAppRequest.getVms(), getUniqueNames(vAppRequest));
     }
 
-    public void reconfigureVms(VAppType vAppType, VAppRequest vAppRequest) throws Exception {
-        Map<String, List<VMRequest>> mapOfNamesToVMRequests = vAppRequest.getVms().stream().collect(Collectors.groupingBy(vm -> vm.getUniqueName()));
+    /**
+     * Matches every VM of the vApp to the VMRequest at the same index as its name in vmNames.
+     */
+    private Map<VmType, VMRequest> matchVmRequests(VAppType vAppType, List<VMRequest> vmRequestList, List<String> vmNames) {
+        Map<String, List<VMRequest>> mapOfNamesToVMRequests = IntStream.range(0, vmRequestList.size()).boxed().collect(Collectors.groupingBy(vmNames::get, Collectors.mapping(vmRequestList::get, Collectors.toList())));
+        Map<VmType, VMRequest> vmRequestsByVm = new LinkedHashMap<>();
         for (VmType vmType : vAppType.getChildren().getVm()) {
-            // Get the VMRequest.
-            List<VMRequest> vmRequests = mapOfNamesToVMRequests.get(vmType.getName());
+            List<VMRequest> vmRequests = mapOfNamesToVMRequests.getOrDefault(vmType.getName(), Collections.emptyList());
             if (vmRequests.size() != 1) {
                 throw new RuntimeException("There should be exactly 1 VM per unique name, but there are " + vmRequests.size() + "!");
             }
-            VMRequest vmRequest = vmRequests.get(0);
+            vmRequestsByVm.put(vmType, vmRequests.get(0));
+        }
+        return vmRequestsByVm;
+    }
 
-            // Update guest customization specs for the VM.
-            updateGuestCustomizationSectionType(vmType, vmType.getName());
+    int getReconfigureParallelism() {
+        return reconfigureParallelism;
+    }
 
-            // Update hardware specs for the VM.
-            updateVirtualHardwareSectionType(vmType, vmRequest.getNumCpus(), vmRequest.getMbsMemory());
+    TaskType requestReconfiguration(VmType vmType, VMRequest vmRequest) {
+        // Update guest customization specs for the VM.
+        updateGuestCustomizationSectionType(vmType, vmType.getName());
 
-            // Get the request body for the reconfigure request.
-            JAXBElement<VmType> vmTypeJAXBElement = objectFactory.createVm(vmType);
+        // Update hardware specs for the VM.
+        updateVirtualHardwareSectionType(vmType, vmRequest.getNumCpus(), vmRequest.getMbsMemory());
 
-            // Get the reconfigure link, make the request, and wait for the task to complete.
-            LinkType reconfigureLink = vmType.getLink().stream().filter(link -> link.getRel().equals("reconfigureVm")).findFirst().get();
-            if (LOGGER.isLoggable(Level.FINE)) {
-                LOGGER.fine("POSTing to " + reconfigureLink.getHref() + " the following:\n" + jaxbElementToXml(vmTypeJAXBElement));
-            }
-            TaskType reconfigureTaskType = vcdClient.postResource(URI.create(reconfigureLink.getHref()), reconfigureLink.getType(), vmTypeJAXBElement, TaskType.class);
-            if (LOGGER.isLoggable(Level.FINE)) {
-                LOGGER.fine("Calling POST on " + reconfigureLink.getHref() + " returned the following:\n" + jaxbElementToXml(objectFactory.createTask(reconfigureTaskType)));
-            }
+        // Get the request body for the reconfigure request.
+        JAXBElement<VmType> vmTypeJAXBElement = objectFactory.createVm(vmType);
 
-            waitUntilTaskComplete(reconfigureTaskType, 1000);
-        }
+        // Get the reconfigure link and make the request.
+        LinkType reconfigureLink = vmType.getLink().stream().filter(link -> link.getRel().equals("reconfigureVm")).findFirst().get();
+        traceRequest("POST", reconfigureLink.getHref(), vmTypeJAXBElement);
+        TaskType reconfigureTaskType = postResource(URI.create(reconfigureLink.getHref()), reconfigureLink.getType(), vmTypeJAXBElement, TaskType.class);
+        traceResponse("POST", reconfigureLink.getHref(), objectFactory.createTask(reconfigureTaskType));
+        return reconfigureTaskType;
     }
 
     private void updateVirtualHardwareSectionType(VmType vm, Integer numCPUs, Integer memoryInMbs) {
+        updateVirtualHardwareSectionType((VirtualHardwareSectionType) getSection(vm.getSection(), VirtualHardwareSectionType.class).getValue(), numCPUs, memoryInMbs);
+    }
+
+    private void updateVirtualHardwareSectionType(VirtualHardwareSectionType virtualHardwareSectionType, Integer numCPUs, Integer memoryInMbs) {
         // Update the VM Sections to have the correct specs for...
-        VirtualHardwareSectionType virtualHardwareSectionType = (VirtualHardwareSectionType) vm.getSection().stream().filter(section -> section.getDeclaredType().isAssignableFrom(VirtualHardwareSectionType.class)).findFirst().get().getValue();
         // ... Number of CPUs.
         RASDType numCpus = virtualHardwareSectionType.getItem().stream().filter(item -> item.getDescription().getValue().toLowerCase().contains("virtual cpus")).findFirst().get();
         numCpus.getVirtualQuantity().setValue(BigInteger.valueOf(numCPUs));
@@ -404,22 +884,46 @@ public class VCloudVMService {
     }
 
     private void updateGuestCustomizationSectionType(VmType vm, String vmName) {
-        GuestCustomizationSectionType guestCustomizationSectionType = (GuestCustomizationSectionType) vm.getSection().stream().filter(section -> section.getDeclaredType().isAssignableFrom(GuestCustomizationSectionType.class)).findFirst().get().getValue();
+        updateGuestCustomizationSectionType((GuestCustomizationSectionType) getSection(vm.getSection(), GuestCustomizationSectionType.class).getValue(), vmName);
+    }
+
+    private void updateGuestCustomizationSectionType(GuestCustomizationSectionType guestCustomizationSectionType, String vmName) {
         guestCustomizationSectionType.setComputerName(vmName);
     }
 
+    private static JAXBElement<? extends SectionType> getSection(List<JAXBElement<? extends SectionType>> sections, Class<? extends SectionType> sectionClass) {
+        return sections.stream().filter(section -> section.getDeclaredType().isAssignableFrom(sectionClass)).findFirst().get();
+    }
+
+    /**
+     * Copies an element by marshalling and unmarshalling it, so that changes to the copy leave the original alone.
+     */
+    private <T> JAXBElement<T> deepCopy(JAXBElement<T> element) {
+        try {
+            return jaxbContexts.copy(element);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not copy " + element.getName() + ".", e);
+        }
+    }
+
     public void powerOn(VAppType vAppType, Integer maxAttempts) {
-        String powerOnHref = vAppType.getLink().stream().filter(link -> link.getRel().equals("power:powerOn")).findFirst().get().getHref();
+        stage(Stage.POWER_ON, () -> {
+            powerOnWithRetries(vAppType, maxAttempts, powerOnTaskType -> {
+            });
+            return null;
+        });
+    }
+
+    private void powerOnWithRetries(VAppType vAppType, Integer maxAttempts, Consumer<TaskType> started) {
         Integer powerOnAttempts = 0;
         while (powerOnAttempts < maxAttempts) {
             TaskType powerOnTaskType = null;
             try {
-                powerOnTaskType = vcdClient.postResource(URI.create(powerOnHref), null, null, TaskType.class);
-                if (LOGGER.isLoggable(Level.FINE)) {
-                    LOGGER.fine("Calling POST on " + powerOnHref + " returned the following:\n" + jaxbElementToXml(objectFactory.createTask(powerOnTaskType)));
-                }
                 powerOnAttempts += 1;
-                waitUntilTaskComplete(powerOnTaskType, 1000);
+                powerOnTaskType = startPowerOn(vAppType);
+                started.accept(powerOnTaskType);
+                waitUntilTaskComplete(powerOnTaskType);
+                return;
             } catch (Exception e) {
                 if (powerOnAttempts < maxAttempts) {
                     LOGGER.log(Level.WARNING, "Attempt " + powerOnAttempts + " of power on failed.  Retrying.", e);
@@ -431,38 +935,249 @@ public class VCloudVMService {
         }
     }
 
-    private void waitUntilTaskComplete(TaskType taskType, long msWaitInBetweenChecks) throws Exception {
-        String taskHref = taskType.getHref();
-        boolean complete = false;
-        while (!complete) {
-            taskType = vcdClient.getResource(URI.create(taskHref), TaskType.class);
-            if (LOGGER.isLoggable(Level.FINE)) {
-                LOGGER.fine("Calling GET on " + taskHref + " returned the following:\n" + jaxbElementToXml(objectFactory.createTask(taskType)));
+    /**
+     * Returns a future for the task as it is when it finishes.  The future fails with a TaskFailedException if the task
+     * does not succeed.
+     */
+    public CompletableFuture<TaskType> watchTask(TaskType taskType) {
+        return watch(taskType);
+    }
+
+    /**
+     * Renames the vApp and waits for vCD to finish.
+     */
+    void renameVApp(VAppType vAppType, String name) throws Exception {
+        LinkType editLinkType = vAppType.getLink().stream().filter(link -> link.getRel().equals("edit")).findFirst().get();
+        VAppType renamedVAppType = new VAppType();
+        renamedVAppType.setName(name);
+        renamedVAppType.setDescription(vAppType.getDescription());
+        JAXBElement<VAppType> vAppTypeJAXBElement = objectFactory.createVApp(renamedVAppType);
+        traceRequest("PUT", editLinkType.getHref(), vAppTypeJAXBElement);
+        TaskType renameTaskType = putResource(URI.create(editLinkType.getHref()), editLinkType.getType(), vAppTypeJAXBElement, TaskType.class);
+        traceResponse("PUT", editLinkType.getHref(), objectFactory.createTask(renameTaskType));
+        waitUntilTaskComplete(renameTaskType);
+    }
+
+    TaskType startPowerOn(VAppType vAppType) {
+        String powerOnHref = vAppType.getLink().stream().filter(link -> link.getRel().equals("power:powerOn")).findFirst().get().getHref();
+        TaskType powerOnTaskType = postResource(URI.create(powerOnHref), null, null, TaskType.class);
+        traceResponse("POST", powerOnHref, objectFactory.createTask(powerOnTaskType));
+        return powerOnTaskType;
+    }
+
+    /**
+     * Asks vCD to cancel the task through its cancel link.  Does nothing for a task that cannot be cancelled.
+     */
+    void cancelTask(TaskType taskType) {
+        Optional<LinkType> cancelLinkType = taskType.getLink().stream().filter(link -> link.getRel().equals("task:cancel")).findFirst();
+        if (!cancelLinkType.isPresent()) {
+            LOGGER.fine("Task " + taskType.getHref() + " has no cancel link.");
+            return;
+        }
+        LOGGER.info("Cancelling task " + taskType.getOperationName() + ".");
+        postResource(URI.create(cancelLinkType.get().getHref()), null, null, Void.class);
+    }
+
+    private void waitUntilTaskComplete(TaskType taskType) throws Exception {
+        await(watch(taskType));
+    }
+
+    /**
+     * Watches the task, counting its polls toward the createVApp running on this thread.
+     */
+    private CompletableFuture<TaskType> watch(TaskType taskType) {
+        AtomicInteger calls = callCount.get();
+        return taskMonitor.watch(taskType, calls == null ? null : calls::incrementAndGet);
+    }
+
+    private TaskType getTask(String taskHref) {
+        metrics.recordTaskPoll(1);
+        TaskType taskType = getResource(URI.create(taskHref), TaskType.class);
+        traceResponse("GET", taskHref, objectFactory.createTask(taskType));
+        return taskType;
+    }
+
+    private Map<String, String> queryTaskStatuses(Collection<String> taskHrefs) {
+        // Get the task query link.
+        LinkType taskQueryLinkType = getQueryList().getLink().stream().filter(link -> link.getHref().contains("type=task") && link.getType().contains("records")).findFirst().get();
+
+        // Query the tasks by href, for their status alone.
+        String queryHref = new TypedQuery(taskQueryLinkType.getHref()).pageSize(taskHrefs.size()).fields("status").filterAny("href", taskHrefs).href();
+        metrics.recordTaskPoll(taskHrefs.size());
+        QueryResultRecordsType queryResultRecordsType = getResource(URI.create(queryHref), QueryResultRecordsType.class);
+        traceResponse("GET", queryHref, objectFactory.createQueryResultRecords(queryResultRecordsType));
+
+        // Map each task found to its status.
+        Map<String, String> statuses = new HashMap<>();
+        for (JAXBElement<? extends QueryResultRecordType> record : queryResultRecordsType.getRecord()) {
+            if (record.getValue() instanceof QueryResultTaskRecordType) {
+                statuses.put(record.getValue().getHref(), ((QueryResultTaskRecordType) record.getValue()).getStatus());
             }
-            String status = taskType.getStatus();
-            if (status.equals("error")) {
-                throw new RuntimeException(taskType.getDetails());
-            } else if (status.equals("success")) {
-                complete = true;
-            } else {
-                LOGGER.info("Task " + taskType.getOperationName() + " is not yet complete.  Current status is " + status + ".");
+        }
+        return statuses;
+    }
+
+    private void throttle() {
+        if (apiCallLimiter != null) {
+            apiCallLimiter.acquire();
+        }
+    }
+
+    private <T> T getResource(URI uri, Class<T> resourceClass) {
+        return call("GET", vcdClient -> vcdClient.getResource(uri, resourceClass));
+    }
+
+    /**
+     * Reads the resource into a view as it streams in, rather than unmarshalling all of it.  The body is only held
+     * whole when it is traced.
+     */
+    private <V> V getView(String href, ViewReader<V> viewReader) {
+        return call("GET", vcdClient -> {
+            try (InputStream inputStream = vcdClient.getResource(URI.create(href), InputStream.class)) {
+                if (!isTraced()) {
+                    return viewReader.read(inputStream);
+                }
+                byte[] body = readAll(inputStream);
+                trace(WireTrace.Direction.RESPONSE, "GET", href, new String(body, StandardCharsets.UTF_8));
+                return viewReader.read(new ByteArrayInputStream(body));
+            } catch (IOException | XMLStreamException e) {
+                throw new IllegalStateException("Could not read " + href + ".", e);
             }
-            Thread.sleep(msWaitInBetweenChecks);
+        });
+    }
+
+    @FunctionalInterface
+    private interface ViewReader<V> {
+        V read(InputStream inputStream) throws XMLStreamException;
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer)) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    private <T> T postResource(URI uri, String contentType, JAXBElement<?> contents, Class<T> responseClass) {
+        return call("POST", vcdClient -> vcdClient.postResource(uri, contentType, contents, responseClass));
+    }
+
+    private <T> T putResource(URI uri, String contentType, JAXBElement<?> contents, Class<T> responseClass) {
+        return call("PUT", vcdClient -> vcdClient.putResource(uri, contentType, contents, responseClass));
+    }
+
+    private <T> T deleteResource(ReferenceType reference, boolean force, boolean recursive, Class<T> responseClass) {
+        return call("DELETE", vcdClient -> vcdClient.deleteResource(reference, force, recursive, responseClass));
+    }
+
+    /**
+     * Makes one HTTP round trip: waits for the rate limiter, then times and counts the call.
+     */
+    private <T> T call(String method, Function<VcdClient, T> call) {
+        throttle();
+        AtomicInteger calls = callCount.get();
+        if (calls != null) {
+            calls.incrementAndGet();
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = sessionPool.call(call);
+            failed = false;
+            return result;
+        } finally {
+            metrics.recordCall(method, System.nanoTime() - start, failed);
         }
     }
 
+    /**
+     * Runs work as one stage, timing it.
+     */
+    private <T, E extends Exception> T stage(Stage stage, StageWork<T, E> work) throws E {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = work.run();
+            failed = false;
+            return result;
+        } finally {
+            metrics.recordStage(stage, System.nanoTime() - start, failed);
+        }
+    }
+
+    private interface StageWork<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * Wraps a lookup so that it counts its calls toward the createVApp of the thread submitting it.
+     */
+    private Runnable inCallCount(Runnable runnable) {
+        AtomicInteger calls = callCount.get();
+        if (calls == null) {
+            return runnable;
+        }
+        return () -> {
+            AtomicInteger previous = callCount.get();
+            callCount.set(calls);
+            try {
+                runnable.run();
+            } finally {
+                callCount.set(previous);
+            }
+        };
+    }
+
     public String jaxbElementToXml(JAXBElement element) {
         try {
-            JAXBContext jc = jaxbElementTypedProvider.getJAXBContext(element.getValue().getClass(), element.getDeclaredType());
-            Marshaller marshaller = jc.createMarshaller();
-            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+            return jaxbContexts.toXml(element, true);
+        } catch (JAXBException e) {
+            throw new IllegalStateException("Could not marshal " + element.getName() + ".", e);
+        }
+    }
 
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            marshaller.marshal(element, baos);
-            return baos.toString();
-        } catch (Exception e) {
-            e.printStackTrace();
+    private void traceRequest(String method, String href, JAXBElement<?> element) {
+        trace(WireTrace.Direction.REQUEST, method, href, element);
+    }
+
+    private void traceResponse(String method, String href, JAXBElement<?> element) {
+        trace(WireTrace.Direction.RESPONSE, method, href, element);
+    }
+
+    /**
+     * Logs a body at FINE and hands it to the wire trace sink, marshalling it once for both, and not at all when
+     * neither wants it.  A body that can't be marshalled is traced as a placeholder rather than failing the call.
+     */
+    private void trace(WireTrace.Direction direction, String method, String href, JAXBElement<?> element) {
+        if (isTraced()) {
+            String xml;
+            try {
+                xml = jaxbContexts.toXml(element, LOGGER.isLoggable(Level.FINE));
+            } catch (JAXBException e) {
+                LOGGER.log(Level.WARNING, "Could not marshal " + element.getName() + " to trace " + method + " " + href + ".", e);
+                xml = "<!-- Could not marshal " + element.getName() + ". -->";
+            }
+            trace(direction, method, href, xml);
+        }
+    }
+
+    // Whether bodies are logged or handed to the wire trace sink.
+    private boolean isTraced() {
+        return LOGGER.isLoggable(Level.FINE) || wireTraceSink != null;
+    }
+
+    private void trace(WireTrace.Direction direction, String method, String href, String xml) {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            if (direction == WireTrace.Direction.REQUEST) {
+                LOGGER.fine(("PUT".equals(method) ? "PUTting" : method + "ing") + " to " + href + " the following:\n" + xml);
+            } else {
+                LOGGER.fine("Calling " + method + " on " + href + " returned the following:\n" + xml);
+            }
+        }
+        if (wireTraceSink != null) {
+            wireTraceSink.record(new WireTrace(direction, method, href, xml));
         }
-        return "";
     }
 }
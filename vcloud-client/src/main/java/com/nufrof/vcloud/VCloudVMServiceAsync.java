@@ -0,0 +1,245 @@
+package com.nufrof.vcloud;
+
+import com.nufrof.vcloud.domain.VAppRequest;
+import com.nufrof.vcloud.domain.VMRequest;
+import com.vmware.vcloud.api.rest.schema_v1_5.TaskType;
+import com.vmware.vcloud.api.rest.schema_v1_5.VAppType;
+import com.vmware.vcloud.api.rest.schema_v1_5.VmType;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The operations of {@link VCloudVMService} without blocking the caller.  Each returns a future right away.  The API
+ * calls themselves still block, so they run on a small pool of threads; waiting for a vCD task holds no thread at all,
+ * because it goes through the service's task monitor.
+ * <p>
+ * Cancelling a returned future asks vCD to cancel the task running for it, through the task's cancel link, and keeps
+ * the rest of the operation from starting.  The future of an operation that is already past its last task cannot be
+ * cancelled in a way vCD notices.
+ */
+public class VCloudVMServiceAsync implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(VCloudVMServiceAsync.class.getName());
+
+    private static final int DEFAULT_THREADS = 4;
+
+    private final VCloudVMService vCloudVMService;
+
+    private final ExecutorService executor;
+
+    public VCloudVMServiceAsync(VCloudVMService vCloudVMService) {
+        this(vCloudVMService, DEFAULT_THREADS);
+    }
+
+    /**
+     * @param threads how many API calls are made at once
+     */
+    public VCloudVMServiceAsync(VCloudVMService vCloudVMService, int threads) {
+        this.vCloudVMService = vCloudVMService;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "vcloud-async-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Stops the threads making API calls.  The service is left open.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    public CompletableFuture<VAppType> composeVApp(VAppRequest vAppRequest, boolean deploy, boolean powerOn) {
+        Operation<VAppType> operation = new Operation<>();
+        operation.call(() -> vCloudVMService.startComposition(vAppRequest, deploy, powerOn, false))
+                .thenCompose(vAppType -> operation.waitFor(VCloudVMService.getCompositionTask(vAppType)).thenApply(taskType -> vAppType.getHref()))
+                // Refresh vAppType so that it has all the now populated VM info.
+                .thenCompose(vAppHref -> operation.call(() -> vCloudVMService.getVApp(vAppHref)))
+                .whenComplete(operation::finish);
+        return operation.result;
+    }
+
+    /**
+     * Reconfigures up to reconfigureParallelism VMs at once, starting the next as soon as one finishes.  The future
+     * fails, naming the VM, as soon as any of them fails, and no more are started.
+     */
+    public CompletableFuture<Void> reconfigureVms(VAppType vAppType, VAppRequest vAppRequest) {
+        Operation<Void> operation = new Operation<>();
+        Iterator<Map.Entry<VmType, VMRequest>> pending;
+        try {
+            pending = vCloudVMService.matchVmRequests(vAppType, vAppRequest).entrySet().iterator();
+        } catch (RuntimeException e) {
+            operation.result.completeExceptionally(e);
+            return operation.result;
+        }
+        List<CompletableFuture<Void>> lanes = new ArrayList<>();
+        for (int i = 0; i < vCloudVMService.getReconfigureParallelism(); i++) {
+            lanes.add(reconfigureNext(operation, pending));
+        }
+        CompletableFuture.allOf(lanes.toArray(new CompletableFuture<?>[0])).whenComplete(operation::finish);
+        return operation.result;
+    }
+
+    private CompletableFuture<Void> reconfigureNext(Operation<Void> operation, Iterator<Map.Entry<VmType, VMRequest>> pending) {
+        Map.Entry<VmType, VMRequest> vmAndRequest;
+        synchronized (pending) {
+            if (!pending.hasNext() || operation.result.isDone()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            vmAndRequest = pending.next();
+        }
+        String vmName = vmAndRequest.getKey().getName();
+        return operation.call(() -> vCloudVMService.requestReconfiguration(vmAndRequest.getKey(), vmAndRequest.getValue()))
+                .thenCompose(operation::waitFor)
+                .handle((taskType, throwable) -> {
+                    if (throwable != null) {
+                        operation.finish(null, new RuntimeException("Reconfiguring VM " + vmName + " failed: " + unwrap(throwable).getMessage(), unwrap(throwable)));
+                    }
+                    return null;
+                })
+                .thenCompose(ignored -> reconfigureNext(operation, pending));
+    }
+
+    /**
+     * Powers the vApp on, trying up to maxAttempts times.
+     */
+    public CompletableFuture<Void> powerOn(VAppType vAppType, int maxAttempts) {
+        Operation<Void> operation = new Operation<>();
+        powerOnAttempt(operation, vAppType, 1, maxAttempts).whenComplete(operation::finish);
+        return operation.result;
+    }
+
+    private CompletableFuture<Void> powerOnAttempt(Operation<Void> operation, VAppType vAppType, int attempt, int maxAttempts) {
+        return operation.call(() -> vCloudVMService.startPowerOn(vAppType))
+                .thenCompose(operation::waitFor)
+                .handle((taskType, throwable) -> throwable)
+                .thenCompose(throwable -> {
+                    if (throwable == null) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    if (attempt >= maxAttempts || operation.result.isDone()) {
+                        LOGGER.log(Level.SEVERE, "Could not power on VMs.", unwrap(throwable));
+                        CompletableFuture<Void> failed = new CompletableFuture<>();
+                        failed.completeExceptionally(new RuntimeException("After " + attempt + " attempts, could not power on VMs.", unwrap(throwable)));
+                        return failed;
+                    }
+                    LOGGER.log(Level.WARNING, "Attempt " + attempt + " of power on failed.  Retrying.", unwrap(throwable));
+                    return powerOnAttempt(operation, vAppType, attempt + 1, maxAttempts);
+                });
+    }
+
+    public CompletableFuture<Void> undeployVApp(String vAppTypeHref) {
+        Operation<Void> operation = new Operation<>();
+        operation.call(() -> vCloudVMService.startUndeploy(vCloudVMService.getVAppView(vAppTypeHref)))
+                .thenCompose(operation::waitFor)
+                .<Void>thenApply(taskType -> null)
+                .whenComplete(operation::finish);
+        return operation.result;
+    }
+
+    public CompletableFuture<Void> removeVApp(String vAppTypeHref) {
+        Operation<Void> operation = new Operation<>();
+        // We repull the vApp because the remove link isn't added until the vApp is undeployed.
+        operation.call(() -> vCloudVMService.startRemoval(vCloudVMService.getVAppView(vAppTypeHref)))
+                .thenCompose(operation::waitFor)
+                .<Void>thenApply(taskType -> null)
+                .whenComplete(operation::finish);
+        return operation.result;
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+
+    /**
+     * One call of a public method: the future handed back and the vCD tasks running for it.
+     */
+    private class Operation<T> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        // By href.
+        private final Map<String, TaskType> runningTasks = new ConcurrentHashMap<>();
+
+        private Operation() {
+            result.whenComplete((value, throwable) -> {
+                if (result.isCancelled()) {
+                    for (String taskHref : runningTasks.keySet()) {
+                        TaskType taskType = runningTasks.remove(taskHref);
+                        if (taskType != null) {
+                            cancel(taskType);
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * Makes an API call on the pool, unless the operation is already over.
+         */
+        private <U> CompletableFuture<U> call(Callable<U> call) {
+            CompletableFuture<U> future = new CompletableFuture<>();
+            try {
+                executor.execute(() -> {
+                    if (result.isDone()) {
+                        future.cancel(false);
+                        return;
+                    }
+                    try {
+                        future.complete(call.call());
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+
+        private CompletableFuture<TaskType> waitFor(TaskType taskType) {
+            runningTasks.put(taskType.getHref(), taskType);
+            // The operation may have been cancelled while the task was being started.
+            if (result.isCancelled() && runningTasks.remove(taskType.getHref()) != null) {
+                cancel(taskType);
+            }
+            return vCloudVMService.watchTask(taskType).whenComplete((finishedTaskType, throwable) -> runningTasks.remove(taskType.getHref()));
+        }
+
+        private void cancel(TaskType taskType) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        vCloudVMService.cancelTask(taskType);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Could not cancel task " + taskType.getHref() + ".", e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                LOGGER.log(Level.WARNING, "Could not cancel task " + taskType.getHref() + ".", e);
+            }
+        }
+
+        private void finish(T value, Throwable throwable) {
+            if (throwable == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(unwrap(throwable));
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.nufrof.vcloud;
+
+import com.nufrof.vcloud.metrics.VCloudMetrics;
+import com.nufrof.vcloud.trace.WireTraceSink;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+@Builder
+@Getter
+public class VCloudVMServiceOptions {
+    /**
+     * How long the logged-in org, query list, catalogs, catalog items, vApp templates, network
+     * references and VDCs are reused before they are fetched again.
+     */
+    @Builder.Default
+    private Duration cacheTtl = Duration.ofMinutes(10);
+    /**
+     * How many of those objects are kept at most.  The least recently used is dropped first.
+     */
+    @Builder.Default
+    private int cacheMaxEntries = 1000;
+    /**
+     * How many logged-in sessions the service keeps, each used by one API call at a time.  Ignored when the service is
+     * given a {@link com.nufrof.vcloud.session.SessionPool}.
+     */
+    @Builder.Default
+    private int sessions = 4;
+    /**
+     * How many catalogs, vApp templates, networks and VDCs are looked up at once while composing a vApp.
+     */
+    @Builder.Default
+    private int lookupParallelism = 8;
+    /**
+     * Whether catalogs' vApp templates, networks and VDCs are found with typed queries on their names, which fetch only
+     * what matches.  Without, or for names holding query filter syntax, the whole catalog, network list and VDC are
+     * fetched and searched.
+     */
+    @Builder.Default
+    private boolean queryLookups = true;
+    /**
+     * How many records a paged query fetches at a time.  vCD caps this, at 128 by default.
+     */
+    @Builder.Default
+    private int queryPageSize = 128;
+    /**
+     * How many VMs of a vApp are reconfigured at once.  With 1, each VM waits for the one before it.
+     */
+    @Builder.Default
+    private int reconfigureParallelism = 1;
+    /**
+     * How often a young task is polled.  Long-running operations such as compositions start at five times this.
+     */
+    @Builder.Default
+    private Duration taskPollMinDelay = Duration.ofSeconds(1);
+    /**
+     * How often an old task is polled at least.  In between, a task is polled every tenth of its age.
+     */
+    @Builder.Default
+    private Duration taskPollMaxDelay = Duration.ofSeconds(30);
+    /**
+     * How many vApps of one org createVApps, undeployVApps and removeVApps work on at once.
+     */
+    @Builder.Default
+    private int maxConcurrentVAppsPerOrg = 4;
+    /**
+     * How many API calls are made per second at most, summed over every thread.  0 means no limit.
+     */
+    @Builder.Default
+    private double apiCallsPerSecond = 0;
+    /**
+     * How many API calls can be made back to back after a quiet spell before apiCallsPerSecond kicks in.
+     */
+    @Builder.Default
+    private int apiCallBurst = 10;
+    /**
+     * How createVApp applies each VM's hardware and computer name.
+     */
+    @Builder.Default
+    private ProvisioningMode provisioningMode = ProvisioningMode.RECONFIGURE;
+    /**
+     * Where the bodies of API calls are sent, such as a {@link com.nufrof.vcloud.trace.RingBufferWireTraceSink}.  Null
+     * means they are only logged, at FINE.  The service does not close it.
+     */
+    private WireTraceSink wireTraceSink;
+    /**
+     * Receives the latency of every API call and workflow stage, task poll counts and the number of API calls each
+     * createVApp makes.  Use a {@link com.nufrof.vcloud.metrics.HistogramMetrics} to read them over JMX.
+     */
+    @Builder.Default
+    private VCloudMetrics metrics = VCloudMetrics.NONE;
+    /**
+     * Where each step of createVApp is recorded, so that a createVApp cut short can be picked up by calling it again
+     * with an equal request, even from another process.  Null means nothing is recorded.  The service does not close
+     * it.
+     */
+    private VAppJournal journal;
+    /**
+     * Whether vApps being undeployed or removed, and catalogs, are read as they stream in, keeping only the links,
+     * names, statuses and VM hardware provisioning needs.  Set it to false to unmarshal them whole with JAXB instead.
+     */
+    @Builder.Default
+    private boolean streamingViews = true;
+}
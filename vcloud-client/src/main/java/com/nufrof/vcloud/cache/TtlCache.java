@@ -0,0 +1,126 @@
+package com.nufrof.vcloud.cache;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * A size-bounded cache whose entries expire a fixed time after they were loaded.  When full, the
+ * least recently used entry is evicted.  Concurrent gets of the same missing key share one load, so a
+ * burst of requests for the same catalog only goes over the wire once; a failed load is not cached.
+ */
+public class TtlCache<K, V> {
+    private static final Logger LOGGER = Logger.getLogger(TtlCache.class.getName());
+
+    private final long ttlNanos;
+
+    private final int maxEntries;
+
+    private final LongSupplier nanoClock;
+
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    public TtlCache(Duration ttl, int maxEntries) {
+        this(ttl, maxEntries, System::nanoTime);
+    }
+
+    TtlCache(Duration ttl, int maxEntries, LongSupplier nanoClock) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1, but was " + maxEntries + ".");
+        }
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = maxEntries;
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > TtlCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value for key, calling loader to load it if it is missing or has expired.
+     */
+    public V get(K key, Supplier<V> loader) {
+        CompletableFuture<V> load;
+        boolean loading = false;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null || entry.isExpired(nanoClock.getAsLong())) {
+                entry = new Entry<>(nanoClock.getAsLong() + ttlNanos);
+                entries.put(key, entry);
+                loading = true;
+            }
+            load = entry.value;
+        }
+        if (loading) {
+            try {
+                load.complete(loader.get());
+            } catch (RuntimeException | Error e) {
+                synchronized (this) {
+                    Entry<V> entry = entries.get(key);
+                    if (entry != null && entry.value == load) {
+                        entries.remove(key);
+                    }
+                }
+                load.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + key + " to load.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw (Error) e.getCause();
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        if (entries.remove(key) != null) {
+            LOGGER.fine("Invalidated " + key + ".");
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        LOGGER.fine("Invalidated every entry.");
+    }
+
+    /**
+     * Returns the number of entries, dropping any that have expired first.
+     */
+    public synchronized int size() {
+        long now = nanoClock.getAsLong();
+        for (Iterator<Entry<V>> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().isExpired(now)) {
+                iterator.remove();
+            }
+        }
+        return entries.size();
+    }
+
+    private static class Entry<V> {
+        private final CompletableFuture<V> value = new CompletableFuture<>();
+        private final long expiresAt;
+
+        private Entry(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
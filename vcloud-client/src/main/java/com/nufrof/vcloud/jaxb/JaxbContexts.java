@@ -0,0 +1,111 @@
+package com.nufrof.vcloud.jaxb;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds one JAXB context per element type and keeps it, along with a few marshallers and unmarshallers for it.
+ * Contexts are expensive to build and safe to share; marshallers are cheap next to them but not thread safe, so each
+ * call borrows one and hands it back.  A call that finds the pool empty makes a new one, and one handed back to a full
+ * pool is dropped.
+ */
+public class JaxbContexts {
+    private static final int POOL_SIZE = 16;
+
+    /**
+     * Builds the context for an element's value class and declared type.
+     */
+    public interface ContextFactory {
+        JAXBContext create(Class<?> type, Type genericType) throws JAXBException;
+    }
+
+    private final ContextFactory contextFactory;
+
+    // By value class and declared type.
+    private final Map<List<Type>, Pools> pools = new ConcurrentHashMap<>();
+
+    public JaxbContexts(ContextFactory contextFactory) {
+        this.contextFactory = contextFactory;
+    }
+
+    public String toXml(JAXBElement<?> element, boolean formatted) throws JAXBException {
+        Pools pools = getPools(element);
+        BlockingQueue<Marshaller> marshallers = formatted ? pools.formattingMarshallers : pools.marshallers;
+        Marshaller marshaller = marshallers.poll();
+        if (marshaller == null) {
+            marshaller = pools.context.createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, formatted);
+        }
+        StringWriter writer = new StringWriter();
+        marshaller.marshal(element, writer);
+        marshallers.offer(marshaller);
+        return writer.toString();
+    }
+
+    /**
+     * Copies an element by marshalling and unmarshalling it, so that changes to the copy leave the original alone.
+     */
+    public <T> JAXBElement<T> copy(JAXBElement<T> element) throws JAXBException {
+        Pools pools = getPools(element);
+        Marshaller marshaller = pools.marshallers.poll();
+        if (marshaller == null) {
+            marshaller = pools.context.createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, false);
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        marshaller.marshal(element, baos);
+        pools.marshallers.offer(marshaller);
+
+        Unmarshaller unmarshaller = pools.unmarshallers.poll();
+        if (unmarshaller == null) {
+            unmarshaller = pools.context.createUnmarshaller();
+        }
+        JAXBElement<T> copy = unmarshaller.unmarshal(new StreamSource(new ByteArrayInputStream(baos.toByteArray())), element.getDeclaredType());
+        pools.unmarshallers.offer(unmarshaller);
+        return copy;
+    }
+
+    /**
+     * Returns the number of contexts built so far.
+     */
+    public int size() {
+        return pools.size();
+    }
+
+    private Pools getPools(JAXBElement<?> element) throws JAXBException {
+        List<Type> key = Arrays.asList(element.getValue().getClass(), element.getDeclaredType());
+        Pools existing = pools.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        // Two threads may both build a context for a new type; the first one stored wins.
+        Pools created = new Pools(contextFactory.create(element.getValue().getClass(), element.getDeclaredType()));
+        existing = pools.putIfAbsent(key, created);
+        return existing != null ? existing : created;
+    }
+
+    private static class Pools {
+        private final JAXBContext context;
+        private final BlockingQueue<Marshaller> marshallers = new ArrayBlockingQueue<>(POOL_SIZE);
+        private final BlockingQueue<Marshaller> formattingMarshallers = new ArrayBlockingQueue<>(POOL_SIZE);
+        private final BlockingQueue<Unmarshaller> unmarshallers = new ArrayBlockingQueue<>(POOL_SIZE);
+
+        private Pools(JAXBContext context) {
+            this.context = context;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.nufrof.vcloud.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a latency histogram and an error count per HTTP method and per {@link Stage}, plus task poll counts and a
+ * histogram of HTTP round trips per createVApp.  Register it with {@link #registerMBean} to read them over JMX.
+ */
+public class HistogramMetrics implements VCloudMetrics, VCloudMetricsMXBean {
+    private final Map<String, Timer> calls = new ConcurrentHashMap<>();
+
+    private final Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+
+    private final LongAdder taskPolls = new LongAdder();
+
+    private final LongAdder tasksPolled = new LongAdder();
+
+    private final Histogram createVAppCalls = new Histogram();
+
+    private ObjectName objectName;
+
+    public HistogramMetrics() {
+        // Filled up front, so that the EnumMap is only ever read after construction.
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new Timer());
+        }
+    }
+
+    @Override
+    public void recordCall(String method, long nanos, boolean failed) {
+        calls.computeIfAbsent(method, m -> new Timer()).record(nanos, failed);
+    }
+
+    @Override
+    public void recordStage(Stage stage, long nanos, boolean failed) {
+        stages.get(stage).record(nanos, failed);
+    }
+
+    @Override
+    public void recordTaskPoll(int tasks) {
+        taskPolls.increment();
+        tasksPolled.add(tasks);
+    }
+
+    @Override
+    public void recordCreateVAppCalls(int calls) {
+        createVAppCalls.record(calls);
+    }
+
+    public Histogram getCallLatencies(String method) {
+        return calls.computeIfAbsent(method, m -> new Timer()).latencies;
+    }
+
+    public Histogram getStageLatencies(Stage stage) {
+        return stages.get(stage).latencies;
+    }
+
+    public Histogram getCreateVAppCalls() {
+        return createVAppCalls;
+    }
+
+    @Override
+    public List<TimerSummary> getCalls() {
+        List<TimerSummary> summaries = new ArrayList<>();
+        for (Map.Entry<String, Timer> call : new TreeMap<>(calls).entrySet()) {
+            summaries.add(call.getValue().summarize(call.getKey()));
+        }
+        return summaries;
+    }
+
+    @Override
+    public List<TimerSummary> getStages() {
+        List<TimerSummary> summaries = new ArrayList<>();
+        for (Map.Entry<Stage, Timer> stage : stages.entrySet()) {
+            if (stage.getValue().latencies.count() > 0) {
+                summaries.add(stage.getValue().summarize(stage.getKey().name()));
+            }
+        }
+        return summaries;
+    }
+
+    @Override
+    public long getTaskPolls() {
+        return taskPolls.sum();
+    }
+
+    @Override
+    public long getTasksPolled() {
+        return tasksPolled.sum();
+    }
+
+    @Override
+    public long getCreateVAppCallsP50() {
+        return createVAppCalls.percentile(0.5);
+    }
+
+    @Override
+    public long getCreateVAppCallsP99() {
+        return createVAppCalls.percentile(0.99);
+    }
+
+    @Override
+    public double getCreateVAppCallsMean() {
+        return createVAppCalls.mean();
+    }
+
+    /**
+     * Registers with the platform MBean server as com.nufrof.vcloud:type=VCloudMetrics,name=name.
+     */
+    public synchronized ObjectName registerMBean(String name) throws JMException {
+        if (objectName != null) {
+            throw new IllegalStateException("Already registered as " + objectName + ".");
+        }
+        ObjectName newObjectName = new ObjectName("com.nufrof.vcloud:type=VCloudMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, newObjectName);
+        objectName = newObjectName;
+        return objectName;
+    }
+
+    public synchronized void unregisterMBean() throws JMException {
+        if (objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    private static class Timer {
+        private final Histogram latencies = new Histogram();
+        private final LongAdder errors = new LongAdder();
+
+        private void record(long nanos, boolean failed) {
+            latencies.record(nanos);
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        private TimerSummary summarize(String name) {
+            return new TimerSummary(name, latencies.count(), errors.sum(), millis(latencies.percentile(0.5)), millis(latencies.percentile(0.99)), millis(latencies.max()));
+        }
+
+        private static double millis(long nanos) {
+            return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
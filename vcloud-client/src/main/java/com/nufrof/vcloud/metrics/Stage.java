@@ -0,0 +1,38 @@
+package com.nufrof.vcloud.metrics;
+
+/**
+ * The steps of provisioning and tearing down a vApp that {@link VCloudMetrics} times.  Each covers the API calls and
+ * task waits it makes.
+ */
+public enum Stage {
+    /**
+     * Checking the request's constraints.
+     */
+    VALIDATE,
+    /**
+     * Looking up the catalogs, vApp templates, network and VDC a composition refers to.
+     */
+    RESOLVE_SOURCES,
+    /**
+     * Requesting the composition, not waiting for it.
+     */
+    COMPOSE,
+    /**
+     * Waiting for vCD to finish a composition and fetching the composed vApp.
+     */
+    WAIT,
+    /**
+     * Reconfiguring every VM of a vApp.
+     */
+    RECONFIGURE,
+    /**
+     * Powering a vApp on, retries included.
+     */
+    POWER_ON,
+    UNDEPLOY,
+    REMOVE,
+    /**
+     * All of createVApp.
+     */
+    CREATE_VAPP
+}
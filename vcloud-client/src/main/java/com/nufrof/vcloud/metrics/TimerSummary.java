@@ -0,0 +1,59 @@
+package com.nufrof.vcloud.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of one timed call or stage, in milliseconds.
+ */
+public class TimerSummary {
+    private final String name;
+
+    private final long count;
+
+    private final long errors;
+
+    private final double p50Millis;
+
+    private final double p99Millis;
+
+    private final double maxMillis;
+
+    @ConstructorProperties({"name", "count", "errors", "p50Millis", "p99Millis", "maxMillis"})
+    public TimerSummary(String name, long count, long errors, double p50Millis, double p99Millis, double maxMillis) {
+        this.name = name;
+        this.count = count;
+        this.errors = errors;
+        this.p50Millis = p50Millis;
+        this.p99Millis = p99Millis;
+        this.maxMillis = maxMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": count=" + count + ", errors=" + errors + ", p50=" + p50Millis + "ms, p99=" + p99Millis + "ms, max=" + maxMillis + "ms";
+    }
+}
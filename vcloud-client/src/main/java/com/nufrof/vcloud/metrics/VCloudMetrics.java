@@ -0,0 +1,47 @@
+package com.nufrof.vcloud.metrics;
+
+/**
+ * Receives the measurements {@link com.nufrof.vcloud.VCloudVMService} takes.  {@link HistogramMetrics} keeps them for
+ * JMX; implement this to send them to another metrics library instead.  Every method is called on the thread doing the
+ * work, so implementations should be quick and thread safe.
+ */
+public interface VCloudMetrics {
+    /**
+     * Records nothing.
+     */
+    VCloudMetrics NONE = new VCloudMetrics() {
+        @Override
+        public void recordCall(String method, long nanos, boolean failed) {
+        }
+
+        @Override
+        public void recordStage(Stage stage, long nanos, boolean failed) {
+        }
+
+        @Override
+        public void recordTaskPoll(int tasks) {
+        }
+
+        @Override
+        public void recordCreateVAppCalls(int calls) {
+        }
+    };
+
+    /**
+     * One HTTP round trip to vCD, by method: GET, POST, PUT or DELETE.
+     */
+    void recordCall(String method, long nanos, boolean failed);
+
+    void recordStage(Stage stage, long nanos, boolean failed);
+
+    /**
+     * One round trip made to check on tasks: a fetch of one task or a status query covering several.
+     */
+    void recordTaskPoll(int tasks);
+
+    /**
+     * How many HTTP round trips one createVApp made, counting the lookups it started and the polls of its tasks.  A
+     * status query shared with other callers' tasks counts once for each of them.
+     */
+    void recordCreateVAppCalls(int calls);
+}
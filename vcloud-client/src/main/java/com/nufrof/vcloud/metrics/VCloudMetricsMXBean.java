@@ -0,0 +1,28 @@
+package com.nufrof.vcloud.metrics;
+
+import java.util.List;
+
+/**
+ * What {@link HistogramMetrics} shows over JMX.  Latencies are in milliseconds.
+ */
+public interface VCloudMetricsMXBean {
+    /**
+     * HTTP round trips, one entry per method.
+     */
+    List<TimerSummary> getCalls();
+
+    /**
+     * One entry per {@link Stage} that has run.
+     */
+    List<TimerSummary> getStages();
+
+    long getTaskPolls();
+
+    long getTasksPolled();
+
+    long getCreateVAppCallsP50();
+
+    long getCreateVAppCallsP99();
+
+    double getCreateVAppCallsMean();
+}
@@ -0,0 +1,44 @@
+package com.nufrof.vcloud.query;
+
+import com.vmware.vcloud.api.rest.schema_v1_5.ContainerType;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Walks the pages of a typed query, fetching one page at a time, so that a catalog of thousands of items is never held
+ * as one document.
+ */
+public class QueryPages {
+    private QueryPages() {
+    }
+
+    /**
+     * Hands the items of each page to consumer, in order, until consumer returns false or the pages run out.
+     *
+     * @param fetch fetches the page at an href
+     * @param items the items of a page
+     * @return how many pages were fetched
+     */
+    public static <P extends ContainerType, T> int forEach(TypedQuery query, int pageSize, Function<String, P> fetch, Function<P, List<T>> items, Predicate<T> consumer) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be at least 1, but was " + pageSize + ".");
+        }
+        long seen = 0;
+        for (int page = 1; ; page++) {
+            P container = fetch.apply(query.page(page).pageSize(pageSize).href());
+            List<T> pageItems = items.apply(container);
+            for (T item : pageItems) {
+                if (!consumer.test(item)) {
+                    return page;
+                }
+            }
+            seen += pageItems.size();
+            // A short page is the last, and so is the one that reaches the total when vCD gives one.
+            if (pageItems.size() < pageSize || (container.getTotal() != null && seen >= container.getTotal())) {
+                return page;
+            }
+        }
+    }
+}
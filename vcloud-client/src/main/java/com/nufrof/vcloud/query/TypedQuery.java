@@ -0,0 +1,117 @@
+package com.nufrof.vcloud.query;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the href of a typed query, such as {@code /api/query?type=vAppTemplate&format=references&filter=name==centos}.
+ * vCD then sends back only the matching records, and with fields only the attributes named, instead of whole parent
+ * documents to be searched on the client.
+ * <p>
+ * Filter conditions are ANDed.  Values are sent as is, so a value holding filter syntax cannot be matched exactly; use
+ * {@link #isLiteral} to check before filtering on it.
+ */
+public class TypedQuery {
+    // The filter operators and the wildcard.
+    private static final Pattern FILTER_SYNTAX = Pattern.compile("[;,()*]|==");
+
+    private final String href;
+
+    private final List<String> conditions = new ArrayList<>();
+
+    private List<String> fields = new ArrayList<>();
+
+    private Integer page;
+
+    private Integer pageSize;
+
+    /**
+     * @param href the query link from the query list, which already names the type and format, such as
+     *             {@code https://vcd/api/query?type=orgVdcNetwork&format=references}
+     */
+    public TypedQuery(String href) {
+        this.href = href;
+    }
+
+    /**
+     * Returns whether value can be matched exactly with {@link #filter}.
+     */
+    public static boolean isLiteral(String value) {
+        return !FILTER_SYNTAX.matcher(value).find();
+    }
+
+    /**
+     * Matches only records whose attribute equals value.
+     */
+    public TypedQuery filter(String attribute, String value) {
+        checkLiteral(value);
+        conditions.add(attribute + "==" + value);
+        return this;
+    }
+
+    /**
+     * Matches only records whose attribute equals one of the values.
+     */
+    public TypedQuery filterAny(String attribute, Collection<String> values) {
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException("Expected at least one value for " + attribute + ", but there were none.");
+        }
+        values.forEach(TypedQuery::checkLiteral);
+        conditions.add(values.stream().map(value -> attribute + "==" + value).collect(Collectors.joining(",", "(", ")")));
+        return this;
+    }
+
+    /**
+     * Asks for only these attributes of each record.  The href always comes back.  Has no effect on references.
+     */
+    public TypedQuery fields(String... fields) {
+        this.fields = Arrays.asList(fields);
+        return this;
+    }
+
+    /**
+     * Which page to fetch, counting from 1.
+     */
+    public TypedQuery page(int page) {
+        this.page = page;
+        return this;
+    }
+
+    public TypedQuery pageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public String href() {
+        StringBuilder query = new StringBuilder(href);
+        if (page != null) {
+            query.append("&page=").append(page);
+        }
+        if (pageSize != null) {
+            query.append("&pageSize=").append(pageSize);
+        }
+        if (!fields.isEmpty()) {
+            query.append("&fields=").append(String.join(",", fields));
+        }
+        if (!conditions.isEmpty()) {
+            try {
+                query.append("&filter=").append(URLEncoder.encode(String.join(";", conditions), "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return query.toString();
+    }
+
+    private static void checkLiteral(String value) {
+        if (!isLiteral(value)) {
+            throw new IllegalArgumentException("Expected a value without ; , ( ) * or ==, but it was " + value + ".");
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.nufrof.vcloud.session;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Keeps up to size logged-in clients and lends each to one caller at a time, so that concurrent workflows neither share
+ * one session nor queue behind it.  A client keeps its session token and connections between calls.  When a call fails
+ * because the session expired, the client logs in again and the call is retried once.
+ * <p>
+ * Clients are logged in as they are first needed, except for the first, which is logged in at once so that bad
+ * credentials fail straight away.  A caller that finds every client busy waits for one to be handed back, or to be
+ * discarded so that it can open another.
+ */
+public class SessionPool<C> implements AutoCloseable {
+    private final Sessions<C> sessions;
+
+    private final int size;
+
+    // Guarded by this, as are open, opened and closed.
+    private final Deque<C> idle = new ArrayDeque<>();
+
+    private final Set<C> open = new HashSet<>();
+
+    // Clients open or being opened.
+    private int opened;
+
+    private final AtomicLong logins = new AtomicLong();
+
+    private boolean closed;
+
+    public SessionPool(Sessions<C> sessions, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be at least 1, but was " + size + ".");
+        }
+        this.sessions = sessions;
+        this.size = size;
+        opened = 1;
+        idle.add(open());
+    }
+
+    /**
+     * Runs call with a client of its own, logging in again and retrying once if the session has expired.
+     */
+    public <T> T call(Function<C, T> call) {
+        C client = lease();
+        boolean healthy = false;
+        try {
+            T result;
+            try {
+                result = call.apply(client);
+            } catch (RuntimeException e) {
+                if (!sessions.isExpired(e)) {
+                    healthy = true;
+                    throw e;
+                }
+                login(client);
+                try {
+                    result = call.apply(client);
+                } catch (RuntimeException retryFailure) {
+                    // Only a session that expired again right after logging in is broken.
+                    healthy = !sessions.isExpired(retryFailure);
+                    throw retryFailure;
+                }
+            }
+            healthy = true;
+            return result;
+        } finally {
+            if (healthy) {
+                release(client);
+            } else {
+                discard(client);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns how many clients are logged in and not lent out.
+     */
+    public synchronized int idle() {
+        return idle.size();
+    }
+
+    /**
+     * Returns how many logins have been made, first logins and re-logins alike.
+     */
+    public long logins() {
+        return logins.get();
+    }
+
+    /**
+     * Logs out the idle clients, and each lent out client once it is handed back.  Callers waiting for a client fail.
+     */
+    @Override
+    public void close() {
+        List<C> drained;
+        synchronized (this) {
+            closed = true;
+            drained = new ArrayList<>(idle);
+            idle.clear();
+            notifyAll();
+        }
+        drained.forEach(this::discard);
+    }
+
+    private C lease() {
+        synchronized (this) {
+            // Take an idle client, or open another while under size, otherwise wait for one to come back or be discarded.
+            while (true) {
+                if (closed) {
+                    throw new IllegalStateException("The session pool is closed.");
+                }
+                C client = idle.poll();
+                if (client != null) {
+                    return client;
+                }
+                if (opened < size) {
+                    opened++;
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for a session.", e);
+                }
+            }
+        }
+        return open();
+    }
+
+    private void release(C client) {
+        synchronized (this) {
+            if (!closed) {
+                idle.add(client);
+                notifyAll();
+                return;
+            }
+        }
+        discard(client);
+    }
+
+    // Opens a client in a slot already counted in opened, giving the slot back if that fails.
+    private C open() {
+        C client;
+        try {
+            client = sessions.open();
+        } catch (Exception e) {
+            synchronized (this) {
+                opened--;
+                notifyAll();
+            }
+            throw e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException("Could not open a session.", e);
+        }
+        logins.incrementAndGet();
+        synchronized (this) {
+            open.add(client);
+        }
+        return client;
+    }
+
+    private void login(C client) {
+        try {
+            sessions.login(client);
+        } catch (Exception e) {
+            throw e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException("Could not log in again.", e);
+        }
+        logins.incrementAndGet();
+    }
+
+    // Closes a client that is closed over or broken, making room for a new one.
+    private void discard(C client) {
+        synchronized (this) {
+            if (!open.remove(client)) {
+                return;
+            }
+            opened--;
+            notifyAll();
+        }
+        sessions.close(client);
+    }
+}
@@ -0,0 +1,26 @@
+package com.nufrof.vcloud.session;
+
+/**
+ * Opens, renews and closes the clients of a {@link SessionPool}.
+ */
+public interface Sessions<C> {
+    /**
+     * Returns a new client, logged in.
+     */
+    C open() throws Exception;
+
+    /**
+     * Logs the client in again after its session expired.
+     */
+    void login(C client) throws Exception;
+
+    /**
+     * Returns whether a call failed because the client's session expired.
+     */
+    boolean isExpired(RuntimeException e);
+
+    /**
+     * Logs the client out.  Should not throw.
+     */
+    void close(C client);
+}
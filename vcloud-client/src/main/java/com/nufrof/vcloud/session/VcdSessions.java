@@ -0,0 +1,124 @@
+package com.nufrof.vcloud.session;
+
+import com.vmware.cxfrestclient.CxfClientSecurityContext;
+import com.vmware.vcloud.api.rest.client.VcdBasicLoginCredentials;
+import com.vmware.vcloud.api.rest.client.VcdClient;
+import com.vmware.vcloud.api.rest.client.VcdClientImpl;
+import com.vmware.vcloud.api.rest.client.VcdErrorResponseException;
+import com.vmware.vcloud.api.rest.version.ApiVersion;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import javax.ws.rs.WebApplicationException;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Opens VcdClients logged in with a username and password.  Every client shares one SSL socket factory, which trusts
+ * any certificate.
+ * <p>
+ * Each client logs in for itself and keeps its own x-vcloud-authorization token for all of its calls; tokens are not
+ * handed from one client to another, as VcdClientImpl offers no way to take over another client's session.  A pool
+ * of N clients therefore costs up to N logins, and up to N more after the sessions expire.  The pool opens clients
+ * only as concurrent callers need them, so a lightly used pool logs in fewer times.
+ */
+public class VcdSessions implements Sessions<VcdClient> {
+    private static final Logger LOGGER = Logger.getLogger(VcdSessions.class.getName());
+
+    private static final int UNAUTHORIZED = 401;
+
+    private final URI endpoint;
+
+    private final ApiVersion apiVersion;
+
+    private final VcdBasicLoginCredentials credentials;
+
+    public VcdSessions(String url, ApiVersion apiVersion, String orgName, String username, String password) {
+        this.endpoint = URI.create(url + "/api");
+        this.apiVersion = apiVersion;
+        this.credentials = new VcdBasicLoginCredentials(username, orgName, password);
+    }
+
+    /**
+     * Returns a pool of size clients of these sessions.  The first is logged in before this returns.
+     */
+    public static SessionPool<VcdClient> pool(String url, ApiVersion apiVersion, String orgName, String username, String password, int size) {
+        return new SessionPool<>(new VcdSessions(url, apiVersion, orgName, username, password), size);
+    }
+
+    @Override
+    public VcdClient open() {
+        LOGGER.fine("Attempting to create the VcdClient.");
+        VcdClient vcdClient = new VcdClientImpl(endpoint, Arrays.asList(apiVersion), CxfClientSecurityContext.getCxfClientSecurityContext(TrustAll.SOCKET_FACTORY, false));
+        vcdClient.setCredentials(credentials);
+        LOGGER.fine("VcdClient created successfully.");
+        return vcdClient;
+    }
+
+    @Override
+    public void login(VcdClient client) {
+        LOGGER.fine("Session expired, logging in again.");
+        client.setCredentials(credentials);
+    }
+
+    @Override
+    public boolean isExpired(RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof VcdErrorResponseException && ((VcdErrorResponseException) cause).getHttpStatusCode() == UNAUTHORIZED) {
+                return true;
+            }
+            if (cause instanceof WebApplicationException && ((WebApplicationException) cause).getResponse() != null
+                    && ((WebApplicationException) cause).getResponse().getStatus() == UNAUTHORIZED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close(VcdClient client) {
+        try {
+            client.logout();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, "Could not log out.", e);
+        }
+    }
+
+    // Built on first use and shared by every client.
+    private static class TrustAll {
+        private static final SSLSocketFactory SOCKET_FACTORY = socketFactory();
+
+        private static SSLSocketFactory socketFactory() {
+            try {
+                SSLContext sslContext = SSLContext.getInstance("SSL");
+                sslContext.init(null, new TrustManager[]{new X509TrustManager() {
+                    @Override
+                    public void checkClientTrusted(X509Certificate[] x509Certificates, String s) throws CertificateException {
+
+                    }
+
+                    @Override
+                    public void checkServerTrusted(X509Certificate[] x509Certificates, String s) throws CertificateException {
+
+                    }
+
+                    @Override
+                    public X509Certificate[] getAcceptedIssuers() {
+                        return new X509Certificate[0];
+                    }
+                }}, new SecureRandom());
+                return sslContext.getSocketFactory();
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Could not create the SSL context.", e);
+            }
+        }
+    }
+}
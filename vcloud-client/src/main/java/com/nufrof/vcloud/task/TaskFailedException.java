@@ -0,0 +1,21 @@
+package com.nufrof.vcloud.task;
+
+import com.vmware.vcloud.api.rest.schema_v1_5.TaskType;
+
+/**
+ * Thrown for a task that finished with error, aborted or canceled.  The message is the task's details.
+ */
+public class TaskFailedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final TaskType task;
+
+    public TaskFailedException(TaskType task) {
+        super(task.getDetails() != null ? task.getDetails() : "Task " + task.getOperationName() + " finished with status " + task.getStatus() + ".");
+        this.task = task;
+    }
+
+    public TaskType getTask() {
+        return task;
+    }
+}
@@ -0,0 +1,291 @@
+package com.nufrof.vcloud.task;
+
+import com.vmware.vcloud.api.rest.schema_v1_5.TaskType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Waits for vCloud tasks without parking a thread per task.  {@link #watch} returns a future that completes with the
+ * finished task, or fails with a {@link TaskFailedException}, on the first poll that sees the task finish.  One
+ * scheduler thread polls every outstanding task.  When a status query is given, the tasks due at the same time are
+ * checked with one query per batch, and only the ones that have finished are fetched in full.
+ * <p>
+ * A task is polled every minDelay while it is young, then every tenth of its age, but never less often than every
+ * maxDelay.  Operations known to take a while, such as compositions, start out at five times minDelay.
+ * <p>
+ * A failed poll is retried on the next one: a task fails only after five fetches of it fail in a row, and after a
+ * failed status query tasks are fetched one at a time until the query is tried again, after a backoff.
+ */
+public class TaskMonitor implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(TaskMonitor.class.getName());
+
+    private static final int BATCH_SIZE = 50;
+
+    private static final Pattern SLOW_OPERATIONS = Pattern.compile("(?i)compose|instantiate|clone|copy|upload|import|capture");
+
+    private static final int SLOW_OPERATION_FACTOR = 5;
+
+    private static final int AGE_DIVISOR = 10;
+
+    static final int MAX_CONSECUTIVE_ERRORS = 5;
+
+    // The longest pause after failed status queries, as a power of two times maxDelay.
+    private static final int MAX_BACKOFF_SHIFT = 5;
+
+    private final Function<String, TaskType> taskLoader;
+
+    private final Function<Collection<String>, Map<String, String>> statusQuery;
+
+    private final long minDelayNanos;
+
+    private final long maxDelayNanos;
+
+    private final ScheduledExecutorService scheduler;
+
+    // Outstanding tasks, by href.
+    private final Map<String, Watch> watches = new HashMap<>();
+
+    private ScheduledFuture<?> nextTick;
+
+    private long nextTickAt;
+
+    // Status queries failed in a row, and when they may be tried again.  Only touched by the scheduler thread.
+    private int queryFailures;
+
+    private long queryPausedUntil;
+
+    /**
+     * @param taskLoader  fetches a task by href
+     * @param statusQuery returns the status of each of the given tasks it finds, by href, or null to poll every task
+     *                    with taskLoader
+     */
+    public TaskMonitor(Function<String, TaskType> taskLoader, Function<Collection<String>, Map<String, String>> statusQuery, Duration minDelay, Duration maxDelay) {
+        if (minDelay.isNegative() || minDelay.isZero() || maxDelay.compareTo(minDelay) < 0) {
+            throw new IllegalArgumentException("Expected 0 < minDelay <= maxDelay, but minDelay was " + minDelay + " and maxDelay was " + maxDelay + ".");
+        }
+        this.taskLoader = taskLoader;
+        this.statusQuery = statusQuery;
+        this.minDelayNanos = minDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vcloud-task-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns a future for the task as it is when it finishes.  Watching a task that is already being watched returns
+     * the same future.
+     */
+    public CompletableFuture<TaskType> watch(TaskType task) {
+        return watch(task, null);
+    }
+
+    /**
+     * Like {@link #watch(TaskType)}, also running onPoll every time the task is fetched or is part of a status query.
+     */
+    public CompletableFuture<TaskType> watch(TaskType task, Runnable onPoll) {
+        if (isFinished(task.getStatus())) {
+            CompletableFuture<TaskType> future = new CompletableFuture<>();
+            finish(future, task);
+            return future;
+        }
+        synchronized (this) {
+            if (scheduler.isShutdown()) {
+                throw new IllegalStateException("The task monitor is closed.");
+            }
+            Watch watch = watches.get(task.getHref());
+            if (watch == null) {
+                watch = new Watch(task, System.nanoTime());
+                watch.nextPollAt = watch.watchedSince + delayNanos(watch, watch.watchedSince);
+                watches.put(task.getHref(), watch);
+                schedule(watch.nextPollAt);
+            }
+            if (onPoll != null) {
+                watch.pollListeners.add(onPoll);
+            }
+            return watch.future;
+        }
+    }
+
+    /**
+     * Returns the number of tasks still being watched.
+     */
+    public synchronized int size() {
+        // Finished watches are only dropped at the end of a tick.
+        return (int) watches.values().stream().filter(watch -> !watch.future.isDone()).count();
+    }
+
+    /**
+     * Stops polling.  Futures for tasks still outstanding fail with an {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        List<Watch> outstanding;
+        synchronized (this) {
+            scheduler.shutdownNow();
+            outstanding = new ArrayList<>(watches.values());
+            watches.clear();
+        }
+        for (Watch watch : outstanding) {
+            watch.future.completeExceptionally(new IllegalStateException("The task monitor was closed before task " + watch.href + " finished."));
+        }
+    }
+
+    static boolean isFinished(String status) {
+        return "success".equals(status) || "error".equals(status) || "aborted".equals(status) || "canceled".equals(status);
+    }
+
+    private static void finish(CompletableFuture<TaskType> future, TaskType task) {
+        if ("success".equals(task.getStatus())) {
+            future.complete(task);
+        } else {
+            future.completeExceptionally(new TaskFailedException(task));
+        }
+    }
+
+    private long delayNanos(Watch watch, long now) {
+        long delay = minDelayNanos;
+        if (watch.operationName != null && SLOW_OPERATIONS.matcher(watch.operationName).find()) {
+            delay *= SLOW_OPERATION_FACTOR;
+        }
+        return Math.min(maxDelayNanos, Math.max(delay, (now - watch.watchedSince) / AGE_DIVISOR));
+    }
+
+    // Must hold the lock.
+    private void schedule(long at) {
+        if (nextTick != null) {
+            if (nextTickAt - at <= 0) {
+                return;
+            }
+            nextTick.cancel(false);
+        }
+        nextTickAt = at;
+        nextTick = scheduler.schedule(this::tick, Math.max(0, at - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    private void tick() {
+        List<Watch> due = new ArrayList<>();
+        synchronized (this) {
+            nextTick = null;
+            long now = System.nanoTime();
+            watches.values().removeIf(watch -> watch.future.isDone());
+            // Tasks due shortly are polled now too, so that tasks watched around the same time share a query.
+            for (Watch watch : watches.values()) {
+                if (watch.nextPollAt - now <= minDelayNanos / 2) {
+                    due.add(watch);
+                }
+            }
+        }
+        try {
+            poll(due);
+        } catch (RuntimeException | Error e) {
+            LOGGER.log(Level.SEVERE, "Polling " + due.size() + " tasks failed.", e);
+        }
+        synchronized (this) {
+            long now = System.nanoTime();
+            for (Watch watch : due) {
+                watch.nextPollAt = now + delayNanos(watch, now);
+            }
+            watches.values().removeIf(watch -> watch.future.isDone());
+            if (!watches.isEmpty() && !scheduler.isShutdown()) {
+                schedule(watches.values().stream().mapToLong(watch -> watch.nextPollAt).min().getAsLong());
+            }
+        }
+    }
+
+    private void poll(List<Watch> due) {
+        List<Watch> toFetch = due;
+        if (statusQuery != null && due.size() > 1 && System.nanoTime() - queryPausedUntil >= 0) {
+            toFetch = new ArrayList<>();
+            for (int from = 0; from < due.size(); from += BATCH_SIZE) {
+                List<Watch> batch = due.subList(from, Math.min(from + BATCH_SIZE, due.size()));
+                Map<String, String> statuses;
+                batch.forEach(Watch::polled);
+                try {
+                    statuses = statusQuery.apply(batch.stream().map(watch -> watch.href).collect(Collectors.toList()));
+                    queryFailures = 0;
+                } catch (RuntimeException e) {
+                    // Back off, doubling the pause with every failure in a row, and fetch the rest of this tick's tasks.
+                    long pause = maxDelayNanos << Math.min(queryFailures, MAX_BACKOFF_SHIFT);
+                    queryFailures++;
+                    queryPausedUntil = System.nanoTime() + pause;
+                    LOGGER.log(Level.WARNING, "Could not query the status of " + batch.size() + " tasks.  Fetching tasks one at a time for the next " + TimeUnit.NANOSECONDS.toMillis(pause) + " ms.", e);
+                    toFetch.addAll(due.subList(from, due.size()));
+                    break;
+                }
+                // Tasks that finished, or that the query did not return, are fetched in full.
+                for (Watch watch : batch) {
+                    String status = statuses.get(watch.href);
+                    if (status == null || isFinished(status)) {
+                        toFetch.add(watch);
+                    } else if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.fine("Task " + watch.operationName + " is not yet complete.  Current status is " + status + ".");
+                    }
+                }
+            }
+        }
+        for (Watch watch : toFetch) {
+            if (watch.future.isDone()) {
+                continue;
+            }
+            watch.polled();
+            try {
+                TaskType task = taskLoader.apply(watch.href);
+                watch.consecutiveErrors = 0;
+                if (isFinished(task.getStatus())) {
+                    finish(watch.future, task);
+                } else if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Task " + task.getOperationName() + " is not yet complete.  Current status is " + task.getStatus() + ".");
+                }
+            } catch (RuntimeException e) {
+                // The task may well still be running in vCD, so poll again unless fetching it keeps failing.
+                watch.consecutiveErrors++;
+                if (watch.consecutiveErrors >= MAX_CONSECUTIVE_ERRORS || e instanceof IllegalArgumentException) {
+                    watch.future.completeExceptionally(e);
+                } else {
+                    LOGGER.log(Level.WARNING, "Could not fetch task " + watch.href + ", " + watch.consecutiveErrors + " times in a row.  Polling it again.", e);
+                }
+            }
+        }
+    }
+
+    private static class Watch {
+        private final CompletableFuture<TaskType> future = new CompletableFuture<>();
+        private final List<Runnable> pollListeners = new CopyOnWriteArrayList<>();
+        private final String href;
+        private final String operationName;
+        private final long watchedSince;
+        private long nextPollAt;
+        private int consecutiveErrors;
+
+        private Watch(TaskType task, long watchedSince) {
+            this.href = task.getHref();
+            this.operationName = task.getOperationName();
+            this.watchedSince = watchedSince;
+        }
+
+        private void polled() {
+            for (Runnable pollListener : pollListeners) {
+                pollListener.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.nufrof.vcloud.throttle;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs work on an executor with at most a fixed number of jobs per key running at once.  Jobs over the limit wait in
+ * order, without holding a thread, and the next one for the same key starts as soon as one finishes.  Different keys
+ * do not hold each other up.  A job whose future is cancelled before it starts is skipped.
+ */
+public class KeyedConcurrencyLimiter<K> {
+    private final int limit;
+
+    private final Executor executor;
+
+    // Keys with jobs running, and the jobs waiting for each of them.
+    private final Map<K, Queue<Runnable>> waiting = new HashMap<>();
+
+    private final Map<K, Integer> running = new HashMap<>();
+
+    public KeyedConcurrencyLimiter(int limit, Executor executor) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1, but was " + limit + ".");
+        }
+        this.limit = limit;
+        this.executor = executor;
+    }
+
+    public <T> CompletableFuture<T> submit(K key, Callable<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable job = () -> {
+            if (future.isDone()) {
+                release(key);
+                return;
+            }
+            T value = null;
+            Throwable failure = null;
+            try {
+                value = work.call();
+            } catch (Throwable t) {
+                failure = t;
+            }
+            // Release first, so that whoever sees the future done also sees the slot free.
+            release(key);
+            if (failure == null) {
+                future.complete(value);
+            } else {
+                future.completeExceptionally(failure);
+            }
+        };
+        synchronized (this) {
+            int count = running.getOrDefault(key, 0);
+            if (count >= limit) {
+                waiting.computeIfAbsent(key, k -> new ArrayDeque<>()).add(job);
+                return future;
+            }
+            running.put(key, count + 1);
+        }
+        start(key, job);
+        return future;
+    }
+
+    /**
+     * Returns the number of jobs running for key.
+     */
+    public synchronized int running(K key) {
+        return running.getOrDefault(key, 0);
+    }
+
+    private void start(K key, Runnable job) {
+        try {
+            executor.execute(job);
+        } catch (RuntimeException e) {
+            release(key);
+            throw e;
+        }
+    }
+
+    private void release(K key) {
+        Runnable next;
+        synchronized (this) {
+            Queue<Runnable> queue = waiting.get(key);
+            next = queue == null ? null : queue.poll();
+            if (queue != null && queue.isEmpty()) {
+                waiting.remove(key);
+            }
+            if (next == null) {
+                int count = running.get(key) - 1;
+                if (count == 0) {
+                    running.remove(key);
+                } else {
+                    running.put(key, count);
+                }
+            }
+        }
+        if (next != null) {
+            start(key, next);
+        }
+    }
+}
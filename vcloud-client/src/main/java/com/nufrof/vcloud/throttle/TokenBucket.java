@@ -0,0 +1,63 @@
+package com.nufrof.vcloud.throttle;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits how fast API calls are made.  Tokens are added at a steady rate up to burst, and each call takes one,
+ * waiting for it if none are left.  Callers that have to wait are served in the order they asked, each reserving the
+ * next token before sleeping, so a queue of callers is let through at exactly the rate.
+ */
+public class TokenBucket {
+    private final double nanosPerToken;
+
+    private final int burst;
+
+    private final LongSupplier nanoClock;
+
+    // Negative when tokens have been reserved ahead of time.
+    private double tokens;
+
+    private long refilledAt;
+
+    public TokenBucket(double tokensPerSecond, int burst) {
+        this(tokensPerSecond, burst, System::nanoTime);
+    }
+
+    TokenBucket(double tokensPerSecond, int burst, LongSupplier nanoClock) {
+        if (tokensPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Expected tokensPerSecond > 0 and burst >= 1, but tokensPerSecond was " + tokensPerSecond + " and burst was " + burst + ".");
+        }
+        this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / tokensPerSecond;
+        this.burst = burst;
+        this.nanoClock = nanoClock;
+        this.tokens = burst;
+        this.refilledAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes a token, waiting until there is one.
+     */
+    public void acquire() {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting to make an API call.", e);
+            }
+        }
+    }
+
+    /**
+     * Takes a token and returns how long to wait before using it.
+     */
+    synchronized long reserve() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(burst, tokens + (now - refilledAt) / nanosPerToken);
+        refilledAt = now;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * nanosPerToken);
+    }
+}
@@ -0,0 +1,54 @@
+package com.nufrof.vcloud.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the last capacity traces in memory, dropping the oldest to make room.  Cheap enough to leave on, so that the
+ * calls leading up to a failure can be dumped after the fact.
+ */
+public class RingBufferWireTraceSink implements WireTraceSink {
+    private final WireTrace[] traces;
+
+    // How many traces have been recorded in all; the next one goes at recorded % capacity.
+    private long recorded;
+
+    public RingBufferWireTraceSink(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1, but was " + capacity + ".");
+        }
+        this.traces = new WireTrace[capacity];
+    }
+
+    @Override
+    public synchronized void record(WireTrace trace) {
+        traces[(int) (recorded % traces.length)] = trace;
+        recorded++;
+    }
+
+    /**
+     * Returns the traces held, oldest first.
+     */
+    public synchronized List<WireTrace> snapshot() {
+        int size = (int) Math.min(recorded, traces.length);
+        List<WireTrace> snapshot = new ArrayList<>(size);
+        for (long i = recorded - size; i < recorded; i++) {
+            snapshot.add(traces[(int) (i % traces.length)]);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns how many traces have been dropped to make room.
+     */
+    public synchronized long overwritten() {
+        return Math.max(0, recorded - traces.length);
+    }
+
+    /**
+     * Does nothing.  The traces held stay readable.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,160 @@
+package com.nufrof.vcloud.trace;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes traces to a file on a thread of its own.  Recording only queues the trace; when the queue is full, because
+ * the disk cannot keep up, the trace is dropped and counted rather than holding up the API call.
+ * <p>
+ * Once the file reaches maxBytes it is rolled: file becomes file.1, file.1 becomes file.2 and so on, and the oldest
+ * past maxFiles is deleted.
+ */
+public class RollingFileWireTraceSink implements WireTraceSink {
+    private static final Logger LOGGER = Logger.getLogger(RollingFileWireTraceSink.class.getName());
+
+    private static final long POLL_MILLIS = 100;
+
+    private final Path file;
+
+    private final long maxBytes;
+
+    private final int maxFiles;
+
+    private final BlockingQueue<WireTrace> queue;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread writerThread;
+
+    private volatile boolean closed;
+
+    private BufferedWriter writer;
+
+    private long bytesWritten;
+
+    /**
+     * @param maxBytes      how big the file gets before it is rolled
+     * @param maxFiles      how many rolled files are kept
+     * @param queueCapacity how many traces can wait to be written
+     */
+    public RollingFileWireTraceSink(Path file, long maxBytes, int maxFiles, int queueCapacity) throws IOException {
+        if (maxBytes < 1 || maxFiles < 0 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Expected maxBytes >= 1, maxFiles >= 0 and queueCapacity >= 1, but they were " + maxBytes + ", " + maxFiles + " and " + queueCapacity + ".");
+        }
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        open();
+        this.writerThread = new Thread(this::writeLoop, "vcloud-wire-trace");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void record(WireTrace trace) {
+        if (closed || !queue.offer(trace)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns how many traces were dropped because the queue was full or the sink was closed.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes out the traces already queued, then closes the file.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                WireTrace trace = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (trace == null) {
+                    continue;
+                }
+                try {
+                    write(trace);
+                    // Flush whenever the queue runs dry, so that the file is current while things are quiet.
+                    if (queue.isEmpty()) {
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not write a wire trace to " + file + ".", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not close " + file + ".", e);
+            }
+        }
+    }
+
+    private void write(WireTrace trace) throws IOException {
+        String entry = Instant.ofEpochMilli(trace.getTimestamp()) + " [" + trace.getThreadName() + "] " + trace.getDirection() + " " + trace.getMethod() + " " + trace.getHref() + "\n" + trace.getBody() + "\n\n";
+        byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+        if (bytesWritten > 0 && bytesWritten + bytes.length > maxBytes) {
+            roll();
+        }
+        writer.write(entry);
+        bytesWritten += bytes.length;
+    }
+
+    private void roll() throws IOException {
+        writer.close();
+        try {
+            if (maxFiles > 0) {
+                Files.deleteIfExists(rolled(maxFiles));
+                for (int i = maxFiles - 1; i >= 1; i--) {
+                    if (Files.exists(rolled(i))) {
+                        Files.move(rolled(i), rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.delete(file);
+            }
+        } finally {
+            // Keep writing even if a rolled file could not be moved.
+            open();
+        }
+    }
+
+    private void open() throws IOException {
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        bytesWritten = Files.size(file);
+    }
+
+    private Path rolled(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+}
@@ -0,0 +1,61 @@
+package com.nufrof.vcloud.trace;
+
+/**
+ * One body sent to or received from vCD.
+ */
+public class WireTrace {
+    public enum Direction {
+        REQUEST, RESPONSE
+    }
+
+    private final long timestamp;
+
+    private final String threadName;
+
+    private final Direction direction;
+
+    private final String method;
+
+    private final String href;
+
+    private final String body;
+
+    public WireTrace(Direction direction, String method, String href, String body) {
+        this.timestamp = System.currentTimeMillis();
+        this.threadName = Thread.currentThread().getName();
+        this.direction = direction;
+        this.method = method;
+        this.href = href;
+        this.body = body;
+    }
+
+    /**
+     * When the trace was taken, in epoch milliseconds.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * The thread that made the call.
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getHref() {
+        return href;
+    }
+
+    public String getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,12 @@
+package com.nufrof.vcloud.trace;
+
+/**
+ * Where {@link com.nufrof.vcloud.VCloudVMService} sends the bodies it sends and receives.  Traces are recorded on the
+ * thread making the API call, so implementations should hand them off rather than do I/O there.
+ */
+public interface WireTraceSink extends AutoCloseable {
+    void record(WireTrace trace);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,56 @@
+package com.nufrof.vcloud.view;
+
+import com.vmware.vcloud.api.rest.schema_v1_5.CatalogType;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The name of a catalog and the hrefs of its items by name.
+ */
+public class CatalogView {
+    private final String name;
+
+    private final String href;
+
+    private final Map<String, String> itemHrefs;
+
+    public CatalogView(String name, String href, Map<String, String> itemHrefs) {
+        this.name = name;
+        this.href = href;
+        this.itemHrefs = Collections.unmodifiableMap(new LinkedHashMap<>(itemHrefs));
+    }
+
+    /**
+     * Reads a catalog document, such as the body of a GET on a catalog.
+     */
+    public static CatalogView read(InputStream inputStream) throws XMLStreamException {
+        return StaxViews.readCatalog(inputStream);
+    }
+
+    public static CatalogView of(CatalogType catalogType) {
+        Map<String, String> itemHrefs = new LinkedHashMap<>();
+        if (catalogType.getCatalogItems() != null) {
+            catalogType.getCatalogItems().getCatalogItem().forEach(catalogItem -> itemHrefs.putIfAbsent(catalogItem.getName(), catalogItem.getHref()));
+        }
+        return new CatalogView(catalogType.getName(), catalogType.getHref(), itemHrefs);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHref() {
+        return href;
+    }
+
+    /**
+     * The hrefs of the catalog items, by name, in the order of the catalog.  Of items with the same name, the first.
+     */
+    public Map<String, String> getItemHrefs() {
+        return itemHrefs;
+    }
+}
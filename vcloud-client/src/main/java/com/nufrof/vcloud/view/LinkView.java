@@ -0,0 +1,61 @@
+package com.nufrof.vcloud.view;
+
+import com.vmware.vcloud.api.rest.schema_v1_5.LinkType;
+
+/**
+ * A link of a vCD resource: what it is for, where it goes and the media type it takes.
+ */
+public class LinkView {
+    private final String rel;
+
+    private final String href;
+
+    private final String type;
+
+    private final String name;
+
+    public LinkView(String rel, String href, String type, String name) {
+        this.rel = rel;
+        this.href = href;
+        this.type = type;
+        this.name = name;
+    }
+
+    public static LinkView of(LinkType linkType) {
+        return new LinkView(linkType.getRel(), linkType.getHref(), linkType.getType(), linkType.getName());
+    }
+
+    public String getRel() {
+        return rel;
+    }
+
+    public String getHref() {
+        return href;
+    }
+
+    /**
+     * The media type, or null if the link has none.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * The name of what the link goes to, or null if the link has none.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns a LinkType for the calls that take one.
+     */
+    public LinkType toLinkType() {
+        LinkType linkType = new LinkType();
+        linkType.setRel(rel);
+        linkType.setHref(href);
+        linkType.setType(type);
+        linkType.setName(name);
+        return linkType;
+    }
+}
@@ -0,0 +1,177 @@
+package com.nufrof.vcloud.view;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads views from vCD documents one element at a time, skipping every element they do not need.  Elements are
+ * matched by local name, so the namespace prefixes vCD picks do not matter.
+ */
+class StaxViews {
+    private static final XMLInputFactory XML_INPUT_FACTORY = getXmlInputFactory();
+
+    private StaxViews() {
+    }
+
+    private static XMLInputFactory getXmlInputFactory() {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return xmlInputFactory;
+    }
+
+    static VAppView readVApp(InputStream inputStream) throws XMLStreamException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+        try {
+            requireRoot(reader, "VApp");
+            String name = reader.getAttributeValue(null, "name");
+            String href = reader.getAttributeValue(null, "href");
+            Integer status = integerAttribute(reader, "status");
+            String deployed = reader.getAttributeValue(null, "deployed");
+            List<LinkView> links = new ArrayList<>();
+            List<VmView> vms = new ArrayList<>();
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "Link":
+                        links.add(readLink(reader));
+                        break;
+                    case "Children":
+                        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                            if (reader.getLocalName().equals("Vm")) {
+                                vms.add(readVm(reader));
+                            } else {
+                                skip(reader);
+                            }
+                        }
+                        break;
+                    default:
+                        skip(reader);
+                }
+            }
+            return new VAppView(name, href, status, deployed == null ? null : Boolean.valueOf(deployed), links, vms);
+        } finally {
+            reader.close();
+        }
+    }
+
+    static CatalogView readCatalog(InputStream inputStream) throws XMLStreamException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+        try {
+            requireRoot(reader, "Catalog");
+            String name = reader.getAttributeValue(null, "name");
+            String href = reader.getAttributeValue(null, "href");
+            Map<String, String> itemHrefs = new LinkedHashMap<>();
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                if (!reader.getLocalName().equals("CatalogItems")) {
+                    skip(reader);
+                    continue;
+                }
+                while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    if (reader.getLocalName().equals("CatalogItem")) {
+                        itemHrefs.putIfAbsent(reader.getAttributeValue(null, "name"), reader.getAttributeValue(null, "href"));
+                    }
+                    skip(reader);
+                }
+            }
+            return new CatalogView(name, href, itemHrefs);
+        } finally {
+            reader.close();
+        }
+    }
+
+    // Reads the Vm the reader is on, leaving it on the Vm's end tag.
+    private static VmView readVm(XMLStreamReader reader) throws XMLStreamException {
+        String name = reader.getAttributeValue(null, "name");
+        String href = reader.getAttributeValue(null, "href");
+        Integer status = integerAttribute(reader, "status");
+        List<LinkView> links = new ArrayList<>();
+        String computerName = null;
+        Integer numCpus = null;
+        Integer mbsMemory = null;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "Link":
+                    links.add(readLink(reader));
+                    break;
+                case "VirtualHardwareSection":
+                    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        if (!reader.getLocalName().equals("Item")) {
+                            skip(reader);
+                            continue;
+                        }
+                        String description = null;
+                        String virtualQuantity = null;
+                        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                            if (reader.getLocalName().equals("Description")) {
+                                description = reader.getElementText().toLowerCase();
+                            } else if (reader.getLocalName().equals("VirtualQuantity")) {
+                                virtualQuantity = reader.getElementText().trim();
+                            } else {
+                                skip(reader);
+                            }
+                        }
+                        if (description != null && virtualQuantity != null && !virtualQuantity.isEmpty()) {
+                            if (description.contains("virtual cpus")) {
+                                numCpus = Integer.valueOf(virtualQuantity);
+                            } else if (description.contains("memory size")) {
+                                mbsMemory = Integer.valueOf(virtualQuantity);
+                            }
+                        }
+                    }
+                    break;
+                case "GuestCustomizationSection":
+                    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        if (reader.getLocalName().equals("ComputerName")) {
+                            computerName = reader.getElementText();
+                        } else {
+                            skip(reader);
+                        }
+                    }
+                    break;
+                default:
+                    skip(reader);
+            }
+        }
+        return new VmView(name, href, status, links, computerName, numCpus, mbsMemory);
+    }
+
+    // Reads the Link the reader is on, leaving it on the Link's end tag.
+    private static LinkView readLink(XMLStreamReader reader) throws XMLStreamException {
+        LinkView link = new LinkView(reader.getAttributeValue(null, "rel"), reader.getAttributeValue(null, "href"), reader.getAttributeValue(null, "type"), reader.getAttributeValue(null, "name"));
+        skip(reader);
+        return link;
+    }
+
+    private static void requireRoot(XMLStreamReader reader, String localName) throws XMLStreamException {
+        reader.nextTag();
+        if (!reader.getLocalName().equals(localName)) {
+            throw new XMLStreamException("Expected a " + localName + " document, but the root element was " + reader.getLocalName() + ".", reader.getLocation());
+        }
+    }
+
+    private static Integer integerAttribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value == null ? null : Integer.valueOf(value);
+    }
+
+    // Moves past the element the reader is on, and everything in it, to its end tag.
+    private static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.nufrof.vcloud.view;
+
+import com.vmware.vcloud.api.rest.schema_v1_5.VAppType;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * The parts of a vApp that provisioning reads: its name, status, links and VMs.  Read straight from the response
+ * with {@link #read}, it costs a small fraction of the memory of a whole VAppType, whose network, lease and VM
+ * sections are never built.
+ */
+public class VAppView {
+    private final String name;
+
+    private final String href;
+
+    private final Integer status;
+
+    private final Boolean deployed;
+
+    private final List<LinkView> links;
+
+    private final List<VmView> vms;
+
+    public VAppView(String name, String href, Integer status, Boolean deployed, List<LinkView> links, List<VmView> vms) {
+        this.name = name;
+        this.href = href;
+        this.status = status;
+        this.deployed = deployed;
+        this.links = Collections.unmodifiableList(links);
+        this.vms = Collections.unmodifiableList(vms);
+    }
+
+    /**
+     * Reads a vApp document, such as the body of a GET on a vApp.
+     */
+    public static VAppView read(InputStream inputStream) throws XMLStreamException {
+        return StaxViews.readVApp(inputStream);
+    }
+
+    public static VAppView of(VAppType vAppType) {
+        List<VmView> vms = vAppType.getChildren() == null ? Collections.emptyList() : vAppType.getChildren().getVm().stream().map(VmView::of).collect(Collectors.toList());
+        return new VAppView(vAppType.getName(), vAppType.getHref(), vAppType.getStatus(), vAppType.getDeployed(), vAppType.getLink().stream().map(LinkView::of).collect(Collectors.toList()), vms);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHref() {
+        return href;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public Boolean getDeployed() {
+        return deployed;
+    }
+
+    public List<LinkView> getLinks() {
+        return links;
+    }
+
+    /**
+     * Returns the first link with that rel.  vCD leaves out the links to actions the vApp cannot take in its state.
+     */
+    public Optional<LinkView> getLink(String rel) {
+        return links.stream().filter(link -> rel.equals(link.getRel())).findFirst();
+    }
+
+    public List<VmView> getVms() {
+        return vms;
+    }
+}
@@ -0,0 +1,110 @@
+package com.nufrof.vcloud.view;
+
+import com.vmware.vcloud.api.rest.schema.ovf.RASDType;
+import com.vmware.vcloud.api.rest.schema.ovf.SectionType;
+import com.vmware.vcloud.api.rest.schema.ovf.VirtualHardwareSectionType;
+import com.vmware.vcloud.api.rest.schema_v1_5.GuestCustomizationSectionType;
+import com.vmware.vcloud.api.rest.schema_v1_5.VmType;
+
+import javax.xml.bind.JAXBElement;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * The parts of a VM that provisioning reads: its name, status, links, computer name, CPUs and memory.
+ */
+public class VmView {
+    private final String name;
+
+    private final String href;
+
+    private final Integer status;
+
+    private final List<LinkView> links;
+
+    private final String computerName;
+
+    private final Integer numCpus;
+
+    private final Integer mbsMemory;
+
+    public VmView(String name, String href, Integer status, List<LinkView> links, String computerName, Integer numCpus, Integer mbsMemory) {
+        this.name = name;
+        this.href = href;
+        this.status = status;
+        this.links = Collections.unmodifiableList(links);
+        this.computerName = computerName;
+        this.numCpus = numCpus;
+        this.mbsMemory = mbsMemory;
+    }
+
+    public static VmView of(VmType vmType) {
+        String computerName = null;
+        Integer numCpus = null;
+        Integer mbsMemory = null;
+        for (JAXBElement<? extends SectionType> section : vmType.getSection()) {
+            if (section.getValue() instanceof GuestCustomizationSectionType) {
+                computerName = ((GuestCustomizationSectionType) section.getValue()).getComputerName();
+            } else if (section.getValue() instanceof VirtualHardwareSectionType) {
+                for (RASDType item : ((VirtualHardwareSectionType) section.getValue()).getItem()) {
+                    if (item.getDescription() == null || item.getVirtualQuantity() == null) {
+                        continue;
+                    }
+                    String description = item.getDescription().getValue().toLowerCase();
+                    if (description.contains("virtual cpus")) {
+                        numCpus = item.getVirtualQuantity().getValue().intValue();
+                    } else if (description.contains("memory size")) {
+                        mbsMemory = item.getVirtualQuantity().getValue().intValue();
+                    }
+                }
+            }
+        }
+        return new VmView(vmType.getName(), vmType.getHref(), vmType.getStatus(), vmType.getLink().stream().map(LinkView::of).collect(Collectors.toList()), computerName, numCpus, mbsMemory);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHref() {
+        return href;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public List<LinkView> getLinks() {
+        return links;
+    }
+
+    /**
+     * Returns the first link with that rel.
+     */
+    public Optional<LinkView> getLink(String rel) {
+        return links.stream().filter(link -> rel.equals(link.getRel())).findFirst();
+    }
+
+    /**
+     * The computer name from the guest customization section, or null if there is none.
+     */
+    public String getComputerName() {
+        return computerName;
+    }
+
+    /**
+     * The number of CPUs from the virtual hardware section, or null if there is none.
+     */
+    public Integer getNumCpus() {
+        return numCpus;
+    }
+
+    /**
+     * The MBs of memory from the virtual hardware section, or null if there is none.
+     */
+    public Integer getMbsMemory() {
+        return mbsMemory;
+    }
+}
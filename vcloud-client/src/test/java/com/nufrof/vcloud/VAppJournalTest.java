@@ -0,0 +1,94 @@
+package com.nufrof.vcloud;
+
+import com.nufrof.vcloud.domain.VAppRequest;
+import com.nufrof.vcloud.domain.VMRequest;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VAppJournalTest {
+    @Test
+    public void keyTest() {
+        // Two builds of the same request, whose VMs get different unique names.
+        assertEquals(VAppJournal.key(request("web", 2)), VAppJournal.key(request("web", 2)));
+        assertNotEquals(VAppJournal.key(request("web", 2)), VAppJournal.key(request("web", 4)));
+        assertNotEquals(VAppJournal.key(request("web", 2)), VAppJournal.key(request("db", 2)));
+    }
+
+    @Test
+    public void replayTest() throws Exception {
+        Path directory = Files.createTempDirectory("vapp-journal");
+        Path file = directory.resolve("vapps.journal");
+        String key = VAppJournal.key(request("web", 2));
+        String finishedKey = VAppJournal.key(request("db", 2));
+        try (VAppJournal journal = new VAppJournal(file)) {
+            assertTrue(journal.pending().isEmpty());
+            journal.composing(key, Arrays.asList("webAb10", "a,b\tc"));
+            journal.composeStarted(key, "https://vcd/api/vApp/vapp-1", "https://vcd/api/task/1");
+            journal.composed(key);
+            journal.reconfigureStarted(key, "webAb10", "https://vcd/api/task/2");
+            journal.reconfigured(key, "webAb10");
+            journal.reconfigureStarted(key, "a,b\tc", "https://vcd/api/task/3");
+            journal.composing(finishedKey, Collections.singletonList("dbXy11"));
+            journal.finished(finishedKey);
+        }
+
+        try (VAppJournal journal = new VAppJournal(file)) {
+            assertEquals(Collections.singletonList(key), journal.pending());
+            assertNull(journal.get(finishedKey));
+            VAppJournal.Entry entry = journal.get(key);
+            assertEquals(Arrays.asList("webAb10", "a,b\tc"), entry.getVmNames());
+            assertEquals("https://vcd/api/vApp/vapp-1", entry.getVAppHref());
+            assertEquals("https://vcd/api/task/1", entry.composeTaskHref);
+            assertTrue(entry.isComposed());
+            assertEquals(Collections.singleton("webAb10"), entry.reconfiguredVms);
+            assertEquals(Collections.singletonMap("a,b\tc", "https://vcd/api/task/3"), entry.reconfigureTaskHrefs);
+            assertNull(entry.powerOnTaskHref);
+            // The copy handed out is not the journal's own.
+            entry.vmNames.clear();
+            assertEquals(2, journal.get(key).getVmNames().size());
+        }
+        // Only the unfinished request is left in the file.
+        assertFalse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).contains("dbXy11"));
+        assertFalse(Files.exists(directory.resolve("vapps.journal.tmp")));
+    }
+
+    @Test
+    public void tornRecordTest() throws Exception {
+        Path file = Files.createTempDirectory("vapp-journal").resolve("vapps.journal");
+        String key = VAppJournal.key(request("web", 2));
+        try (VAppJournal journal = new VAppJournal(file)) {
+            journal.composing(key, Collections.singletonList("webAb10"));
+        }
+        // A crash part way through writing the next record.
+        Files.write(file, "web%7Cnet\tCOMPOSE_STA".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (VAppJournal journal = new VAppJournal(file)) {
+            assertNull(journal.get(key).getVAppHref());
+            journal.abandoned(key);
+        }
+        try (VAppJournal journal = new VAppJournal(file)) {
+            assertTrue(journal.pending().isEmpty());
+        }
+    }
+
+    private static VAppRequest request(String vmName, int numCpus) {
+        return VAppRequest.builder()
+                .org("org")
+                .network("net")
+                .vm(new VMRequest("catalog", "linux", "vm", vmName, numCpus, 2048))
+                .name("app")
+                .build();
+    }
+}
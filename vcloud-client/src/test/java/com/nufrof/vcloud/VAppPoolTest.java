@@ -0,0 +1,243 @@
+package com.nufrof.vcloud;
+
+import com.nufrof.vcloud.domain.VAppRequest;
+import com.nufrof.vcloud.domain.VMRequest;
+import com.nufrof.vcloud.session.SessionPool;
+import com.nufrof.vcloud.session.Sessions;
+import com.vmware.vcloud.api.rest.client.VcdClient;
+import com.vmware.vcloud.api.rest.schema_v1_5.TaskType;
+import com.vmware.vcloud.api.rest.schema_v1_5.TasksInProgressType;
+import com.vmware.vcloud.api.rest.schema_v1_5.VAppType;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VAppPoolTest {
+    @Test
+    public void keyTest() {
+        VAppRequest first = VAppRequest.builder()
+                .org("org")
+                .network("net")
+                .vm(new VMRequest("catalog", "linux", "vm", "web", 2, 2048))
+                .vm(new VMRequest("catalog", "windows", "vm", "db", 4, 8192))
+                .name("first")
+                .build();
+        VAppRequest reordered = VAppRequest.builder()
+                .org("org")
+                .network("net")
+                .vm(new VMRequest("catalog", "windows", "vm", "sql", 1, 1024))
+                .vm(new VMRequest("catalog", "linux", "vm", "app", 1, 1024))
+                .name("second")
+                .build();
+        VAppRequest otherNetwork = VAppRequest.builder()
+                .org("org")
+                .network("other")
+                .vm(new VMRequest("catalog", "linux", "vm", "web", 2, 2048))
+                .vm(new VMRequest("catalog", "windows", "vm", "db", 4, 8192))
+                .name("first")
+                .build();
+
+        assertEquals(VAppPool.key(first), VAppPool.key(reordered));
+        assertNotEquals(VAppPool.key(first), VAppPool.key(otherNetwork));
+    }
+
+    @Test
+    public void stateFileTest() throws Exception {
+        Path directory = Files.createTempDirectory("vapp-pool");
+        Path stateFile = directory.resolve("pool.state");
+        assertTrue(VAppPool.load(stateFile).isEmpty());
+
+        VAppPool.PooledVApp ready = new VAppPool.PooledVApp("org|net|catalog/linux/vm,catalog/win dows/vm");
+        ready.href = "https://vcd/api/vApp/vapp-1";
+        ready.readySince = 1234;
+        ready.vmTemplates.put("webAb10", "catalog/linux/vm");
+        ready.vmTemplates.put("db=,x11", "catalog/win dows/vm");
+        VAppPool.PooledVApp composing = new VAppPool.PooledVApp("org|net|catalog/linux/vm");
+        composing.href = "https://vcd/api/vApp/vapp-2";
+        VAppPool.PooledVApp notStarted = new VAppPool.PooledVApp("org|net|catalog/linux/vm");
+        VAppPool.save(stateFile, Arrays.asList(ready, composing, notStarted));
+
+        List<VAppPool.PooledVApp> loaded = VAppPool.load(stateFile);
+        assertEquals(2, loaded.size());
+        assertEquals(ready.key, loaded.get(0).key);
+        assertEquals(ready.href, loaded.get(0).href);
+        assertEquals(1234, loaded.get(0).readySince);
+        assertEquals(ready.vmTemplates, loaded.get(0).vmTemplates);
+        assertEquals(composing.href, loaded.get(1).href);
+        assertEquals(0, loaded.get(1).readySince);
+        assertTrue(loaded.get(1).vmTemplates.isEmpty());
+        assertTrue(!Files.exists(directory.resolve("pool.state.tmp")));
+    }
+
+    @Test
+    public void recoveryTest() throws Exception {
+        VAppRequest prototype = request();
+        Path stateFile = leftBehind(prototype, 2);
+
+        CountDownLatch lookups = new CountDownLatch(1);
+        try (FakeVCloudVMService vCloudVMService = new FakeVCloudVMService(lookups);
+             VAppPool pool = new VAppPool(vCloudVMService, stateFile)) {
+            // Registered while the vApps left behind are still being looked up, with a thread free to refill.
+            pool.register(prototype, 2);
+            Thread.sleep(100);
+            lookups.countDown();
+            while (pool.ready(prototype) < 2) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, vCloudVMService.compositions.get());
+
+            // Only the shortfall is composed.
+            pool.register(prototype, 3);
+            while (pool.ready(prototype) < 3) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, vCloudVMService.compositions.get());
+        }
+    }
+
+    @Test
+    public void missingTest() throws Exception {
+        VAppRequest prototype = request();
+        Path stateFile = leftBehind(prototype, 2);
+
+        VAppPoolOptions options = VAppPoolOptions.builder().refillInterval(Duration.ofMillis(20)).build();
+        try (FakeVCloudVMService vCloudVMService = new FakeVCloudVMService(new CountDownLatch(0));
+             VAppPool pool = new VAppPool(vCloudVMService, stateFile, options)) {
+            pool.register(prototype, 2);
+            while (pool.ready(prototype) < 2) {
+                Thread.sleep(10);
+            }
+
+            // Removed outside the pool.
+            vCloudVMService.missing.add("https://vcd/api/vApp/vapp-1");
+            while (vCloudVMService.compositions.get() < 1 || pool.ready(prototype) < 2) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, vCloudVMService.compositions.get());
+            assertEquals(Collections.singletonList("https://vcd/api/vApp/vapp-1"), vCloudVMService.removed);
+        }
+    }
+
+    // Writes a state file with size ready vApps of the prototype's shape.
+    private static Path leftBehind(VAppRequest prototype, int size) throws IOException {
+        Path stateFile = Files.createTempDirectory("vapp-pool").resolve("pool.state");
+        List<VAppPool.PooledVApp> pooledVApps = new ArrayList<>();
+        for (int i = 1; i <= size; i++) {
+            VAppPool.PooledVApp pooledVApp = new VAppPool.PooledVApp(VAppPool.key(prototype));
+            pooledVApp.href = "https://vcd/api/vApp/vapp-" + i;
+            pooledVApp.readySince = System.currentTimeMillis();
+            pooledVApp.vmTemplates.put("web" + i, "catalog/linux/vm");
+            pooledVApps.add(pooledVApp);
+        }
+        VAppPool.save(stateFile, pooledVApps);
+        return stateFile;
+    }
+
+    private static VAppRequest request() {
+        return VAppRequest.builder()
+                .org("org")
+                .network("net")
+                .vm(new VMRequest("catalog", "linux", "vm", "web", 2, 2048))
+                .name("app")
+                .build();
+    }
+
+    /**
+     * Finds every vApp but the missing ones once lookups is counted down, and composes vApps whose composition
+     * finishes at once.
+     */
+    private static class FakeVCloudVMService extends VCloudVMService {
+        private final CountDownLatch lookups;
+        private final Set<String> missing = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger compositions = new AtomicInteger();
+        private final List<String> removed = new CopyOnWriteArrayList<>();
+
+        private FakeVCloudVMService(CountDownLatch lookups) {
+            super(new SessionPool<>(new NoSessions(), 1), VCloudVMServiceOptions.builder().build());
+            this.lookups = lookups;
+        }
+
+        @Override
+        VAppType getVApp(String vAppTypeHref) {
+            try {
+                lookups.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            if (missing.contains(vAppTypeHref)) {
+                throw new IllegalStateException("No vApp " + vAppTypeHref + ".");
+            }
+            VAppType vAppType = new VAppType();
+            vAppType.setHref(vAppTypeHref);
+            return vAppType;
+        }
+
+        @Override
+        VAppType startComposition(VAppRequest vAppRequest, boolean deploy, boolean powerOn, boolean customize) {
+            VAppType vAppType = new VAppType();
+            vAppType.setHref("https://vcd/api/vApp/composed-" + compositions.incrementAndGet());
+            vAppType.setTasks(new TasksInProgressType());
+            vAppType.getTasks().getTask().add(new TaskType());
+            return vAppType;
+        }
+
+        @Override
+        public void removeVApp(String vAppTypeHref) {
+            removed.add(vAppTypeHref);
+        }
+
+        @Override
+        public CompletableFuture<TaskType> watchTask(TaskType taskType) {
+            return CompletableFuture.completedFuture(taskType);
+        }
+    }
+
+    private static class NoSessions implements Sessions<VcdClient> {
+        @Override
+        public VcdClient open() {
+            return (VcdClient) Proxy.newProxyInstance(VcdClient.class.getClassLoader(), new Class<?>[]{VcdClient.class}, (proxy, method, arguments) -> {
+                // The pool keeps its clients in a set, and the fake service never calls vCD.
+                switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == arguments[0];
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+
+        @Override
+        public void login(VcdClient client) {
+        }
+
+        @Override
+        public boolean isExpired(RuntimeException e) {
+            return false;
+        }
+
+        @Override
+        public void close(VcdClient client) {
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.nufrof.vcloud;
+
+import com.nufrof.vcloud.domain.VAppRequest;
+import com.nufrof.vcloud.session.SessionPool;
+import com.nufrof.vcloud.session.VcdSessions;
+import com.nufrof.vcloud.standin.ProvisioningLoadBenchmark;
+import com.nufrof.vcloud.standin.VcdStandIn;
+import com.nufrof.vcloud.view.VAppView;
+import com.vmware.vcloud.api.rest.client.VcdClient;
+import com.vmware.vcloud.api.rest.schema_v1_5.VAppType;
+import com.vmware.vcloud.api.rest.version.ApiVersion;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs VCloudVMService end to end against the local {@link VcdStandIn}, so it needs neither a vCD nor credentials.
+ */
+public class VCloudVMServiceStandInTest {
+    @Test
+    public void createVAppTest() throws Exception {
+        try (VcdStandIn standIn = ProvisioningLoadBenchmark.newStandIn("org")) {
+            standIn.setTaskDuration(Duration.ofMillis(20));
+            try (VCloudVMService vCloudVMService = new VCloudVMService(standIn.getUrl(), ApiVersion.VERSION_30_0, "org", "user", "password")) {
+                VAppRequest vAppRequest = ProvisioningLoadBenchmark.request("org", "app");
+                VAppType vAppType = vCloudVMService.createVApp(vAppRequest);
+
+                assertEquals("app", vAppType.getName());
+                assertTrue(standIn.isPoweredOn("app"));
+                // VMs are named after the request's unique names.
+                String first = vAppRequest.getVms().get(0).getUniqueName();
+                String second = vAppRequest.getVms().get(1).getUniqueName();
+                assertEquals(2, (int) standIn.getVmCpus(first));
+                assertEquals(4096, (int) standIn.getVmMemoryMb(second));
+                assertEquals(second, standIn.getVmComputerName(second));
+            }
+        }
+    }
+
+    @Test
+    public void queryLookupTest() throws Exception {
+        try (VcdStandIn standIn = ProvisioningLoadBenchmark.newStandIn("org")) {
+            standIn.setTaskDuration(Duration.ofMillis(20));
+            for (int i = 0; i < 4; i++) {
+                standIn.addTemplate(ProvisioningLoadBenchmark.CATALOG, "other" + i, "vm");
+            }
+            VCloudVMServiceOptions options = VCloudVMServiceOptions.builder().queryPageSize(2).build();
+            try (VCloudVMService vCloudVMService = new VCloudVMService(standIn.getUrl(), ApiVersion.VERSION_30_0, "org", "user", "password", options)) {
+                vCloudVMService.createVApp(ProvisioningLoadBenchmark.request("org", "app"));
+                // Neither the catalog nor its items were fetched, and the VDC only for the compose.
+                assertEquals(0, standIn.getRequestCount("catalog"));
+                assertEquals(0, standIn.getRequestCount("catalogItem"));
+                assertEquals(1, standIn.getRequestCount("vdc"));
+
+                long queries = standIn.getRequestCount("query");
+                assertEquals(Arrays.asList(ProvisioningLoadBenchmark.TEMPLATE, "other0", "other1", "other2", "other3"), vCloudVMService.getVAppTemplateNames(ProvisioningLoadBenchmark.CATALOG));
+                assertEquals(3, standIn.getRequestCount("query") - queries);
+            }
+        }
+    }
+
+    @Test
+    public void streamingViewTest() throws Exception {
+        for (boolean streamingViews : new boolean[]{true, false}) {
+            try (VcdStandIn standIn = ProvisioningLoadBenchmark.newStandIn("org")) {
+                standIn.setTaskDuration(Duration.ofMillis(20));
+                // Walk the catalog rather than query, so that it is read too.
+                VCloudVMServiceOptions options = VCloudVMServiceOptions.builder().queryLookups(false).streamingViews(streamingViews).build();
+                try (VCloudVMService vCloudVMService = new VCloudVMService(standIn.getUrl(), ApiVersion.VERSION_30_0, "org", "user", "password", options)) {
+                    VAppRequest vAppRequest = ProvisioningLoadBenchmark.request("org", "app");
+                    VAppType vAppType = vCloudVMService.createVApp(vAppRequest);
+
+                    VAppView vAppView = vCloudVMService.getVAppView(vAppType.getHref());
+                    assertEquals("app", vAppView.getName());
+                    assertTrue(vAppView.getDeployed());
+                    assertEquals(vAppRequest.getVms().get(1).getUniqueName(), vAppView.getVms().get(1).getName());
+                    assertEquals(4, (int) vAppView.getVms().get(1).getNumCpus());
+                    assertEquals(4096, (int) vAppView.getVms().get(1).getMbsMemory());
+
+                    vCloudVMService.undeployVApp(vAppType.getHref());
+                    vCloudVMService.removeVApp(vAppType.getHref());
+                    assertEquals(0, standIn.getVAppCount());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sessionExpiryTest() throws Exception {
+        try (VcdStandIn standIn = ProvisioningLoadBenchmark.newStandIn("org")) {
+            standIn.setTaskDuration(Duration.ofMillis(20));
+            try (SessionPool<VcdClient> sessionPool = VcdSessions.pool(standIn.getUrl(), ApiVersion.VERSION_30_0, "org", "user", "password", 2);
+                 VCloudVMService vCloudVMService = new VCloudVMService(sessionPool, VCloudVMServiceOptions.builder().build())) {
+                vCloudVMService.createVApp(ProvisioningLoadBenchmark.request("org", "first"));
+                standIn.expireSessions();
+                long logins = sessionPool.logins();
+                vCloudVMService.createVApp(ProvisioningLoadBenchmark.request("org", "second"));
+
+                assertTrue(standIn.isPoweredOn("second"));
+                assertTrue(sessionPool.logins() > logins);
+            }
+        }
+    }
+
+    @Test
+    public void resumeTest() throws Exception {
+        try (VcdStandIn standIn = ProvisioningLoadBenchmark.newStandIn("org")) {
+            standIn.setTaskDuration(Duration.ofMillis(20));
+            standIn.setTaskDuration("vdcComposeVapp", Duration.ofSeconds(2));
+            Path journalFile = Files.createTempDirectory("vapp-journal").resolve("vapps.journal");
+            String key = VAppJournal.key(ProvisioningLoadBenchmark.request("org", "app"));
+
+            // Stop the first service while the composition is still running.
+            List<String> vmNames;
+            try (VAppJournal journal = new VAppJournal(journalFile)) {
+                VCloudVMService first = new VCloudVMService(standIn.getUrl(), ApiVersion.VERSION_30_0, "org", "user", "password", VCloudVMServiceOptions.builder().journal(journal).build());
+                CompletableFuture<VAppType> interrupted = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return first.createVApp(ProvisioningLoadBenchmark.request("org", "app"));
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                });
+                while (journal.get(key) == null || journal.get(key).getVAppHref() == null) {
+                    Thread.sleep(10);
+                }
+                first.close();
+                assertThrows(CompletionException.class, interrupted::join);
+                vmNames = journal.get(key).getVmNames();
+            }
+
+            // A new service, given an equal request, picks the vApp up instead of composing another.
+            try (VAppJournal journal = new VAppJournal(journalFile);
+                 VCloudVMService second = new VCloudVMService(standIn.getUrl(), ApiVersion.VERSION_30_0, "org", "user", "password", VCloudVMServiceOptions.builder().journal(journal).build())) {
+                second.createVApp(ProvisioningLoadBenchmark.request("org", "app"));
+
+                assertEquals(1, standIn.getVAppCount());
+                assertTrue(standIn.isPoweredOn("app"));
+                assertEquals(2, (int) standIn.getVmCpus(vmNames.get(0)));
+                assertEquals(4096, (int) standIn.getVmMemoryMb(vmNames.get(1)));
+                assertTrue(journal.pending().isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void loadTest() throws Exception {
+        for (ProvisioningMode provisioningMode : ProvisioningMode.values()) {
+            // Requests, task polls and the logins and lookups shared between vApps included.  RECONFIGURE makes five
+            // calls and waits on four tasks per vApp, SINGLE_COMPOSE two calls and one task.
+            double maxHttpCallsPerVApp = provisioningMode == ProvisioningMode.RECONFIGURE ? 18 : 9;
+            try (VcdStandIn standIn = ProvisioningLoadBenchmark.newStandIn("org")) {
+                standIn.setTaskDuration(Duration.ofMillis(20));
+                ProvisioningLoadBenchmark.Result result = ProvisioningLoadBenchmark.run(standIn, provisioningMode, 4, 8);
+
+                assertEquals(0, result.getFailures());
+                assertEquals(8, standIn.getVAppCount());
+                assertTrue(result.getHttpCallsPerVApp() <= maxHttpCallsPerVApp, provisioningMode + " made " + result.getHttpCallsPerVApp() + " HTTP calls per vApp, more than " + maxHttpCallsPerVApp + ".");
+                assertTrue(result.getP99CreateVAppMillis() > 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.nufrof.vcloud.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TtlCacheTest {
+    @Test
+    public void expiryTest() {
+        AtomicLong now = new AtomicLong();
+        AtomicInteger loads = new AtomicInteger();
+        TtlCache<String, Integer> cache = new TtlCache<>(Duration.ofSeconds(10), 10, now::get);
+
+        assertEquals(1, (int) cache.get("catalog", loads::incrementAndGet));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        assertEquals(1, (int) cache.get("catalog", loads::incrementAndGet));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(2, (int) cache.get("catalog", loads::incrementAndGet));
+        cache.invalidate("catalog");
+        assertEquals(3, (int) cache.get("catalog", loads::incrementAndGet));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evictionTest() {
+        TtlCache<String, String> cache = new TtlCache<>(Duration.ofMinutes(1), 2);
+        cache.get("a", () -> "a");
+        cache.get("b", () -> "b");
+        cache.get("a", () -> "stale");
+        cache.get("c", () -> "c");
+
+        assertEquals(2, cache.size());
+        assertEquals("a", cache.get("a", () -> "reloaded"));
+        assertEquals("reloaded", cache.get("b", () -> "reloaded"));
+    }
+
+    @Test
+    public void failedLoadTest() {
+        TtlCache<String, String> cache = new TtlCache<>(Duration.ofMinutes(1), 10);
+
+        assertThrows(IllegalStateException.class, () -> cache.get("a", () -> {
+            throw new IllegalStateException("503");
+        }));
+        assertEquals("a", cache.get("a", () -> "a"));
+    }
+
+    @Test
+    public void sharedLoadTest() throws Exception {
+        TtlCache<String, Integer> cache = new TtlCache<>(Duration.ofMinutes(1), 10);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            Future<Integer> first = executorService.submit(() -> cache.get("template", () -> {
+                loading.countDown();
+                await(release);
+                return loads.incrementAndGet();
+            }));
+            loading.await();
+            Future<Integer> second = executorService.submit(() -> cache.get("template", loads::incrementAndGet));
+            release.countDown();
+
+            assertEquals(1, (int) first.get());
+            assertEquals(1, (int) second.get());
+            assertEquals(1, loads.get());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
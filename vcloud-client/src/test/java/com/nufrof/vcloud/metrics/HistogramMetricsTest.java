@@ -0,0 +1,56 @@
+package com.nufrof.vcloud.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class HistogramMetricsTest {
+    @Test
+    public void recordTest() {
+        HistogramMetrics metrics = new HistogramMetrics();
+        metrics.recordCall("GET", TimeUnit.MILLISECONDS.toNanos(20), false);
+        metrics.recordCall("GET", TimeUnit.MILLISECONDS.toNanos(40), true);
+        metrics.recordCall("POST", TimeUnit.MILLISECONDS.toNanos(100), false);
+        metrics.recordStage(Stage.COMPOSE, TimeUnit.SECONDS.toNanos(2), false);
+        metrics.recordTaskPoll(1);
+        metrics.recordTaskPoll(30);
+        metrics.recordCreateVAppCalls(12);
+
+        List<TimerSummary> calls = metrics.getCalls();
+        assertEquals(2, calls.size());
+        assertEquals("GET", calls.get(0).getName());
+        assertEquals(2, calls.get(0).getCount());
+        assertEquals(1, calls.get(0).getErrors());
+        assertEquals(40, calls.get(0).getMaxMillis(), 0.001);
+        assertEquals(1, metrics.getStages().size());
+        assertEquals("COMPOSE", metrics.getStages().get(0).getName());
+        assertEquals(2, metrics.getTaskPolls());
+        assertEquals(31, metrics.getTasksPolled());
+        assertEquals(12, metrics.getCreateVAppCallsP99());
+    }
+
+    @Test
+    public void mBeanTest() throws Exception {
+        HistogramMetrics metrics = new HistogramMetrics();
+        metrics.recordStage(Stage.POWER_ON, TimeUnit.SECONDS.toNanos(1), false);
+        ObjectName objectName = metrics.registerMBean("mBeanTest");
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            CompositeData[] stages = (CompositeData[]) mBeanServer.getAttribute(objectName, "Stages");
+            assertEquals(1, stages.length);
+            assertEquals("POWER_ON", stages[0].get("name"));
+            assertEquals(0L, mBeanServer.getAttribute(objectName, "TaskPolls"));
+        } finally {
+            metrics.unregisterMBean();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+    }
+}
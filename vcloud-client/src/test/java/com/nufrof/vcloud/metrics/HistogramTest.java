@@ -0,0 +1,45 @@
+package com.nufrof.vcloud.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HistogramTest {
+    @Test
+    public void percentileTest() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.percentile(0.99));
+
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(1_000_000, histogram.max());
+        assertEquals(500_500, histogram.mean(), 0.001);
+        assertWithinAnEighth(500_000, histogram.percentile(0.5));
+        assertWithinAnEighth(990_000, histogram.percentile(0.99));
+        assertEquals(1_000_000, histogram.percentile(1));
+    }
+
+    @Test
+    public void bucketsTest() {
+        for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 17, 1_000_003, Long.MAX_VALUE / 3, Long.MAX_VALUE}) {
+            int index = Histogram.index(value);
+            assertTrue(Histogram.highestValue(index) >= value, "Bucket " + index + " ends below " + value + ".");
+            assertTrue(index == 0 || Histogram.highestValue(index - 1) < value, "Bucket " + (index - 1) + " already holds " + value + ".");
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.highestValue(Histogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void invalidTest() {
+        assertThrows(IllegalArgumentException.class, () -> new Histogram().percentile(1.5));
+    }
+
+    private static void assertWithinAnEighth(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / 8, "Expected about " + expected + ", but was " + actual + ".");
+    }
+}
@@ -0,0 +1,74 @@
+package com.nufrof.vcloud.query;
+
+import com.vmware.vcloud.api.rest.schema_v1_5.ReferenceType;
+import com.vmware.vcloud.api.rest.schema_v1_5.ReferencesType;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TypedQueryTest {
+    private static final String QUERY_HREF = "https://vcd/api/query?type=vAppTemplate&format=references";
+
+    @Test
+    public void hrefTest() {
+        assertEquals(QUERY_HREF, new TypedQuery(QUERY_HREF).href());
+        assertEquals(QUERY_HREF + "&page=2&pageSize=50&fields=name,catalogName&filter=name%3D%3Dcent+os%3BcatalogName%3D%3Dpublic",
+                new TypedQuery(QUERY_HREF).filter("name", "cent os").filter("catalogName", "public").fields("name", "catalogName").pageSize(50).page(2).href());
+        assertEquals(QUERY_HREF + "&filter=%28href%3D%3Da%2Chref%3D%3Db%29", new TypedQuery(QUERY_HREF).filterAny("href", Arrays.asList("a", "b")).href());
+
+        assertFalse(TypedQuery.isLiteral("CentOS 8 (x64)"));
+        assertTrue(TypedQuery.isLiteral("CentOS-8_x64.v2"));
+        assertFalse(TypedQuery.isLiteral("win*"));
+        assertFalse(TypedQuery.isLiteral("a;b"));
+        assertThrows(IllegalArgumentException.class, () -> new TypedQuery(QUERY_HREF).filter("name", "a,b"));
+    }
+
+    @Test
+    public void pagesTest() {
+        List<String> hrefs = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        // Five references, two to a page.
+        int pages = QueryPages.forEach(new TypedQuery(QUERY_HREF), 2, href -> {
+            hrefs.add(href);
+            int page = Integer.parseInt(href.replaceAll(".*&page=(\\d+).*", "$1"));
+            return page(5, page, 2);
+        }, ReferencesType::getReference, reference -> names.add(reference.getValue().getName()));
+
+        assertEquals(3, pages);
+        assertEquals(Arrays.asList("t1", "t2", "t3", "t4", "t5"), names);
+        assertEquals(QUERY_HREF + "&page=3&pageSize=2", hrefs.get(2));
+
+        // Stops as soon as the consumer has had enough.
+        names.clear();
+        pages = QueryPages.forEach(new TypedQuery(QUERY_HREF), 2, href -> page(5, Integer.parseInt(href.replaceAll(".*&page=(\\d+).*", "$1")), 2),
+                ReferencesType::getReference, reference -> names.add(reference.getValue().getName()) && names.size() < 3);
+        assertEquals(2, pages);
+        assertEquals(3, names.size());
+
+        // A full last page ends the walk when the total says so.
+        assertEquals(2, QueryPages.forEach(new TypedQuery(QUERY_HREF), 2, href -> page(4, Integer.parseInt(href.replaceAll(".*&page=(\\d+).*", "$1")), 2),
+                ReferencesType::getReference, reference -> true));
+    }
+
+    private static ReferencesType page(int total, int page, int pageSize) {
+        ReferencesType referencesType = new ReferencesType();
+        referencesType.setTotal((long) total);
+        referencesType.setPage(page);
+        referencesType.setPageSize(pageSize);
+        for (int i = (page - 1) * pageSize + 1; i <= Math.min(total, page * pageSize); i++) {
+            ReferenceType referenceType = new ReferenceType();
+            referenceType.setName("t" + i);
+            referencesType.getReference().add(new JAXBElement<>(new QName("Reference"), ReferenceType.class, referenceType));
+        }
+        return referencesType;
+    }
+}
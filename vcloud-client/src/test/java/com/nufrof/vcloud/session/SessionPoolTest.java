@@ -0,0 +1,203 @@
+package com.nufrof.vcloud.session;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SessionPoolTest {
+    @Test
+    public void leaseTest() throws Exception {
+        FakeSessions sessions = new FakeSessions();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (SessionPool<FakeClient> pool = new SessionPool<>(sessions, 2)) {
+            assertEquals(1, pool.logins());
+            // One caller at a time keeps reusing the first client.
+            for (int i = 0; i < 5; i++) {
+                assertEquals(1, (int) pool.call(client -> client.id));
+            }
+            assertEquals(1, pool.logins());
+
+            // Two callers at once get a client each, and a third waits for one of them.
+            CountDownLatch holding = new CountDownLatch(2);
+            CountDownLatch release = new CountDownLatch(1);
+            List<Integer> ids = new CopyOnWriteArrayList<>();
+            CompletableFuture<?> first = CompletableFuture.runAsync(() -> pool.call(client -> hold(client, ids, holding, release)), executor);
+            CompletableFuture<?> second = CompletableFuture.runAsync(() -> pool.call(client -> hold(client, ids, holding, release)), executor);
+            assertTrue(holding.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Integer> third = CompletableFuture.supplyAsync(() -> pool.call(client -> client.id), executor);
+            Thread.sleep(50);
+            assertFalse(third.isDone());
+            release.countDown();
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+
+            assertTrue(ids.contains(1) && ids.contains(2));
+            assertTrue(third.get(5, TimeUnit.SECONDS) <= 2);
+            assertEquals(2, pool.logins());
+            assertEquals(2, pool.idle());
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(2, sessions.closed.get());
+    }
+
+    @Test
+    public void expiryTest() {
+        FakeSessions sessions = new FakeSessions();
+        try (SessionPool<FakeClient> pool = new SessionPool<>(sessions, 1)) {
+            pool.call(client -> client.expired = true);
+            assertEquals(1, (int) pool.call(FakeClient::get));
+            assertEquals(2, pool.logins());
+
+            // Other failures are passed on, and the client is kept.
+            assertThrows(IllegalArgumentException.class, () -> pool.call(client -> {
+                throw new IllegalArgumentException();
+            }));
+            assertEquals(1, pool.idle());
+            assertEquals(2, pool.logins());
+        }
+    }
+
+    @Test
+    public void discardTest() throws Exception {
+        FakeSessions sessions = new FakeSessions();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (SessionPool<FakeClient> pool = new SessionPool<>(sessions, 1)) {
+            // The only client's session expires and logging in again fails, while another caller waits for it.
+            CountDownLatch holding = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Integer> broken = CompletableFuture.supplyAsync(() -> pool.call(client -> {
+                hold(client, new CopyOnWriteArrayList<>(), holding, release);
+                client.expired = true;
+                sessions.failLogins = true;
+                return client.get();
+            }), executor);
+            assertTrue(holding.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Integer> waiting = CompletableFuture.supplyAsync(() -> pool.call(client -> client.id), executor);
+            Thread.sleep(50);
+            assertFalse(waiting.isDone());
+            release.countDown();
+
+            assertThrows(ExecutionException.class, () -> broken.get(5, TimeUnit.SECONDS));
+            // The waiting caller opens a client in the discarded one's place.
+            assertEquals(2, (int) waiting.get(5, TimeUnit.SECONDS));
+            assertEquals(1, sessions.closed.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void closeTest() throws Exception {
+        FakeSessions sessions = new FakeSessions();
+        SessionPool<FakeClient> pool = new SessionPool<>(sessions, 1);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<Integer> leased = CompletableFuture.supplyAsync(() -> pool.call(client -> hold(client, new CopyOnWriteArrayList<>(), holding, release)), executor);
+            assertTrue(holding.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Integer> waiting = CompletableFuture.supplyAsync(() -> pool.call(client -> client.id), executor);
+            Thread.sleep(50);
+
+            // Closing wakes the waiting caller, and the lent out client is closed once it comes back.
+            pool.close();
+            ExecutionException waitFailure = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+            assertTrue(waitFailure.getCause() instanceof IllegalStateException);
+            release.countDown();
+            assertEquals(1, (int) leased.get(5, TimeUnit.SECONDS));
+            assertEquals(1, sessions.closed.get());
+            assertThrows(IllegalStateException.class, () -> pool.call(client -> client.id));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void retryFailureTest() {
+        FakeSessions sessions = new FakeSessions();
+        try (SessionPool<FakeClient> pool = new SessionPool<>(sessions, 1)) {
+            // The retry after logging in fails for another reason, which leaves the client usable.
+            pool.call(client -> client.expired = true);
+            assertThrows(IllegalArgumentException.class, () -> pool.call(client -> {
+                client.get();
+                throw new IllegalArgumentException();
+            }));
+            assertEquals(1, pool.idle());
+            assertEquals(0, sessions.closed.get());
+            assertEquals(1, (int) pool.call(client -> client.id));
+        }
+    }
+
+    private static Integer hold(FakeClient client, List<Integer> ids, CountDownLatch holding, CountDownLatch release) {
+        ids.add(client.id);
+        holding.countDown();
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return client.id;
+    }
+
+    private static class FakeClient {
+        private final int id;
+        private volatile boolean expired;
+
+        private FakeClient(int id) {
+            this.id = id;
+        }
+
+        private Integer get() {
+            if (expired) {
+                throw new ExpiredException();
+            }
+            return id;
+        }
+    }
+
+    private static class ExpiredException extends RuntimeException {
+    }
+
+    private static class FakeSessions implements Sessions<FakeClient> {
+        private final AtomicInteger ids = new AtomicInteger();
+        private final AtomicInteger closed = new AtomicInteger();
+        private volatile boolean failLogins;
+
+        @Override
+        public FakeClient open() {
+            return new FakeClient(ids.incrementAndGet());
+        }
+
+        @Override
+        public void login(FakeClient client) {
+            if (failLogins) {
+                throw new IllegalStateException("vCD is down.");
+            }
+            client.expired = false;
+        }
+
+        @Override
+        public boolean isExpired(RuntimeException e) {
+            return e instanceof ExpiredException;
+        }
+
+        @Override
+        public void close(FakeClient client) {
+            closed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.nufrof.vcloud.standin;
+
+import com.nufrof.vcloud.ProvisioningMode;
+import com.nufrof.vcloud.VCloudVMService;
+import com.nufrof.vcloud.VCloudVMServiceOptions;
+import com.nufrof.vcloud.domain.VAppRequest;
+import com.nufrof.vcloud.domain.VMRequest;
+import com.nufrof.vcloud.metrics.HistogramMetrics;
+import com.nufrof.vcloud.metrics.Stage;
+import com.vmware.vcloud.api.rest.version.ApiVersion;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates vApps against a {@link VcdStandIn} at a range of concurrency levels and reports vApps per minute, HTTP calls
+ * per vApp and the 99th percentile createVApp latency.  Each level gets a fresh stand-in and a fresh service.
+ * <p>
+ * Arguments, all optional: the concurrency levels, comma separated; the vApps per level; the task duration in ms; the
+ * latency of every response in ms; and the provisioning mode.  For example {@code 1,4,16 64 200 5 RECONFIGURE}.
+ */
+public class ProvisioningLoadBenchmark {
+    public static final String CATALOG = "catalog";
+
+    public static final String TEMPLATE = "linux";
+
+    public static final String TEMPLATE_VM = "vm";
+
+    public static final String NETWORK = "net";
+
+    public static void main(String[] args) throws Exception {
+        String[] levels = (args.length > 0 ? args[0] : "1,2,4,8,16").split(",");
+        int vApps = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        Duration taskDuration = Duration.ofMillis(args.length > 2 ? Long.parseLong(args[2]) : 200);
+        Duration latency = Duration.ofMillis(args.length > 3 ? Long.parseLong(args[3]) : 5);
+        ProvisioningMode provisioningMode = args.length > 4 ? ProvisioningMode.valueOf(args[4]) : ProvisioningMode.RECONFIGURE;
+
+        System.out.println(provisioningMode + ", " + vApps + " vApps per level, tasks take " + taskDuration.toMillis() + " ms, responses take " + latency.toMillis() + " ms");
+        System.out.println(String.format("%11s %8s %12s %14s %17s %15s", "concurrency", "failed", "vApps/min", "HTTP calls/vApp", "client calls/vApp", "p99 createVApp"));
+        for (String level : levels) {
+            try (VcdStandIn standIn = newStandIn("org")) {
+                standIn.setTaskDuration(taskDuration).setLatency(latency);
+                Result result = run(standIn, provisioningMode, Integer.parseInt(level.trim()), vApps);
+                System.out.println(String.format("%11d %8d %12.1f %14.1f %17.1f %12.0f ms", result.getConcurrency(), result.getFailures(), result.getVAppsPerMinute(), result.getHttpCallsPerVApp(), result.getClientCallsPerVApp(), result.getP99CreateVAppMillis()));
+            }
+        }
+    }
+
+    /**
+     * Returns a stand-in holding the catalog, template and network that {@link #request} uses.
+     */
+    public static VcdStandIn newStandIn(String orgName) throws Exception {
+        return new VcdStandIn(orgName).addTemplate(CATALOG, TEMPLATE, TEMPLATE_VM).addNetwork(NETWORK);
+    }
+
+    /**
+     * A request for a vApp of two VMs from the stand-in's template.  Names are kept within the 8 characters allowed.
+     */
+    public static VAppRequest request(String orgName, String name) {
+        return VAppRequest.builder()
+                .org(orgName)
+                .network(NETWORK)
+                .vm(new VMRequest(CATALOG, TEMPLATE, TEMPLATE_VM, name + "a", 2, 2048))
+                .vm(new VMRequest(CATALOG, TEMPLATE, TEMPLATE_VM, name + "b", 4, 4096))
+                .name(name)
+                .build();
+    }
+
+    /**
+     * Creates vApps, concurrency at a time, through a new service logged in to the stand-in.  Login is not counted.
+     */
+    public static Result run(VcdStandIn standIn, ProvisioningMode provisioningMode, int concurrency, int vApps) throws Exception {
+        HistogramMetrics metrics = new HistogramMetrics();
+        VCloudVMServiceOptions options = VCloudVMServiceOptions.builder()
+                .provisioningMode(provisioningMode)
+                .metrics(metrics)
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try (VCloudVMService vCloudVMService = new VCloudVMService(standIn.getUrl(), ApiVersion.VERSION_30_0, standIn.getOrgName(), "user", "password", options)) {
+            AtomicInteger failures = new AtomicInteger();
+            long requestsBefore = standIn.getRequestCount();
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            // Names stay unique across runs against the same stand-in, which looks VMs up by name.
+            int offset = standIn.getVAppCount();
+            for (int i = 0; i < vApps; i++) {
+                VAppRequest vAppRequest = request(standIn.getOrgName(), "l" + Integer.toString(offset + i, Character.MAX_RADIX));
+                futures.add(executor.submit(() -> {
+                    try {
+                        vCloudVMService.createVApp(vAppRequest);
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            return new Result(concurrency, vApps, failures.get(), elapsedNanos, standIn.getRequestCount() - requestsBefore, metrics);
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    public static class Result {
+        private final int concurrency;
+
+        private final int vApps;
+
+        private final int failures;
+
+        private final long elapsedNanos;
+
+        private final long httpCalls;
+
+        private final HistogramMetrics metrics;
+
+        private Result(int concurrency, int vApps, int failures, long elapsedNanos, long httpCalls, HistogramMetrics metrics) {
+            this.concurrency = concurrency;
+            this.vApps = vApps;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+            this.httpCalls = httpCalls;
+            this.metrics = metrics;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * vApps created, failures excluded, per minute of wall clock.
+         */
+        public double getVAppsPerMinute() {
+            return (vApps - failures) * (double) TimeUnit.MINUTES.toNanos(1) / elapsedNanos;
+        }
+
+        /**
+         * Requests the stand-in served per vApp, task polls included.
+         */
+        public double getHttpCallsPerVApp() {
+            return (double) httpCalls / vApps;
+        }
+
+        /**
+         * Calls the service counted per createVApp.  Task polls shared between vApps are not included.
+         */
+        public double getClientCallsPerVApp() {
+            return metrics.getCreateVAppCallsMean();
+        }
+
+        public double getP99CreateVAppMillis() {
+            return metrics.getStageLatencies(Stage.CREATE_VAPP).percentile(0.99) / 1e6;
+        }
+
+        public HistogramMetrics getMetrics() {
+            return metrics;
+        }
+    }
+}
@@ -0,0 +1,898 @@
+package com.nufrof.vcloud.standin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-process stand-in for the parts of the vCloud Director API that {@link com.nufrof.vcloud.VCloudVMService}
+ * uses: login, the org, catalogs, vApp templates, the VDC, the network and task queries, composing, reconfiguring,
+ * renaming, powering on, undeploying and removing vApps, and tasks.  It serves plain HTTP on a free local port.
+ * <p>
+ * Tasks finish after a configurable time, per operation name, and take effect when they succeed.  Every response can be
+ * delayed, a share of requests can fail with a 500, and a share of tasks, or the next few of an operation, can finish
+ * in error.  The settings can be changed while it runs.
+ */
+public class VcdStandIn implements AutoCloseable {
+    private static final String VERSION = "30.0";
+
+    private static final String NAMESPACES = "xmlns=\"http://www.vmware.com/vcloud/v1.5\" xmlns:ovf=\"http://schemas.dmtf.org/ovf/envelope/1\" xmlns:rasd=\"http://schemas.dmtf.org/wbem/wscim/1/cim-schema/2/CIM_ResourceAllocationSettingData\"";
+
+    private static final String MEDIA_TYPE = "application/vnd.vmware.vcloud.";
+
+    private static final String AUTHORIZATION_HEADER = "x-vcloud-authorization";
+
+    private static final String POWERED_ON = "4";
+
+    private static final String POWERED_OFF = "8";
+
+    private static final String UNRESOLVED = "0";
+
+    private static final String FAILED_CREATION = "-1";
+
+    private static final String[] QUERY_TYPES = {"orgVdcNetwork", "orgVdc", "vAppTemplate", "task"};
+
+    private final String orgName;
+
+    private final String orgId = UUID.randomUUID().toString();
+
+    private final String vdcId = UUID.randomUUID().toString();
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final String url;
+
+    private final AtomicInteger ids = new AtomicInteger();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final Map<String, AtomicLong> requestsByMethod = new ConcurrentHashMap<>();
+
+    // By the first part of the path after /api, such as catalog or query.
+    private final Map<String, AtomicLong> requestsByResource = new ConcurrentHashMap<>();
+
+    private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+
+    // The rest is guarded by this.
+    private final Map<String, Catalog> catalogs = new LinkedHashMap<>();
+
+    // Network id by name.
+    private final Map<String, String> networks = new LinkedHashMap<>();
+
+    private final Map<String, VApp> vApps = new LinkedHashMap<>();
+
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
+
+    private final List<Task> runningTasks = new ArrayList<>();
+
+    private final Map<String, AtomicInteger> failNext = new ConcurrentHashMap<>();
+
+    private final Map<String, Duration> taskDurations = new ConcurrentHashMap<>();
+
+    private volatile Duration defaultTaskDuration = Duration.ofMillis(100);
+
+    private volatile Duration latency = Duration.ZERO;
+
+    private volatile double httpErrorRate;
+
+    private volatile double taskFailureRate;
+
+    public VcdStandIn(String orgName) throws IOException {
+        this.orgName = orgName;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "vcd-stand-in-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/api", this::handle);
+        server.start();
+        this.url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * The address to hand VCloudVMService, without the /api suffix.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public String getOrgName() {
+        return orgName;
+    }
+
+    /**
+     * Adds a vApp template with the given VMs to a catalog, creating the catalog if need be.
+     */
+    public synchronized VcdStandIn addTemplate(String catalogName, String vAppTemplateName, String... vmNames) {
+        Catalog catalog = catalogs.computeIfAbsent(catalogName, name -> new Catalog(nextId(), name));
+        Template template = new Template(nextId(), nextId(), vAppTemplateName);
+        for (String vmName : vmNames) {
+            template.vms.put(nextId(), vmName);
+        }
+        catalog.templates.put(vAppTemplateName, template);
+        return this;
+    }
+
+    public synchronized VcdStandIn addNetwork(String networkName) {
+        networks.put(networkName, nextId());
+        return this;
+    }
+
+    /**
+     * How long tasks take when their operation has no duration of its own.
+     */
+    public VcdStandIn setTaskDuration(Duration duration) {
+        this.defaultTaskDuration = duration;
+        return this;
+    }
+
+    /**
+     * How long tasks of one operation take, such as vdcComposeVapp, vappUpdateVm or vappDeploy.
+     */
+    public VcdStandIn setTaskDuration(String operationName, Duration duration) {
+        taskDurations.put(operationName, duration);
+        return this;
+    }
+
+    /**
+     * How long every response is held back.
+     */
+    public VcdStandIn setLatency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * The share of requests, from 0 to 1, that fail with a 500.
+     */
+    public VcdStandIn setHttpErrorRate(double httpErrorRate) {
+        this.httpErrorRate = httpErrorRate;
+        return this;
+    }
+
+    /**
+     * The share of tasks, from 0 to 1, that finish in error.
+     */
+    public VcdStandIn setTaskFailureRate(double taskFailureRate) {
+        this.taskFailureRate = taskFailureRate;
+        return this;
+    }
+
+    /**
+     * Makes the next count tasks of an operation finish in error.
+     */
+    public VcdStandIn failNextTasks(String operationName, int count) {
+        failNext.computeIfAbsent(operationName, name -> new AtomicInteger()).addAndGet(count);
+        return this;
+    }
+
+    /**
+     * Logs every session out, so that the next request of each client is refused with a 401.
+     */
+    public void expireSessions() {
+        sessions.clear();
+    }
+
+    /**
+     * Returns the number of requests served, logins included.
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public Map<String, Long> getRequestCountsByMethod() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        requestsByMethod.forEach((method, count) -> counts.put(method, count.get()));
+        return counts;
+    }
+
+    /**
+     * Returns the number of requests served for one kind of resource, such as catalog, vAppTemplate or query.
+     */
+    public long getRequestCount(String resource) {
+        AtomicLong count = requestsByResource.get(resource);
+        return count == null ? 0 : count.get();
+    }
+
+    public synchronized int getVAppCount() {
+        return vApps.size();
+    }
+
+    public synchronized int getRunningTaskCount() {
+        settle();
+        return runningTasks.size();
+    }
+
+    /**
+     * Returns the number of CPUs of the VM with that name, or null if there is none.
+     */
+    public synchronized Integer getVmCpus(String vmName) {
+        return findVm(vmName) == null ? null : findVm(vmName).cpus;
+    }
+
+    public synchronized Integer getVmMemoryMb(String vmName) {
+        return findVm(vmName) == null ? null : findVm(vmName).memoryMb;
+    }
+
+    public synchronized String getVmComputerName(String vmName) {
+        return findVm(vmName) == null ? null : findVm(vmName).computerName;
+    }
+
+    /**
+     * Returns whether a vApp with that name exists and is powered on.
+     */
+    public synchronized boolean isPoweredOn(String vAppName) {
+        settle();
+        return vApps.values().stream().anyMatch(vApp -> vApp.name.equals(vAppName) && POWERED_ON.equals(vApp.status));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private String nextId() {
+        return Integer.toString(ids.incrementAndGet());
+    }
+
+    private Vm findVm(String vmName) {
+        return vApps.values().stream().flatMap(vApp -> vApp.vms.stream()).filter(vm -> vm.name.equals(vmName)).findFirst().orElse(null);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            requestsByMethod.computeIfAbsent(exchange.getRequestMethod(), method -> new AtomicLong()).incrementAndGet();
+            String[] pathParts = exchange.getRequestURI().getPath().split("/");
+            requestsByResource.computeIfAbsent(pathParts.length > 2 ? pathParts[2] : "", resource -> new AtomicLong()).incrementAndGet();
+            if (!latency.isZero()) {
+                TimeUnit.NANOSECONDS.sleep(latency.toNanos());
+            }
+            if (httpErrorRate > 0 && ThreadLocalRandom.current().nextDouble() < httpErrorRate) {
+                error(exchange, 500, "Injected failure.");
+                return;
+            }
+            route(exchange);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error(exchange, 503, "Shutting down.");
+        } catch (RuntimeException e) {
+            error(exchange, 500, String.valueOf(e));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        if (path.endsWith("/") && path.length() > "/api/".length()) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (method.equals("GET") && path.equals("/api/versions")) {
+            respond(exchange, 200, "application/*+xml", versions());
+            return;
+        }
+        if (method.equals("POST") && path.equals("/api/sessions")) {
+            login(exchange);
+            return;
+        }
+        String token = exchange.getRequestHeaders().getFirst(AUTHORIZATION_HEADER);
+        if (token == null || !sessions.contains(token)) {
+            error(exchange, 401, "This operation is denied.");
+            return;
+        }
+        Matcher matcher;
+        synchronized (this) {
+            settle();
+            if (method.equals("GET") && (path.equals("/api/session"))) {
+                respond(exchange, 200, "session", session(token));
+            } else if (method.equals("DELETE") && path.equals("/api/session")) {
+                sessions.remove(token);
+                respond(exchange, 204, null, null);
+            } else if (method.equals("GET") && path.equals("/api/org")) {
+                respond(exchange, 200, "orgList", "<OrgList " + NAMESPACES + " href=\"" + url + "/api/org/\" type=\"" + MEDIA_TYPE + "orgList+xml\"><Org type=\"" + MEDIA_TYPE + "org+xml\" name=\"" + escape(orgName) + "\" href=\"" + url + "/api/org/" + orgId + "\"/></OrgList>");
+            } else if (method.equals("GET") && path.equals("/api/org/" + orgId)) {
+                respond(exchange, 200, "org", org());
+            } else if (method.equals("GET") && path.equals("/api/query")) {
+                query(exchange);
+            } else if (method.equals("GET") && (matcher = match("/api/catalog/(\\w+)", path)) != null) {
+                String id = matcher.group(1);
+                Catalog catalog = catalogs.values().stream().filter(c -> c.id.equals(id)).findFirst().orElse(null);
+                respondOrNotFound(exchange, "catalog", catalog == null ? null : catalog(catalog));
+            } else if (method.equals("GET") && (matcher = match("/api/catalogItem/(\\w+)", path)) != null) {
+                String id = matcher.group(1);
+                Template template = findTemplate(t -> t.catalogItemId.equals(id));
+                respondOrNotFound(exchange, "catalogItem", template == null ? null : catalogItem(template));
+            } else if (method.equals("GET") && (matcher = match("/api/vAppTemplate/vappTemplate-(\\w+)", path)) != null) {
+                String id = matcher.group(1);
+                Template template = findTemplate(t -> t.id.equals(id));
+                respondOrNotFound(exchange, "vAppTemplate", template == null ? null : vAppTemplate(template));
+            } else if (method.equals("GET") && path.equals("/api/vdc/" + vdcId)) {
+                respond(exchange, 200, "vdc", vdc());
+            } else if (method.equals("POST") && path.equals("/api/vdc/" + vdcId + "/action/composeVApp")) {
+                compose(exchange);
+            } else if ((matcher = match("/api/vApp/vapp-(\\w+)(/.*)?", path)) != null) {
+                VApp vApp = vApps.get(matcher.group(1));
+                if (vApp == null) {
+                    error(exchange, 404, "No vApp " + matcher.group(1) + ".");
+                } else {
+                    vAppAction(exchange, method, matcher.group(2) == null ? "" : matcher.group(2), vApp);
+                }
+            } else if (method.equals("POST") && (matcher = match("/api/vApp/vm-(\\w+)/action/reconfigureVm", path)) != null) {
+                reconfigure(exchange, matcher.group(1));
+            } else if ((matcher = match("/api/task/(\\w+)(/action/cancel)?", path)) != null) {
+                Task task = tasks.get(matcher.group(1));
+                if (task == null) {
+                    error(exchange, 404, "No task " + matcher.group(1) + ".");
+                } else if (method.equals("GET") && matcher.group(2) == null) {
+                    respond(exchange, 200, "task", task(task));
+                } else if (method.equals("POST") && matcher.group(2) != null) {
+                    if (task.status.equals("running")) {
+                        finish(task, "aborted");
+                    }
+                    respond(exchange, 204, null, null);
+                } else {
+                    error(exchange, 405, method + " is not supported on " + path + ".");
+                }
+            } else {
+                error(exchange, 404, "No resource at " + method + " " + path + ".");
+            }
+        }
+    }
+
+    private static Matcher match(String regex, String path) {
+        Matcher matcher = Pattern.compile(regex).matcher(path);
+        return matcher.matches() ? matcher : null;
+    }
+
+    private Template findTemplate(Predicate<Template> predicate) {
+        return catalogs.values().stream().flatMap(catalog -> catalog.templates.values().stream()).filter(predicate).findFirst().orElse(null);
+    }
+
+    private void login(HttpExchange exchange) throws IOException {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("Basic ")) {
+            error(exchange, 401, "Basic authorization is required.");
+            return;
+        }
+        String credentials = new String(Base64.getDecoder().decode(authorization.substring("Basic ".length())), StandardCharsets.UTF_8);
+        String user = credentials.substring(0, credentials.indexOf(':'));
+        if (!user.endsWith("@" + orgName)) {
+            error(exchange, 401, "Unknown org for " + user + ".");
+            return;
+        }
+        String token = UUID.randomUUID().toString().replace("-", "");
+        sessions.add(token);
+        exchange.getResponseHeaders().set(AUTHORIZATION_HEADER, token);
+        respond(exchange, 200, "session", session(token));
+    }
+
+    private void query(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+        String type = parameters.get("type");
+        if (type == null) {
+            StringBuilder xml = new StringBuilder("<QueryList " + NAMESPACES + " href=\"" + url + "/api/query\" type=\"" + MEDIA_TYPE + "query.queryList+xml\">");
+            for (String queryType : QUERY_TYPES) {
+                for (String format : new String[]{"references", "records"}) {
+                    xml.append("<Link rel=\"down\" type=\"" + MEDIA_TYPE + "query." + format + "+xml\" name=\"" + queryType + "\" href=\"" + url + "/api/query?type=" + queryType + "&amp;format=" + format + "\"/>");
+                }
+            }
+            respond(exchange, 200, "query.queryList", xml.append("</QueryList>").toString());
+            return;
+        }
+        List<Map<String, String>> records = records(type);
+        if (records == null) {
+            error(exchange, 400, "Unsupported query type " + type + ".");
+            return;
+        }
+        records.removeIf(record -> !matches(record, parameters.getOrDefault("filter", "")));
+        int page = Integer.parseInt(parameters.getOrDefault("page", "1"));
+        int pageSize = Integer.parseInt(parameters.getOrDefault("pageSize", "25"));
+        List<Map<String, String>> onPage = records.subList(Math.min(records.size(), (page - 1) * pageSize), Math.min(records.size(), page * pageSize));
+        boolean references = "references".equals(parameters.get("format"));
+        String root = references ? "References" : "QueryResultRecords";
+        StringBuilder xml = new StringBuilder("<" + root + " " + NAMESPACES + " total=\"" + records.size() + "\" page=\"" + page + "\" pageSize=\"" + pageSize + "\" name=\"" + type + "\" type=\"" + MEDIA_TYPE + "query." + parameters.getOrDefault("format", "records") + "+xml\">");
+        if (page * pageSize < records.size()) {
+            xml.append("<Link rel=\"nextPage\" type=\"" + MEDIA_TYPE + "query." + parameters.getOrDefault("format", "records") + "+xml\" href=\"" + url + "/api/query?type=" + type + "&amp;page=" + (page + 1) + "\"/>");
+        }
+        List<String> fields = parameters.containsKey("fields") ? Arrays.asList(parameters.get("fields").split(",")) : null;
+        for (Map<String, String> record : onPage) {
+            if (references) {
+                xml.append("<Reference type=\"" + record.get("mediaType") + "\" name=\"" + escape(record.get("name")) + "\" href=\"" + record.get("href") + "\"/>");
+            } else {
+                xml.append("<" + Character.toUpperCase(type.charAt(0)) + type.substring(1) + "Record");
+                record.forEach((attribute, value) -> {
+                    if (!attribute.equals("mediaType") && (fields == null || fields.contains(attribute) || attribute.equals("href"))) {
+                        xml.append(" " + attribute + "=\"" + escape(value) + "\"");
+                    }
+                });
+                xml.append("/>");
+            }
+        }
+        respond(exchange, 200, "query." + (references ? "references" : "records"), xml.append("</" + root + ">").toString());
+    }
+
+    // The records of a query type, or null for a type not served.
+    private List<Map<String, String>> records(String type) {
+        List<Map<String, String>> records = new ArrayList<>();
+        switch (type) {
+            case "orgVdcNetwork":
+                networks.forEach((name, id) -> records.add(record(MEDIA_TYPE + "orgNetwork+xml", url + "/api/network/" + id, "name", name)));
+                break;
+            case "orgVdc":
+                records.add(record(MEDIA_TYPE + "vdc+xml", url + "/api/vdc/" + vdcId, "name", orgName));
+                break;
+            case "vAppTemplate":
+                catalogs.values().forEach(catalog -> catalog.templates.values().forEach(template -> records.add(record(MEDIA_TYPE + "vAppTemplate+xml", url + "/api/vAppTemplate/vappTemplate-" + template.id, "name", template.name, "catalogName", catalog.name, "status", "RESOLVED"))));
+                break;
+            case "task":
+                tasks.values().forEach(task -> records.add(record(MEDIA_TYPE + "task+xml", taskHref(task), "name", task.operationName, "status", task.status, "objectName", task.ownerName)));
+                break;
+            default:
+                return null;
+        }
+        return records;
+    }
+
+    private static Map<String, String> record(String mediaType, String href, String... attributes) {
+        Map<String, String> record = new LinkedHashMap<>();
+        record.put("mediaType", mediaType);
+        record.put("href", href);
+        for (int i = 0; i < attributes.length; i += 2) {
+            record.put(attributes[i], attributes[i + 1]);
+        }
+        return record;
+    }
+
+    // Understands conditions of the form attribute==value, ORed with , and ANDed with ;, with or without parentheses.
+    private static boolean matches(Map<String, String> record, String filter) {
+        if (filter.isEmpty()) {
+            return true;
+        }
+        for (String group : filter.replaceAll("[()]", "").split(";")) {
+            boolean any = false;
+            for (String condition : group.split(",")) {
+                String[] attributeAndValue = condition.split("==", 2);
+                any |= attributeAndValue.length == 2 && attributeAndValue[1].equals(record.get(attributeAndValue[0]));
+            }
+            if (!any) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void compose(HttpExchange exchange) throws IOException {
+        Element params = parse(exchange.getRequestBody());
+        VApp vApp = new VApp(nextId(), params.getAttribute("name"));
+        vApp.description = text(params, "Description");
+        boolean deploy = Boolean.parseBoolean(params.getAttribute("deploy"));
+        boolean powerOn = Boolean.parseBoolean(params.getAttribute("powerOn"));
+        for (Element sourcedItem : children(params, "SourcedItem")) {
+            Element source = children(sourcedItem, "Source").get(0);
+            String templateVmHref = source.getAttribute("href");
+            String templateVmId = templateVmHref.substring(templateVmHref.lastIndexOf("vm-") + "vm-".length());
+            if (findTemplate(template -> template.vms.containsKey(templateVmId)) == null) {
+                error(exchange, 400, "No template VM at " + templateVmHref + ".");
+                return;
+            }
+            Vm vm = new Vm(nextId(), source.getAttribute("name"));
+            // Hardware and computer name given at composition, if any.
+            applyVmSettings(vm, sourcedItem);
+            vApp.vms.add(vm);
+        }
+        vApps.put(vApp.id, vApp);
+        Task task = startTask("vdcComposeVapp", vApp, () -> vApp.status = deploy && powerOn ? POWERED_ON : POWERED_OFF, () -> vApp.status = FAILED_CREATION);
+        vApp.deployed = deploy;
+        respond(exchange, 201, "vApp", vApp(vApp));
+    }
+
+    private void vAppAction(HttpExchange exchange, String method, String action, VApp vApp) throws IOException {
+        if (method.equals("GET") && action.isEmpty()) {
+            respond(exchange, 200, "vApp", vApp(vApp));
+        } else if (method.equals("PUT") && action.isEmpty()) {
+            Element edited = parse(exchange.getRequestBody());
+            String name = edited.getAttribute("name");
+            respond(exchange, 202, "task", task(startTask("vappUpdateVApp", vApp, () -> vApp.name = name, null)));
+        } else if (method.equals("DELETE") && action.isEmpty()) {
+            if (vApp.deployed) {
+                error(exchange, 400, "The vApp must be undeployed before it is removed.");
+                return;
+            }
+            respond(exchange, 202, "task", task(startTask("vdcDeleteVapp", vApp, () -> vApps.remove(vApp.id), null)));
+        } else if (method.equals("POST") && action.equals("/power/action/powerOn")) {
+            if (POWERED_ON.equals(vApp.status)) {
+                error(exchange, 400, "The requested operation could not be executed since vApp " + vApp.name + " is already powered on.");
+                return;
+            }
+            respond(exchange, 202, "task", task(startTask("vappDeploy", vApp, () -> {
+                vApp.status = POWERED_ON;
+                vApp.deployed = true;
+            }, null)));
+        } else if (method.equals("POST") && action.equals("/action/undeploy")) {
+            respond(exchange, 202, "task", task(startTask("vappUndeployPowerOff", vApp, () -> {
+                vApp.status = POWERED_OFF;
+                vApp.deployed = false;
+            }, null)));
+        } else {
+            error(exchange, 404, "No resource at " + method + " /api/vApp/vapp-" + vApp.id + action + ".");
+        }
+    }
+
+    private void reconfigure(HttpExchange exchange, String vmId) throws IOException {
+        VApp owner = vApps.values().stream().filter(vApp -> vApp.vms.stream().anyMatch(vm -> vm.id.equals(vmId))).findFirst().orElse(null);
+        if (owner == null) {
+            error(exchange, 404, "No VM " + vmId + ".");
+            return;
+        }
+        Vm vm = owner.vms.stream().filter(v -> v.id.equals(vmId)).findFirst().get();
+        Element requested = parse(exchange.getRequestBody());
+        Vm updated = new Vm(vm.id, requested.getAttribute("name").isEmpty() ? vm.name : requested.getAttribute("name"));
+        updated.cpus = vm.cpus;
+        updated.memoryMb = vm.memoryMb;
+        updated.computerName = vm.computerName;
+        applyVmSettings(updated, requested);
+        respond(exchange, 202, "task", task(startTask("vappUpdateVm", owner, () -> {
+            vm.name = updated.name;
+            vm.cpus = updated.cpus;
+            vm.memoryMb = updated.memoryMb;
+            vm.computerName = updated.computerName;
+        }, null)));
+    }
+
+    private void applyVmSettings(Vm vm, Element element) {
+        NodeList items = element.getElementsByTagNameNS("*", "Item");
+        for (int i = 0; i < items.getLength(); i++) {
+            Element item = (Element) items.item(i);
+            String description = text(item, "Description").toLowerCase();
+            String quantity = text(item, "VirtualQuantity");
+            if (quantity.isEmpty()) {
+                continue;
+            }
+            if (description.contains("virtual cpus")) {
+                vm.cpus = Integer.parseInt(quantity);
+            } else if (description.contains("memory size")) {
+                vm.memoryMb = Integer.parseInt(quantity);
+            }
+        }
+        String computerName = text(element, "ComputerName");
+        if (!computerName.isEmpty()) {
+            vm.computerName = computerName;
+        }
+    }
+
+    private Task startTask(String operationName, VApp owner, Runnable onSuccess, Runnable onFailure) {
+        Duration duration = taskDurations.getOrDefault(operationName, defaultTaskDuration);
+        AtomicInteger failures = failNext.get(operationName);
+        boolean fail = (failures != null && failures.getAndUpdate(count -> Math.max(0, count - 1)) > 0)
+                || (taskFailureRate > 0 && ThreadLocalRandom.current().nextDouble() < taskFailureRate);
+        Task task = new Task(nextId(), operationName, owner, System.nanoTime() + duration.toNanos(), fail, onSuccess, onFailure);
+        tasks.put(task.id, task);
+        runningTasks.add(task);
+        owner.tasks.add(task);
+        return task;
+    }
+
+    // Finishes every task whose time is up.
+    private void settle() {
+        long now = System.nanoTime();
+        for (Task task : new ArrayList<>(runningTasks)) {
+            if (now - task.endsAt >= 0) {
+                finish(task, task.fail ? "error" : "success");
+            }
+        }
+    }
+
+    private void finish(Task task, String status) {
+        task.status = status;
+        runningTasks.remove(task);
+        task.owner.tasks.remove(task);
+        if (status.equals("success") && task.onSuccess != null) {
+            task.onSuccess.run();
+        } else if (status.equals("error") && task.onFailure != null) {
+            task.onFailure.run();
+        }
+    }
+
+    private String versions() {
+        return "<SupportedVersions xmlns=\"http://www.vmware.com/vcloud/versions\"><VersionInfo deprecated=\"false\"><Version>" + VERSION + "</Version><LoginUrl>" + url + "/api/sessions</LoginUrl></VersionInfo></SupportedVersions>";
+    }
+
+    private String session(String token) {
+        return "<Session " + NAMESPACES + " user=\"user\" org=\"" + escape(orgName) + "\" href=\"" + url + "/api/session/\" type=\"" + MEDIA_TYPE + "session+xml\">"
+                + "<Link rel=\"down\" type=\"" + MEDIA_TYPE + "orgList+xml\" href=\"" + url + "/api/org/\"/>"
+                + "<Link rel=\"down\" type=\"" + MEDIA_TYPE + "org+xml\" name=\"" + escape(orgName) + "\" href=\"" + url + "/api/org/" + orgId + "\"/>"
+                + "<Link rel=\"down\" type=\"" + MEDIA_TYPE + "query.queryList+xml\" href=\"" + url + "/api/query\"/>"
+                + "<Link rel=\"remove\" href=\"" + url + "/api/session/\"/>"
+                + "</Session>";
+    }
+
+    private String org() {
+        // Every link carries a name, and the VDC, named after the org, comes first.
+        StringBuilder xml = new StringBuilder("<Org " + NAMESPACES + " name=\"" + escape(orgName) + "\" id=\"urn:vcloud:org:" + orgId + "\" href=\"" + url + "/api/org/" + orgId + "\" type=\"" + MEDIA_TYPE + "org+xml\">");
+        xml.append("<Link rel=\"down\" type=\"" + MEDIA_TYPE + "vdc+xml\" name=\"" + escape(orgName) + "\" href=\"" + url + "/api/vdc/" + vdcId + "\"/>");
+        for (Catalog catalog : catalogs.values()) {
+            xml.append("<Link rel=\"down\" type=\"" + MEDIA_TYPE + "catalog+xml\" name=\"" + escape(catalog.name) + "\" href=\"" + url + "/api/catalog/" + catalog.id + "\"/>");
+        }
+        return xml.append("<FullName>" + escape(orgName) + "</FullName></Org>").toString();
+    }
+
+    private String catalog(Catalog catalog) {
+        StringBuilder xml = new StringBuilder("<Catalog " + NAMESPACES + " name=\"" + escape(catalog.name) + "\" href=\"" + url + "/api/catalog/" + catalog.id + "\" type=\"" + MEDIA_TYPE + "catalog+xml\"><CatalogItems>");
+        for (Template template : catalog.templates.values()) {
+            xml.append("<CatalogItem type=\"" + MEDIA_TYPE + "catalogItem+xml\" name=\"" + escape(template.name) + "\" href=\"" + url + "/api/catalogItem/" + template.catalogItemId + "\"/>");
+        }
+        return xml.append("</CatalogItems><IsPublished>false</IsPublished></Catalog>").toString();
+    }
+
+    private String catalogItem(Template template) {
+        return "<CatalogItem " + NAMESPACES + " name=\"" + escape(template.name) + "\" href=\"" + url + "/api/catalogItem/" + template.catalogItemId + "\" type=\"" + MEDIA_TYPE + "catalogItem+xml\">"
+                + "<Entity type=\"" + MEDIA_TYPE + "vAppTemplate+xml\" name=\"" + escape(template.name) + "\" href=\"" + url + "/api/vAppTemplate/vappTemplate-" + template.id + "\"/>"
+                + "</CatalogItem>";
+    }
+
+    private String vAppTemplate(Template template) {
+        StringBuilder xml = new StringBuilder("<VAppTemplate " + NAMESPACES + " name=\"" + escape(template.name) + "\" status=\"8\" href=\"" + url + "/api/vAppTemplate/vappTemplate-" + template.id + "\" type=\"" + MEDIA_TYPE + "vAppTemplate+xml\"><Children>");
+        template.vms.forEach((id, name) -> {
+            Vm vm = new Vm(id, name);
+            xml.append("<Vm name=\"" + escape(name) + "\" status=\"8\" href=\"" + url + "/api/vAppTemplate/vm-" + id + "\" type=\"" + MEDIA_TYPE + "vm+xml\">");
+            xml.append(vmSections(vm));
+            xml.append("</Vm>");
+        });
+        return xml.append("</Children></VAppTemplate>").toString();
+    }
+
+    private String vdc() {
+        return "<Vdc " + NAMESPACES + " name=\"" + escape(orgName) + "\" status=\"1\" href=\"" + url + "/api/vdc/" + vdcId + "\" type=\"" + MEDIA_TYPE + "vdc+xml\">"
+                + "<Link rel=\"add\" type=\"" + MEDIA_TYPE + "composeVAppParams+xml\" href=\"" + url + "/api/vdc/" + vdcId + "/action/composeVApp\"/>"
+                + "<AllocationModel>AllocationVApp</AllocationModel>"
+                + "</Vdc>";
+    }
+
+    private String vApp(VApp vApp) {
+        String href = url + "/api/vApp/vapp-" + vApp.id;
+        StringBuilder xml = new StringBuilder("<VApp " + NAMESPACES + " name=\"" + escape(vApp.name) + "\" status=\"" + vApp.status + "\" deployed=\"" + vApp.deployed + "\" href=\"" + href + "\" type=\"" + MEDIA_TYPE + "vApp+xml\">");
+        if (vApp.tasks.isEmpty() && !vApp.status.equals(UNRESOLVED)) {
+            xml.append("<Link rel=\"power:powerOn\" href=\"" + href + "/power/action/powerOn\"/>");
+            xml.append("<Link rel=\"undeploy\" type=\"" + MEDIA_TYPE + "undeployVAppParams+xml\" href=\"" + href + "/action/undeploy\"/>");
+            xml.append("<Link rel=\"edit\" type=\"" + MEDIA_TYPE + "vApp+xml\" href=\"" + href + "\"/>");
+            if (!vApp.deployed) {
+                xml.append("<Link rel=\"remove\" href=\"" + href + "\"/>");
+            }
+        }
+        xml.append("<Description>" + escape(vApp.description) + "</Description>");
+        if (!vApp.tasks.isEmpty()) {
+            xml.append("<Tasks>");
+            vApp.tasks.forEach(task -> xml.append(task(task).replace(" " + NAMESPACES, "")));
+            xml.append("</Tasks>");
+        }
+        xml.append("<Children>");
+        for (Vm vm : vApp.vms) {
+            String vmHref = url + "/api/vApp/vm-" + vm.id;
+            xml.append("<Vm name=\"" + escape(vm.name) + "\" status=\"" + vApp.status + "\" href=\"" + vmHref + "\" type=\"" + MEDIA_TYPE + "vm+xml\">");
+            xml.append("<Link rel=\"reconfigureVm\" type=\"" + MEDIA_TYPE + "vm+xml\" href=\"" + vmHref + "/action/reconfigureVm\"/>");
+            xml.append(vmSections(vm));
+            xml.append("</Vm>");
+        }
+        return xml.append("</Children></VApp>").toString();
+    }
+
+    private String vmSections(Vm vm) {
+        return "<ovf:VirtualHardwareSection><ovf:Info>Virtual hardware requirements</ovf:Info>"
+                + "<ovf:Item><rasd:AllocationUnits>hertz * 10^6</rasd:AllocationUnits><rasd:Description>Number of Virtual CPUs</rasd:Description><rasd:ElementName>" + vm.cpus + " virtual CPU(s)</rasd:ElementName><rasd:InstanceID>4</rasd:InstanceID><rasd:ResourceType>3</rasd:ResourceType><rasd:VirtualQuantity>" + vm.cpus + "</rasd:VirtualQuantity></ovf:Item>"
+                + "<ovf:Item><rasd:AllocationUnits>byte * 2^20</rasd:AllocationUnits><rasd:Description>Memory Size</rasd:Description><rasd:ElementName>" + vm.memoryMb + " MB of memory</rasd:ElementName><rasd:InstanceID>5</rasd:InstanceID><rasd:ResourceType>4</rasd:ResourceType><rasd:VirtualQuantity>" + vm.memoryMb + "</rasd:VirtualQuantity></ovf:Item>"
+                + "</ovf:VirtualHardwareSection>"
+                + "<GuestCustomizationSection ovf:required=\"false\"><ovf:Info>Specifies Guest OS Customization Settings</ovf:Info><Enabled>true</Enabled><ComputerName>" + escape(vm.computerName) + "</ComputerName></GuestCustomizationSection>";
+    }
+
+    private String task(Task task) {
+        StringBuilder xml = new StringBuilder("<Task " + NAMESPACES + " status=\"" + task.status + "\" operationName=\"" + task.operationName + "\" operation=\"" + task.operationName + " " + escape(task.ownerName) + "\" startTime=\"" + task.startTime + "\" expiryTime=\"" + task.startTime.plus(Duration.ofDays(90)) + "\" href=\"" + taskHref(task) + "\" type=\"" + MEDIA_TYPE + "task+xml\"");
+        if (task.status.equals("error")) {
+            xml.append(" details=\"Injected failure of " + task.operationName + ".\"");
+        }
+        xml.append(">");
+        if (task.status.equals("running")) {
+            xml.append("<Link rel=\"task:cancel\" href=\"" + taskHref(task) + "/action/cancel\"/>");
+        }
+        xml.append("<Owner type=\"" + MEDIA_TYPE + "vApp+xml\" name=\"" + escape(task.ownerName) + "\" href=\"" + url + "/api/vApp/vapp-" + task.owner.id + "\"/>");
+        return xml.append("</Task>").toString();
+    }
+
+    private String taskHref(Task task) {
+        return url + "/api/task/" + task.id;
+    }
+
+    private static void respond(HttpExchange exchange, int code, String mediaType, String xml) throws IOException {
+        if (xml == null) {
+            exchange.sendResponseHeaders(code, -1);
+            return;
+        }
+        byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + xml).getBytes(StandardCharsets.UTF_8);
+        String contentType = mediaType.startsWith("application/") ? mediaType : MEDIA_TYPE + mediaType + "+xml";
+        exchange.getResponseHeaders().set("Content-Type", contentType + ";version=" + VERSION);
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private static void respondOrNotFound(HttpExchange exchange, String mediaType, String xml) throws IOException {
+        if (xml == null) {
+            error(exchange, 404, "No resource at " + exchange.getRequestURI().getPath() + ".");
+        } else {
+            respond(exchange, 200, mediaType, xml);
+        }
+    }
+
+    private static void error(HttpExchange exchange, int code, String message) throws IOException {
+        respond(exchange, code, "error", "<Error " + NAMESPACES + " minorErrorCode=\"" + code + "\" message=\"" + escape(message) + "\" majorErrorCode=\"" + code + "\"/>");
+    }
+
+    private static Element parse(InputStream body) {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            Document document = factory.newDocumentBuilder().parse(body);
+            return document.getDocumentElement();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Could not parse the request body.", e);
+        }
+    }
+
+    private static List<Element> children(Element parent, String localName) {
+        List<Element> children = new ArrayList<>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && localName.equals(node.getLocalName())) {
+                children.add((Element) node);
+            }
+        }
+        return children;
+    }
+
+    // The text of the first descendant with that name, or "".
+    private static String text(Element element, String localName) {
+        NodeList nodes = element.getElementsByTagNameNS("*", localName);
+        return nodes.getLength() == 0 ? "" : nodes.item(0).getTextContent().trim();
+    }
+
+    private static Map<String, String> parameters(String rawQuery) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            String[] nameAndValue = parameter.split("=", 2);
+            try {
+                parameters.put(URLDecoder.decode(nameAndValue[0], "UTF-8"), nameAndValue.length > 1 ? URLDecoder.decode(nameAndValue[1], "UTF-8") : "");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return parameters;
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static class Catalog {
+        private final String id;
+        private final String name;
+        // By name.
+        private final Map<String, Template> templates = new LinkedHashMap<>();
+
+        private Catalog(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    private static class Template {
+        private final String id;
+        private final String catalogItemId;
+        private final String name;
+        // VM names by id.
+        private final Map<String, String> vms = new LinkedHashMap<>();
+
+        private Template(String id, String catalogItemId, String name) {
+            this.id = id;
+            this.catalogItemId = catalogItemId;
+            this.name = name;
+        }
+    }
+
+    private static class VApp {
+        private final String id;
+        private String name;
+        private String description = "";
+        private String status = UNRESOLVED;
+        private boolean deployed;
+        private final List<Vm> vms = new ArrayList<>();
+        private final List<Task> tasks = new ArrayList<>();
+
+        private VApp(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    private static class Vm {
+        private final String id;
+        private String name;
+        private String computerName;
+        private int cpus = 1;
+        private int memoryMb = 1024;
+
+        private Vm(String id, String name) {
+            this.id = id;
+            this.name = name;
+            this.computerName = name;
+        }
+    }
+
+    private static class Task {
+        private final String id;
+        private final String operationName;
+        private final VApp owner;
+        private final String ownerName;
+        private final Instant startTime = Instant.now();
+        private final long endsAt;
+        private final boolean fail;
+        private final Runnable onSuccess;
+        private final Runnable onFailure;
+        private String status = "running";
+
+        private Task(String id, String operationName, VApp owner, long endsAt, boolean fail, Runnable onSuccess, Runnable onFailure) {
+            this.id = id;
+            this.operationName = operationName;
+            this.owner = owner;
+            this.ownerName = owner.name;
+            this.endsAt = endsAt;
+            this.fail = fail;
+            this.onSuccess = onSuccess;
+            this.onFailure = onFailure;
+        }
+    }
+}
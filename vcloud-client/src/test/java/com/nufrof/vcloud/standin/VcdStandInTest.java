@@ -0,0 +1,168 @@
+package com.nufrof.vcloud.standin;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VcdStandInTest {
+    @Test
+    public void sessionTest() throws Exception {
+        try (VcdStandIn standIn = new VcdStandIn("org")) {
+            assertEquals(401, request(standIn.getUrl() + "/api/org/", "GET", null, null).code);
+            String token = login(standIn);
+            Response orgList = request(standIn.getUrl() + "/api/org/", "GET", token, null);
+            assertEquals(200, orgList.code);
+            assertTrue(orgList.body.contains("name=\"org\""));
+
+            standIn.expireSessions();
+            assertEquals(401, request(standIn.getUrl() + "/api/org/", "GET", token, null).code);
+        }
+    }
+
+    @Test
+    public void composeAndReconfigureTest() throws Exception {
+        try (VcdStandIn standIn = new VcdStandIn("org")) {
+            standIn.addTemplate("catalog", "linux", "vm").addNetwork("net").setTaskDuration(Duration.ofMillis(20));
+            String token = login(standIn);
+            String templateVmHref = templateVmHref(standIn, token);
+
+            Response composed = request(standIn.getUrl() + vdcHref(standIn, token) + "/action/composeVApp", "POST", token, "<ComposeVAppParams xmlns=\"http://www.vmware.com/vcloud/v1.5\" name=\"app\">"
+                    + "<SourcedItem><Source href=\"" + templateVmHref + "\" name=\"web\"/></SourcedItem>"
+                    + "</ComposeVAppParams>");
+            assertEquals(201, composed.code);
+            String vAppHref = attribute(composed.body, "VApp", "href");
+            assertEquals("success", waitForTask(attribute(composed.body, "Task", "href"), token));
+            Response vApp = request(vAppHref, "GET", token, null);
+            assertEquals("8", attribute(vApp.body, "VApp", "status"));
+            assertTrue(vApp.body.contains("<Vm name=\"web\""));
+
+            String reconfigureHref = attribute(vApp.body, "Link rel=\"reconfigureVm\"[^>]*", "href");
+            Response reconfigured = request(reconfigureHref, "POST", token, "<Vm xmlns=\"http://www.vmware.com/vcloud/v1.5\" xmlns:ovf=\"http://schemas.dmtf.org/ovf/envelope/1\" xmlns:rasd=\"http://schemas.dmtf.org/wbem/wscim/1/cim-schema/2/CIM_ResourceAllocationSettingData\" name=\"web\">"
+                    + "<ovf:VirtualHardwareSection><ovf:Item><rasd:Description>Number of Virtual CPUs</rasd:Description><rasd:VirtualQuantity>4</rasd:VirtualQuantity></ovf:Item></ovf:VirtualHardwareSection>"
+                    + "</Vm>");
+            assertEquals(202, reconfigured.code);
+            assertEquals(1, (int) standIn.getVmCpus("web"));
+            assertEquals("success", waitForTask(attribute(reconfigured.body, "Task", "href"), token));
+            assertEquals(4, (int) standIn.getVmCpus("web"));
+            assertEquals(1024, (int) standIn.getVmMemoryMb("web"));
+
+            String powerOnHref = attribute(vApp.body, "Link rel=\"power:powerOn\"", "href");
+            Response poweredOn = request(powerOnHref, "POST", token, null);
+            assertEquals(202, poweredOn.code);
+            assertEquals("success", waitForTask(attribute(poweredOn.body, "Task", "href"), token));
+            assertTrue(standIn.isPoweredOn("app"));
+            // Like vCD, powering on a vApp that is already on is refused.
+            assertEquals(400, request(powerOnHref, "POST", token, null).code);
+        }
+    }
+
+    @Test
+    public void failureInjectionTest() throws Exception {
+        try (VcdStandIn standIn = new VcdStandIn("org")) {
+            standIn.addTemplate("catalog", "linux", "vm").setTaskDuration(Duration.ZERO).failNextTasks("vdcComposeVapp", 1);
+            String token = login(standIn);
+            String composeHref = standIn.getUrl() + vdcHref(standIn, token) + "/action/composeVApp";
+            String body = "<ComposeVAppParams xmlns=\"http://www.vmware.com/vcloud/v1.5\" name=\"app\"><SourcedItem><Source href=\"" + templateVmHref(standIn, token) + "\" name=\"web\"/></SourcedItem></ComposeVAppParams>";
+
+            Response failed = request(composeHref, "POST", token, body);
+            Response task = request(attribute(failed.body, "Task", "href"), "GET", token, null);
+            assertEquals("error", attribute(task.body, "Task", "status"));
+            assertTrue(task.body.contains("details=\"Injected failure"));
+            assertEquals("-1", attribute(request(attribute(failed.body, "VApp", "href"), "GET", token, null).body, "VApp", "status"));
+
+            Response succeeded = request(composeHref, "POST", token, body);
+            assertEquals("success", waitForTask(attribute(succeeded.body, "Task", "href"), token));
+
+            standIn.setHttpErrorRate(1);
+            assertEquals(500, request(composeHref, "POST", token, body).code);
+        }
+    }
+
+    private static String login(VcdStandIn standIn) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(standIn.getUrl() + "/api/sessions").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Authorization", "Basic " + Base64.getEncoder().encodeToString("user@org:password".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(200, connection.getResponseCode());
+        return connection.getHeaderField("x-vcloud-authorization");
+    }
+
+    private static String vdcHref(VcdStandIn standIn, String token) throws IOException {
+        String org = request(attribute(request(standIn.getUrl() + "/api/session", "GET", token, null).body, "Link rel=\"down\" type=\"application/vnd.vmware.vcloud.org\\+xml\"[^>]*", "href"), "GET", token, null).body;
+        return attribute(org, "Link rel=\"down\" type=\"application/vnd.vmware.vcloud.vdc\\+xml\"[^>]*", "href").substring(standIn.getUrl().length());
+    }
+
+    // Follows the org to the first catalog, its first item and the first VM of that template.
+    private static String templateVmHref(VcdStandIn standIn, String token) throws IOException {
+        String org = request(attribute(request(standIn.getUrl() + "/api/session", "GET", token, null).body, "Link rel=\"down\" type=\"application/vnd.vmware.vcloud.org\\+xml\"[^>]*", "href"), "GET", token, null).body;
+        String catalog = request(attribute(org, "Link rel=\"down\" type=\"application/vnd.vmware.vcloud.catalog\\+xml\"[^>]*", "href"), "GET", token, null).body;
+        String catalogItem = request(attribute(catalog, "CatalogItem [^>]*", "href"), "GET", token, null).body;
+        String template = request(attribute(catalogItem, "Entity", "href"), "GET", token, null).body;
+        return attribute(template, "Vm", "href");
+    }
+
+    private static String waitForTask(String taskHref, String token) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            String status = attribute(request(taskHref, "GET", token, null).body, "Task", "status");
+            if (!status.equals("running")) {
+                return status;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Task " + taskHref + " did not finish.");
+    }
+
+    private static String attribute(String xml, String element, String attribute) {
+        Matcher matcher = Pattern.compile("<" + element + "[^>]*? " + attribute + "=\"([^\"]*)\"").matcher(xml);
+        assertTrue(matcher.find(), "No " + attribute + " on " + element + " in " + xml);
+        return matcher.group(1);
+    }
+
+    private static Response request(String url, String method, String token, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        if (token != null) {
+            connection.setRequestProperty("x-vcloud-authorization", token);
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int code = connection.getResponseCode();
+        InputStream inputStream = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (inputStream != null) {
+            try (InputStream in = inputStream) {
+                byte[] buffer = new byte[8192];
+                for (int read; (read = in.read(buffer)) > 0; ) {
+                    bytes.write(buffer, 0, read);
+                }
+            }
+        }
+        return new Response(code, new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static class Response {
+        private final int code;
+        private final String body;
+
+        private Response(int code, String body) {
+            this.code = code;
+            this.body = body;
+        }
+    }
+}
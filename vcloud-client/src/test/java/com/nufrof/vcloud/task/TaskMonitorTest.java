@@ -0,0 +1,184 @@
+package com.nufrof.vcloud.task;
+
+import com.vmware.vcloud.api.rest.schema_v1_5.TaskType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TaskMonitorTest {
+    private static final Duration MIN_DELAY = Duration.ofMillis(5);
+
+    private static final Duration MAX_DELAY = Duration.ofMillis(20);
+
+    // Each task's status is "running" until it has been polled this many times.
+    private final Map<String, AtomicInteger> pollsLeft = new ConcurrentHashMap<>();
+
+    private final Map<String, String> finalStatus = new ConcurrentHashMap<>();
+
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    private final AtomicInteger queries = new AtomicInteger();
+
+    @Test
+    public void successAndErrorTest() throws Exception {
+        try (TaskMonitor taskMonitor = new TaskMonitor(this::fetch, null, MIN_DELAY, MAX_DELAY)) {
+            CompletableFuture<TaskType> succeeded = taskMonitor.watch(task("a", 3, "success"));
+            CompletableFuture<TaskType> failed = taskMonitor.watch(task("b", 2, "error"));
+
+            assertEquals("success", succeeded.get(5, TimeUnit.SECONDS).getStatus());
+            ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof TaskFailedException);
+            assertEquals("b failed.", e.getCause().getMessage());
+            assertEquals(5, fetches.get());
+            assertEquals(0, taskMonitor.size());
+        }
+    }
+
+    @Test
+    public void finishedTaskTest() throws Exception {
+        try (TaskMonitor taskMonitor = new TaskMonitor(this::fetch, null, MIN_DELAY, MAX_DELAY)) {
+            TaskType task = task("a", 0, "success");
+            task.setStatus("success");
+
+            assertSame(task, taskMonitor.watch(task).get(0, TimeUnit.SECONDS));
+            assertEquals(0, fetches.get());
+        }
+    }
+
+    @Test
+    public void batchTest() throws Exception {
+        try (TaskMonitor taskMonitor = new TaskMonitor(this::fetch, this::query, MIN_DELAY, MAX_DELAY)) {
+            List<CompletableFuture<TaskType>> futures = new ArrayList<>();
+            for (int i = 0; i < 120; i++) {
+                futures.add(taskMonitor.watch(task("task-" + i, 4, "success")));
+            }
+            assertSame(futures.get(0), taskMonitor.watch(task("task-0", 4, "success")));
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+            // Polling one at a time would take 600 fetches.  Finished tasks are fetched in full, and a task that falls
+            // due on its own is fetched rather than queried, but everything else goes through the query.
+            assertTrue(queries.get() > 0);
+            assertTrue(fetches.get() < 240, "Expected mostly queries, but there were " + fetches.get() + " fetches.");
+        }
+    }
+
+    @Test
+    public void queryFailureTest() throws Exception {
+        // The query fails once, and is used again after the backoff.
+        AtomicInteger failures = new AtomicInteger();
+        try (TaskMonitor taskMonitor = new TaskMonitor(this::fetch, hrefs -> {
+            if (failures.getAndIncrement() == 0) {
+                throw new IllegalStateException("Service unavailable.");
+            }
+            return query(hrefs);
+        }, MIN_DELAY, MAX_DELAY)) {
+            CompletableFuture<TaskType> a = taskMonitor.watch(task("a", 20, "success"));
+            CompletableFuture<TaskType> b = taskMonitor.watch(task("b", 20, "success"));
+
+            CompletableFuture.allOf(a, b).get(10, TimeUnit.SECONDS);
+            assertTrue(queries.get() > 0);
+        }
+
+        // A query that always fails still leaves every task polled one at a time.
+        try (TaskMonitor taskMonitor = new TaskMonitor(this::fetch, hrefs -> {
+            throw new IllegalStateException("No task query.");
+        }, MIN_DELAY, MAX_DELAY)) {
+            CompletableFuture<TaskType> a = taskMonitor.watch(task("a", 2, "success"));
+            CompletableFuture<TaskType> b = taskMonitor.watch(task("b", 2, "success"));
+
+            CompletableFuture.allOf(a, b).get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void fetchFailureTest() throws Exception {
+        try (TaskMonitor taskMonitor = new TaskMonitor(href -> {
+            // Two transient failures for a, and nothing but failures for b.
+            if (href.equals("b") || fetches.get() < 2) {
+                fetches.incrementAndGet();
+                throw new IllegalStateException("Connection reset.");
+            }
+            return fetch(href);
+        }, null, MIN_DELAY, MAX_DELAY)) {
+            CompletableFuture<TaskType> a = taskMonitor.watch(task("a", 2, "success"));
+            assertEquals("success", a.get(5, TimeUnit.SECONDS).getStatus());
+
+            fetches.set(0);
+            CompletableFuture<TaskType> b = taskMonitor.watch(task("b", 2, "success"));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> b.get(5, TimeUnit.SECONDS));
+            assertEquals("Connection reset.", e.getCause().getMessage());
+            assertEquals(TaskMonitor.MAX_CONSECUTIVE_ERRORS, fetches.get());
+        }
+    }
+
+    @Test
+    public void pollListenerTest() throws Exception {
+        try (TaskMonitor taskMonitor = new TaskMonitor(this::fetch, null, MIN_DELAY, MAX_DELAY)) {
+            AtomicInteger polls = new AtomicInteger();
+            taskMonitor.watch(task("a", 3, "success"), polls::incrementAndGet).get(5, TimeUnit.SECONDS);
+
+            assertEquals(3, polls.get());
+        }
+    }
+
+    @Test
+    public void closeTest() {
+        TaskMonitor taskMonitor = new TaskMonitor(this::fetch, null, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        CompletableFuture<TaskType> future = taskMonitor.watch(task("a", 1, "success"));
+
+        taskMonitor.close();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertThrows(IllegalStateException.class, () -> taskMonitor.watch(task("b", 1, "success")));
+    }
+
+    private TaskType task(String href, int polls, String status) {
+        pollsLeft.put(href, new AtomicInteger(polls));
+        finalStatus.put(href, status);
+        TaskType task = new TaskType();
+        task.setHref(href);
+        task.setOperationName("vappUpdateVm");
+        task.setStatus("running");
+        return task;
+    }
+
+    private String poll(String href) {
+        return pollsLeft.get(href).decrementAndGet() > 0 ? "running" : finalStatus.get(href);
+    }
+
+    private TaskType fetch(String href) {
+        fetches.incrementAndGet();
+        TaskType task = new TaskType();
+        task.setHref(href);
+        task.setOperationName("vappUpdateVm");
+        task.setStatus(poll(href));
+        task.setDetails(href + " failed.");
+        return task;
+    }
+
+    private Map<String, String> query(Collection<String> hrefs) {
+        queries.incrementAndGet();
+        assertTrue(hrefs.size() <= 50);
+        Map<String, String> statuses = new HashMap<>();
+        for (String href : hrefs) {
+            statuses.put(href, poll(href));
+        }
+        return statuses;
+    }
+}
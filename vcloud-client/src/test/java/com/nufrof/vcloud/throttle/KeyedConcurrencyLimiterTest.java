@@ -0,0 +1,78 @@
+package com.nufrof.vcloud.throttle;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KeyedConcurrencyLimiterTest {
+    @Test
+    public void limitPerKeyTest() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            KeyedConcurrencyLimiter<String> limiter = new KeyedConcurrencyLimiter<>(2, executor);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger runningA = new AtomicInteger();
+            AtomicInteger mostRunningA = new AtomicInteger();
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                int n = i;
+                futures.add(limiter.submit("a", () -> {
+                    mostRunningA.accumulateAndGet(runningA.incrementAndGet(), Math::max);
+                    release.await();
+                    runningA.decrementAndGet();
+                    return n;
+                }));
+            }
+            // Another key is not held up by "a".
+            assertEquals("b", limiter.submit("b", () -> "b").get(5, TimeUnit.SECONDS));
+            assertEquals(2, limiter.running("a"));
+
+            release.countDown();
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i, (int) futures.get(i).get(5, TimeUnit.SECONDS));
+            }
+            assertTrue(mostRunningA.get() <= 2, "At most 2 should have run at once, but " + mostRunningA.get() + " did.");
+            assertEquals(0, limiter.running("a"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failureAndCancelTest() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            KeyedConcurrencyLimiter<String> limiter = new KeyedConcurrencyLimiter<>(1, executor);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger calls = new AtomicInteger();
+            CompletableFuture<Object> failed = limiter.submit("a", () -> {
+                release.await();
+                throw new IllegalStateException("boom");
+            });
+            CompletableFuture<Integer> cancelled = limiter.submit("a", calls::incrementAndGet);
+            CompletableFuture<Integer> after = limiter.submit("a", calls::incrementAndGet);
+
+            assertTrue(cancelled.cancel(false));
+            release.countDown();
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertEquals("boom", e.getCause().getMessage());
+            assertEquals(1, (int) after.get(5, TimeUnit.SECONDS));
+            assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
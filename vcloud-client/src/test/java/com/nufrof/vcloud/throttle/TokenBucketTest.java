@@ -0,0 +1,45 @@
+package com.nufrof.vcloud.throttle;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TokenBucketTest {
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void burstThenRateTest() {
+        AtomicLong now = new AtomicLong();
+        TokenBucket tokenBucket = new TokenBucket(10, 3, now::get);
+
+        assertEquals(0, tokenBucket.reserve());
+        assertEquals(0, tokenBucket.reserve());
+        assertEquals(0, tokenBucket.reserve());
+        // Waiting callers line up 100 ms apart.
+        assertEquals(100 * MILLIS, tokenBucket.reserve());
+        assertEquals(200 * MILLIS, tokenBucket.reserve());
+        now.addAndGet(200 * MILLIS);
+        assertEquals(100 * MILLIS, tokenBucket.reserve());
+    }
+
+    @Test
+    public void refillIsCappedTest() {
+        AtomicLong now = new AtomicLong();
+        TokenBucket tokenBucket = new TokenBucket(10, 2, now::get);
+        now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+
+        assertEquals(0, tokenBucket.reserve());
+        assertEquals(0, tokenBucket.reserve());
+        assertEquals(100 * MILLIS, tokenBucket.reserve());
+    }
+
+    @Test
+    public void invalidTest() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+    }
+}
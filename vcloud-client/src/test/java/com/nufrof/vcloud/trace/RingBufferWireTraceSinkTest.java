@@ -0,0 +1,39 @@
+package com.nufrof.vcloud.trace;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RingBufferWireTraceSinkTest {
+    @Test
+    public void keepsLatestTest() {
+        RingBufferWireTraceSink sink = new RingBufferWireTraceSink(3);
+        sink.record(trace("1"));
+        sink.record(trace("2"));
+        assertEquals("1,2", bodies(sink.snapshot()));
+        assertEquals(0, sink.overwritten());
+
+        sink.record(trace("3"));
+        sink.record(trace("4"));
+        sink.record(trace("5"));
+        assertEquals("3,4,5", bodies(sink.snapshot()));
+        assertEquals(2, sink.overwritten());
+    }
+
+    @Test
+    public void invalidTest() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBufferWireTraceSink(0));
+    }
+
+    private static WireTrace trace(String body) {
+        return new WireTrace(WireTrace.Direction.RESPONSE, "GET", "https://vcd/api/task/" + body, body);
+    }
+
+    private static String bodies(List<WireTrace> traces) {
+        return traces.stream().map(WireTrace::getBody).collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,44 @@
+package com.nufrof.vcloud.trace;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RollingFileWireTraceSinkTest {
+    @Test
+    public void writesAndRollsTest() throws Exception {
+        Path directory = Files.createTempDirectory("wire-trace");
+        Path file = directory.resolve("wire.log");
+        String body = "<Task status=\"running\"/>";
+
+        try (RollingFileWireTraceSink sink = new RollingFileWireTraceSink(file, 400, 2, 100)) {
+            for (int i = 0; i < 20; i++) {
+                sink.record(new WireTrace(WireTrace.Direction.RESPONSE, "GET", "https://vcd/api/task/" + i, body));
+            }
+        }
+
+        // The last trace is always in the current file; the oldest were rolled away.
+        String current = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        assertTrue(current.contains("GET https://vcd/api/task/19\n" + body));
+        assertTrue(Files.size(file) <= 400);
+        assertTrue(Files.exists(directory.resolve("wire.log.1")));
+        assertTrue(Files.exists(directory.resolve("wire.log.2")));
+        assertFalse(Files.exists(directory.resolve("wire.log.3")));
+    }
+
+    @Test
+    public void closedTest() throws Exception {
+        Path file = Files.createTempDirectory("wire-trace").resolve("wire.log");
+        RollingFileWireTraceSink sink = new RollingFileWireTraceSink(file, 1024, 1, 10);
+        sink.close();
+        sink.record(new WireTrace(WireTrace.Direction.REQUEST, "POST", "https://vcd/api/vApp/vapp-1/action/undeploy", "<UndeployVAppParams/>"));
+        assertEquals(1, sink.dropped());
+        assertEquals(0, Files.size(file));
+    }
+}
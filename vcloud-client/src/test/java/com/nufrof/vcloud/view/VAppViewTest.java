@@ -0,0 +1,98 @@
+package com.nufrof.vcloud.view;
+
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VAppViewTest {
+    private static final String NAMESPACES = "xmlns=\"http://www.vmware.com/vcloud/v1.5\" xmlns:ovf=\"http://schemas.dmtf.org/ovf/envelope/1\" xmlns:rasd=\"http://schemas.dmtf.org/wbem/wscim/1/cim-schema/2/CIM_ResourceAllocationSettingData\"";
+
+    private static final String VAPP = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<VApp " + NAMESPACES + " name=\"app\" status=\"8\" deployed=\"false\" href=\"https://vcd/api/vApp/vapp-1\">\n"
+            + "  <Link rel=\"power:powerOn\" href=\"https://vcd/api/vApp/vapp-1/power/action/powerOn\"/>\n"
+            + "  <Link rel=\"remove\" href=\"https://vcd/api/vApp/vapp-1\"/>\n"
+            + "  <Description>Two &amp; a half VMs</Description>\n"
+            + "  <Tasks><Task status=\"running\" href=\"https://vcd/api/task/1\"><Link rel=\"task:cancel\" href=\"https://vcd/api/task/1/action/cancel\"/></Task></Tasks>\n"
+            + "  <ovf:NetworkSection><ovf:Info/><ovf:Network ovf:name=\"net\"><ovf:Description/></ovf:Network></ovf:NetworkSection>\n"
+            + "  <Children>\n"
+            + "    <Vm name=\"weba\" status=\"8\" href=\"https://vcd/api/vApp/vm-1\">\n"
+            + "      <Link rel=\"reconfigureVm\" type=\"application/vnd.vmware.vcloud.vm+xml\" href=\"https://vcd/api/vApp/vm-1/action/reconfigureVm\"/>\n"
+            + "      <Description/>\n"
+            + "      <ovf:VirtualHardwareSection><ovf:Info>Virtual hardware requirements</ovf:Info>\n"
+            + "        <ovf:Item><rasd:Description>Number of Virtual CPUs</rasd:Description><rasd:ElementName>2 virtual CPU(s)</rasd:ElementName><rasd:VirtualQuantity>2</rasd:VirtualQuantity></ovf:Item>\n"
+            + "        <ovf:Item><rasd:Address xsi:nil=\"true\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"/><rasd:Description>Memory Size</rasd:Description><rasd:VirtualQuantity>2048</rasd:VirtualQuantity></ovf:Item>\n"
+            + "        <Link rel=\"edit\" href=\"https://vcd/api/vApp/vm-1/virtualHardwareSection/\"/>\n"
+            + "      </ovf:VirtualHardwareSection>\n"
+            + "      <GuestCustomizationSection ovf:required=\"false\"><ovf:Info>Guest OS Customization</ovf:Info><Enabled>true</Enabled><ComputerName>weba</ComputerName><Link rel=\"edit\" href=\"https://vcd/api/vApp/vm-1/guestCustomizationSection/\"/></GuestCustomizationSection>\n"
+            + "    </Vm>\n"
+            + "    <Vm name=\"webb\" status=\"8\" href=\"https://vcd/api/vApp/vm-2\"/>\n"
+            + "  </Children>\n"
+            + "</VApp>\n";
+
+    @Test
+    public void readVAppTest() throws Exception {
+        VAppView vAppView = VAppView.read(stream(VAPP));
+
+        assertEquals("app", vAppView.getName());
+        assertEquals("https://vcd/api/vApp/vapp-1", vAppView.getHref());
+        assertEquals(8, (int) vAppView.getStatus());
+        assertFalse(vAppView.getDeployed());
+        // Only the vApp's own links, not those of its tasks or VMs.
+        assertEquals(Arrays.asList("power:powerOn", "remove"), vAppView.getLinks().stream().map(LinkView::getRel).collect(Collectors.toList()));
+        assertEquals("https://vcd/api/vApp/vapp-1", vAppView.getLink("remove").get().getHref());
+        assertFalse(vAppView.getLink("undeploy").isPresent());
+
+        assertEquals(2, vAppView.getVms().size());
+        VmView vmView = vAppView.getVms().get(0);
+        assertEquals("weba", vmView.getName());
+        assertEquals("https://vcd/api/vApp/vm-1", vmView.getHref());
+        assertEquals(1, vmView.getLinks().size());
+        assertEquals("application/vnd.vmware.vcloud.vm+xml", vmView.getLink("reconfigureVm").get().getType());
+        assertEquals("weba", vmView.getComputerName());
+        assertEquals(2, (int) vmView.getNumCpus());
+        assertEquals(2048, (int) vmView.getMbsMemory());
+
+        VmView bare = vAppView.getVms().get(1);
+        assertEquals("webb", bare.getName());
+        assertTrue(bare.getLinks().isEmpty());
+        assertNull(bare.getComputerName());
+        assertNull(bare.getNumCpus());
+    }
+
+    @Test
+    public void readCatalogTest() throws Exception {
+        CatalogView catalogView = CatalogView.read(stream("<Catalog " + NAMESPACES + " name=\"public\" href=\"https://vcd/api/catalog/1\">"
+                + "<Link rel=\"up\" href=\"https://vcd/api/org/1\"/><Description>Templates</Description>"
+                + "<CatalogItems>"
+                + "<CatalogItem name=\"linux\" href=\"https://vcd/api/catalogItem/1\"/>"
+                + "<CatalogItem name=\"windows\" href=\"https://vcd/api/catalogItem/2\"/>"
+                + "<CatalogItem name=\"linux\" href=\"https://vcd/api/catalogItem/3\"/>"
+                + "</CatalogItems><IsPublished>false</IsPublished></Catalog>"));
+
+        assertEquals("public", catalogView.getName());
+        assertEquals(Arrays.asList("linux", "windows"), catalogView.getItemHrefs().keySet().stream().collect(Collectors.toList()));
+        assertEquals("https://vcd/api/catalogItem/1", catalogView.getItemHrefs().get("linux"));
+        assertThrows(UnsupportedOperationException.class, () -> catalogView.getItemHrefs().clear());
+    }
+
+    @Test
+    public void wrongDocumentTest() {
+        assertThrows(XMLStreamException.class, () -> VAppView.read(stream("<Catalog " + NAMESPACES + " name=\"public\"/>")));
+        assertThrows(XMLStreamException.class, () -> VAppView.read(stream("<VApp " + NAMESPACES + " name=\"app\"><Children>")));
+    }
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}